@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes a band's worth of values with each of the
+ * canonical codings, one value at a time and as a whole array.
+ * The array decoder reads through a MappedBuffer, as the unpacker
+ * does.  Narrow the sweep with, e.g., {@code -p index=1,13,27}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodingBenchmark {
+    // Index into BandStructure.getBasicCodings(); 0 is the default
+    // meta-coding, which has no coding of its own.
+    @Param({
+            "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", 
+            "13", "14", "15", "16", "17", "18", "19", "20", "21", "22", "23", 
+            "24", "25", "26", "27", "28", "29", "30", "31", "32", "33", "34", 
+            "35", "36", "37", "38", "39", "40", "41", "42", "43", "44", "45", 
+            "46", "47", "48", "49", "50", "51", "52", "53", "54", "55", "56", 
+            "57", "58", "59", "60", "61", "62", "63", "64", "65", "66", "67", 
+            "68", "69", "70", "71", "72", "73", "74", "75", "76", "77", "78", 
+            "79", "80", "81", "82", "83", "84", "85", "86", "87", "88", "89", 
+            "90", "91", "92", "93", "94", "95", "96", "97", "98", "99", 
+            "100", "101", "102", "103", "104", "105", "106", "107", "108", 
+            "109", "110", "111", "112", "113", "114", "115"
+    })
+    public int index;
+
+    static final int LENGTH = 1 << 12;
+
+    Coding coding;       // may be a delta coding
+    Coding valueCoding;  // the coding of each single value
+    int[] values;
+    byte[] valueBytes;   // values, one after another in valueCoding
+    byte[] arrayBytes;   // values as a band in coding
+    PackageReader.MappedBuffer arrayIn;
+    ByteArrayOutputStream arrayOut;
+    final int[] pos = new int[1];
+    final int[] decoded = new int[LENGTH];
+
+    @Setup
+    public void setup() throws IOException {
+        coding = BandStructure.codingForIndex(index);
+        valueCoding = coding.setD(0);
+        values = sample(coding, LENGTH, 42);
+
+        valueBytes = new byte[LENGTH * valueCoding.B()];
+        pos[0] = 0;
+        for (int x : values) {
+            valueCoding.writeTo(valueBytes, pos, x);
+        }
+
+        arrayOut = new ByteArrayOutputStream(LENGTH * coding.B());
+        coding.writeArrayTo(arrayOut, values, 0, LENGTH);
+        arrayBytes = arrayOut.toByteArray();
+        arrayIn = new PackageReader.MappedBuffer(ByteBuffer.wrap(arrayBytes));
+        arrayIn.mark(0);
+    }
+
+    // Band-like values: mostly small, and representable both as single
+    // values and as a band.  A delta coding over a subrange takes the
+    // values from zero up to the size of the range.  Any other delta
+    // coding takes a running sum of small values, so that each delta
+    // is itself a value of the coding.
+    static int[] sample(Coding c, int n, long seed) {
+        Coding vc = c.setD(0);
+        long lo = vc.min(), hi = vc.max();
+        boolean sum = c.isDelta() && !c.isSubrange();
+        if (c.isDelta() && c.isSubrange()) {
+            lo = Math.max(lo, 0);
+            hi = Math.min(hi, (long) vc.max() - vc.min());
+        }
+        Random rnd = new Random(seed);
+        int[] a = new int[n];
+        int state = 0;
+        for (int i = 0; i < n; i++) {
+            long x = Math.round(rnd.nextGaussian() * 300);
+            if (lo >= 0)  x = Math.abs(x);
+            x = Math.max(lo, Math.min(hi, x));
+            a[i] = sum ? (state += (int) x) : (int) x;
+        }
+        return a;
+    }
+
+    @Benchmark
+    public int encodeValue() {
+        pos[0] = 0;
+        for (int x : values) {
+            valueCoding.writeTo(valueBytes, pos, x);
+        }
+        return pos[0];
+    }
+
+    @Benchmark
+    public int decodeValue() {
+        pos[0] = 0;
+        int sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += valueCoding.readFrom(valueBytes, pos);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int encodeArray() throws IOException {
+        arrayOut.reset();
+        coding.writeArrayTo(arrayOut, values, 0, LENGTH);
+        return arrayOut.size();
+    }
+
+    @Benchmark
+    public int[] decodeArray() throws IOException {
+        arrayIn.reset();
+        coding.readArrayFrom(arrayIn, decoded, 0, LENGTH);
+        return decoded;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Chooses a coding for one band at each effort level.  The shapes
+ * stand for common bands: small counts and sizes, ascending offsets
+ * which favor a delta coding, and a few popular values among noise
+ * which favor a population coding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodingChooserBenchmark {
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int effort;
+
+    @Param({"small", "ascending", "popular"})
+    public String shape;
+
+    @Param({"4096"})
+    public int length;
+
+    CodingChooser chooser;
+    int[] values;
+    final int[] sizes = new int[2];
+
+    @Setup
+    public void setup() {
+        chooser = new CodingChooser(effort, BandStructure.getBasicCodings());
+        values = sample(shape, length, 42);
+    }
+
+    static int[] sample(String shape, int n, long seed) {
+        Random rnd = new Random(seed);
+        int[] a = new int[n];
+        switch (shape) {
+        case "small":
+            for (int i = 0; i < n; i++)
+                a[i] = Math.abs((int) Math.round(rnd.nextGaussian() * 40));
+            break;
+        case "ascending":
+            for (int i = 0, x = 0; i < n; i++)
+                a[i] = (x += 1 + rnd.nextInt(64));
+            break;
+        case "popular":
+            int[] popular = { 0, 1, 7, 100, 4097, 65535 };
+            for (int i = 0; i < n; i++)
+                a[i] = (rnd.nextInt(8) != 0)
+                       ? popular[rnd.nextInt(popular.length)]
+                       : rnd.nextInt(1 << 20);
+            break;
+        default:
+            throw new IllegalArgumentException(shape);
+        }
+        return a;
+    }
+
+    @Benchmark
+    public CodingMethod choose() {
+        return chooser.choose(values, 0, length, BandStructure.UNSIGNED5, sizes);
+    }
+}
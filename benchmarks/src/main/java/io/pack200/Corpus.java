@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * The JAR files the engine benchmarks run on.  They are generated from
+ * the golden JAR checked in with the tests, less the odd class files
+ * kept there to test error handling, so every toolchain and every
+ * revision of the library is measured on the same bytes:
+ * <ul>
+ * <li>small: the first 8 entries of the golden JAR;
+ * <li>medium: the golden JAR;
+ * <li>large: eight copies of the golden JAR under distinct directories.
+ * </ul>
+ * The copies in the large JAR share their constant pool, so it measures
+ * the per-class work of a big archive more than its constant pool.
+ */
+final class Corpus {
+    private Corpus() {
+    }
+
+    static final String GOLDEN = System.getProperty("pack200.golden",
+            "../src/test/resources/data/golden.jar");
+
+    /** Return the JAR of the given size, generating it if need be. */
+    static synchronized File jar(String size) throws IOException {
+        File golden = new File(GOLDEN);
+        if (!golden.isFile())
+            throw new IOException("Golden JAR not found: "+golden.getAbsolutePath()
+                                  +" (set -Dpack200.golden)");
+        File jar = new File("target/corpus", size+".jar");
+        if (jar.isFile())
+            return jar;
+        jar.getParentFile().mkdirs();
+        File tmp = new File(jar.getPath()+".tmp");
+        try (JarFile in = new JarFile(golden);
+             JarOutputStream out = new JarOutputStream(new FileOutputStream(tmp))) {
+            List<JarEntry> entries = new ArrayList<>();
+            for (JarEntry je : Collections.list(in.entries())) {
+                // Some are malformed on purpose, and are passed with a warning.
+                if (!je.getName().startsWith("odds/"))
+                    entries.add(je);
+            }
+            switch (size) {
+            case "medium":
+                copy(in, entries, "", out);
+                break;
+            case "small":
+                copy(in, entries.subList(0, Math.min(8, entries.size())), "", out);
+                break;
+            case "large":
+                copy(in, entries, "", out);
+                for (int i = 1; i < 8; i++)
+                    copy(in, entries, "copy"+i+"/", out);
+                break;
+            default:
+                throw new IllegalArgumentException(size);
+            }
+        }
+        if (!tmp.renameTo(jar))
+            throw new IOException("Cannot rename "+tmp+" to "+jar);
+        return jar;
+    }
+
+    private static void copy(JarFile in, List<JarEntry> entries, String prefix,
+                             JarOutputStream out) throws IOException {
+        byte[] buf = new byte[1<<14];
+        for (JarEntry je : entries) {
+            // Only the first copy keeps the manifest where it belongs.
+            if (!prefix.isEmpty() && je.getName().startsWith("META-INF/"))
+                continue;
+            JarEntry copy = new JarEntry(prefix + je.getName());
+            copy.setTime(je.getTime());
+            out.putNextEntry(copy);
+            try (InputStream data = in.getInputStream(je)) {
+                for (int nr; (nr = data.read(buf)) > 0; ) {
+                    out.write(buf, 0, nr);
+                }
+            }
+            out.closeEntry();
+        }
+    }
+}
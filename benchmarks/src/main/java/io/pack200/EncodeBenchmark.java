@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes a band's worth of values to a stream, with Coding.writeTo and
+ * Coding.writeArrayTo, and with copies of those methods as they were
+ * before they encoded into a per-thread scratch buffer.  The copies
+ * allocate a buffer and a position box for each value, and a buffer
+ * and a delta array for each band.  Run it with {@code -prof gc}:
+ * {@code gc.alloc.rate.norm} of the current methods should be near zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({"BYTE1", "CHAR3", "BCI5", "UNSIGNED5", "DELTA5", "MDELTA5", "BYTE1_DELTA"})
+    public String coding;
+
+    static final int LENGTH = 1 << 12;
+
+    Coding c;
+    Coding vc;  // the coding of each single value
+    int[] values;
+    ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        switch (coding) {
+        case "BYTE1":        c = BandStructure.BYTE1;  break;
+        case "CHAR3":        c = BandStructure.CHAR3;  break;
+        case "BCI5":         c = BandStructure.BCI5;  break;
+        case "UNSIGNED5":    c = BandStructure.UNSIGNED5;  break;
+        case "DELTA5":       c = BandStructure.DELTA5;  break;
+        case "MDELTA5":      c = BandStructure.MDELTA5;  break;
+        // A delta coding over a subrange, which reduces each delta.
+        case "BYTE1_DELTA":  c = BandStructure.BYTE1.getDeltaCoding();  break;
+        default:  throw new IllegalArgumentException(coding);
+        }
+        vc = c.setD(0);
+        values = CodingBenchmark.sample(c, LENGTH, 42);
+        out = new ByteArrayOutputStream(LENGTH * c.B());
+    }
+
+    @Benchmark
+    public int writeTo() throws IOException {
+        out.reset();
+        for (int x : values) {
+            vc.writeTo(out, x);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeToAllocating() throws IOException {
+        out.reset();
+        for (int x : values) {
+            oldWriteTo(vc, out, x);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeArrayTo() throws IOException {
+        out.reset();
+        c.writeArrayTo(out, values, 0, LENGTH);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeArrayToAllocating() throws IOException {
+        out.reset();
+        oldWriteArrayTo(c, out, values, 0, LENGTH);
+        return out.size();
+    }
+
+    // Coding.writeTo(OutputStream, int), as it was.
+    static void oldWriteTo(Coding c, OutputStream out, int x) throws IOException {
+        byte[] buf = new byte[c.B()];
+        int[] pos = new int[1];
+        Coding.writeInt(buf, pos, x, c.B(), c.H(), c.S());
+        out.write(buf, 0, pos[0]);
+    }
+
+    // Coding.writeArrayTo, as it was.
+    static void oldWriteArrayTo(Coding c, OutputStream out, int[] a, int start, int end) throws IOException {
+        if (end <= start)  return;
+        for (int dstep = 0; dstep < c.del(); dstep++) {
+            int[] deltas;
+            if (!c.isSubrange())
+                deltas = Coding.makeDeltas(a, start, end, 0, 0);
+            else
+                deltas = Coding.makeDeltas(a, start, end, c.min(), c.max());
+            a = deltas;
+            start = 0;
+            end = deltas.length;
+        }
+        byte[] buf = new byte[1<<8];
+        final int bufmax = buf.length-c.B();
+        int[] pos = { 0 };
+        for (int i = start; i < end; ) {
+            while (pos[0] <= bufmax) {
+                c.writeTo(buf, pos, a[i++]);
+                if (i >= end)  break;
+            }
+            out.write(buf, 0, pos[0]);
+            pos[0] = 0;
+        }
+    }
+}
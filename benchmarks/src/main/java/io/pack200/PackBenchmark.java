@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packs and unpacks each JAR of the {@link Corpus} with the Java
+ * engines, at the default effort.  Run with {@code -prof gc} to see
+ * the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackBenchmark {
+    @Param({"small", "medium", "large"})
+    public String corpus;
+
+    File jar;
+    byte[] packed;
+    Pack200.Packer packer;
+    Pack200.Unpacker unpacker;
+
+    @Setup
+    public void setup() throws IOException {
+        jar = Corpus.jar(corpus);
+        packer = Pack200.newPacker();
+        unpacker = Pack200.newUnpacker();
+        unpacker.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        packer.pack(new JarFile(jar), buf);
+        packed = buf.toByteArray();
+    }
+
+    @Benchmark
+    public long pack() throws IOException {
+        Counter out = new Counter();
+        packer.pack(new JarFile(jar), out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long unpack() throws IOException {
+        Counter out = new Counter();
+        try (JarOutputStream jout = new JarOutputStream(out)) {
+            unpacker.unpack(new ByteArrayInputStream(packed), jout);
+        }
+        return out.count;
+    }
+
+    // Counts the output, so the benchmark is not measuring a copy.
+    static final class Counter extends OutputStream {
+        long count;
+
+        public void write(int b) {
+            count += 1;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
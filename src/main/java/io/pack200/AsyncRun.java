@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * One asynchronous pack or unpack, from file to file.  The engine
+ * doing the work checks between segments whether the run has been
+ * cancelled, and sends progress to the run's callback.
+ */
+final class AsyncRun extends CompletableFuture<Pack200.PackResult> {
+    final IntConsumer progress;  // may be null
+
+    interface Body {
+        void run(AsyncRun run) throws IOException;
+    }
+
+    private AsyncRun(IntConsumer progress) {
+        this.progress = progress;
+    }
+
+    /** Start body on the executor.  The run completes with the sizes of
+     *  in and out; if it fails or is cancelled, out is deleted.
+     */
+    static AsyncRun start(Executor executor, IntConsumer progress,
+                          Path in, Path out, Body body) {
+        AsyncRun run = new AsyncRun(progress);
+        Runnable task = () -> {
+            if (run.isDone())  return;  // cancelled before it started
+            long start = System.nanoTime();
+            try {
+                body.run(run);
+                if (run.isCancelled()) {
+                    // Cancelled after the last segment.
+                    Files.deleteIfExists(out);
+                    return;
+                }
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                run.complete(new Pack200.PackResult(Files.size(in), Files.size(out), elapsed));
+            } catch (Throwable ex) {
+                try {
+                    Files.deleteIfExists(out);
+                } catch (IOException ee) {
+                    ex.addSuppressed(ee);
+                }
+                run.completeExceptionally(ex);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RuntimeException ex) {
+            run.completeExceptionally(ex);  // rejected
+        }
+        return run;
+    }
+
+    /** Called between segments. */
+    void checkCancelled() {
+        if (isCancelled())
+            throw new CancellationException("stopped between segments");
+    }
+
+    void pack(Pack200.Packer packer, Path in, Path out) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(out))) {
+            JarFile jf = new JarFile(in.toFile());  // closed by pack
+            if (packer instanceof TLGlobals)
+                ((TLGlobals) packer).runAsync(this, run -> packer.pack(jf, os));
+            else
+                packer.pack(jf, os);
+        }
+    }
+
+    void unpack(Pack200.Unpacker unpacker, Path in, Path out) throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(out)))) {
+            if (unpacker instanceof TLGlobals)
+                ((TLGlobals) unpacker).runAsync(this, run -> unpacker.unpack(in.toFile(), jos));
+            else
+                unpacker.unpack(in.toFile(), jos);
+        }
+    }
+}
@@ -505,6 +505,7 @@ class Attribute implements Comparable<Attribute> {
         int bandCount;   // total number of elems
         Element[] elems; // tokenization of layout
         Attribute canon; // canonical instance of this layout
+        CompiledLayout compiled; // parser/unparser, made on first use
 
         public int ctype() { return ctype; }
         public String name() { return name; }
@@ -684,13 +685,19 @@ class Attribute implements Comparable<Attribute> {
             }
         }
 
+        CompiledLayout compiled() {
+            CompiledLayout cl = compiled;
+            if (cl == null)
+                compiled = cl = CompiledLayout.forLayout(this);
+            return cl;
+        }
+
         /** Return a sequence of tokens from the given attribute bytes.
          *  Sequence elements will be 1-1 correspondent with my layout tokens.
          */
         public void parse(Holder holder,
                           byte[] bytes, int pos, int len, ValueStream out) {
-            int end = parseUsing(getEntryPoint(),
-                                 holder, bytes, pos, len, out);
+            int end = compiled().parse(holder, bytes, pos, len, out);
             if (end != pos + len)
                 throw new InternalError("layout parsed "+(end-pos)+" out of "+len+" bytes");
         }
@@ -700,9 +707,7 @@ class Attribute implements Comparable<Attribute> {
          *  must be used to harden any references into integer indexes.
          */
         public Object unparse(ValueStream in, ByteArrayOutputStream out) {
-            Object[] fixups = { null };
-            unparseUsing(getEntryPoint(), fixups, in, out);
-            return fixups[0]; // return ref-bearing cookie, if any
+            return compiled().unparse(in, out); // ref-bearing cookie, if any
         }
 
         public String layoutForClassVersion(Package.Version vers) {
@@ -1262,6 +1267,7 @@ class Attribute implements Comparable<Attribute> {
     // Parse attribute bytes, putting values into bands.  Returns new pos.
     // Used when reading a class file (local refs resolved with local cpMap).
     // Also used for ad hoc scanning.
+    // Layout.parse runs the equivalent CompiledLayout instead.
     static
     int parseUsing(Layout.Element[] elems, Holder holder,
                    byte[] bytes, int pos, int len, ValueStream out) {
@@ -1403,6 +1409,7 @@ class Attribute implements Comparable<Attribute> {
     // Format attribute bytes, drawing values from bands.
     // Used when emptying attribute bands into a package model.
     // (At that point CP refs. are not yet assigned indexes.)
+    // Layout.unparse runs the equivalent CompiledLayout instead.
     static
     void unparseUsing(Layout.Element[] elems, Object[] fixups,
                       ValueStream in, ByteArrayOutputStream out) {
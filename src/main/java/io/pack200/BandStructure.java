@@ -37,6 +37,7 @@ import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
@@ -46,6 +47,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import static io.pack200.Constants.*;
 import java.util.LinkedList;
 
@@ -590,6 +596,16 @@ class BandStructure {
 
         @Override
         protected void chooseBandCodings() throws IOException {
+            chooseBandCoding(null);
+            putMetaCoding();
+        }
+
+        /** Choose the coding and meta-coding of this band, using the given
+         *  chooser, or the shared one if null.  Does not touch any other
+         *  band, so concurrent calls on different bands are safe, provided
+         *  each has its own chooser.
+         */
+        void chooseBandCoding(CodingChooser cc) {
             boolean canVary = canVaryCoding();
             if (!canVary || !shouldVaryCoding()) {
                 if (regularCoding.canRepresent(values, 0, length)) {
@@ -603,7 +619,7 @@ class BandStructure {
                 outputSize = -1;
             } else {
                 int[] sizes = {0,0};
-                bandCoding = chooseCoding(values, 0, length,
+                bandCoding = chooseCoding(cc, values, 0, length,
                                           regularCoding, name(),
                                           sizes);
                 outputSize = sizes[CodingChooser.BYTE_SIZE];
@@ -642,20 +658,23 @@ class BandStructure {
                 : (bandCoding+" : "+
                    outputSize+" != "+
                    ((Coding)bandCoding).getLength(values, 0, length)
-                   +" ?= "+getCodingChooser().computeByteSize(bandCoding,values,0,length)
+                   +" ?= "+(cc != null ? cc : getCodingChooser())
+                             .computeByteSize(bandCoding,values,0,length)
                    );
 
             // Compute outputSize of the escape value X, if any.
-            if (metaCoding.length > 0) {
-                // First byte XB of meta-coding is treated specially,
-                // but any other bytes go into the band headers band.
-                // This must be done before any other output happens.
-                if (outputSize >= 0)
-                    outputSize += computeEscapeSize();  // good cache
-                // Other bytes go into band_headers.
-                for (int i = 1; i < metaCoding.length; i++) {
-                    band_headers.putByte(metaCoding[i] & 0xFF);
-                }
+            // First byte XB of meta-coding is treated specially,
+            // but any other bytes go into the band headers band.
+            if (metaCoding.length > 0 && outputSize >= 0)
+                outputSize += computeEscapeSize();  // good cache
+        }
+
+        /** Put the meta-coding bytes after the first into band_headers.
+         *  This must be done in band order, before any other output happens.
+         */
+        void putMetaCoding() throws IOException {
+            for (int i = 1; i < metaCoding.length; i++) {
+                band_headers.putByte(metaCoding[i] & 0xFF);
             }
         }
 
@@ -791,6 +810,10 @@ class BandStructure {
         private ByteArrayOutputStream bytes;  // input buffer
         private ByteArrayOutputStream bytesForDump;
         private InputStream in;
+        // Files whose contents follow the bytes, copied out only
+        // when the band is written.
+        private List<Package.File> files;
+        private long filesLength;
 
         public ByteBand(String name) {
             super(name, BYTE1);
@@ -808,11 +831,12 @@ class BandStructure {
         public void destroy() {
             lengthForDebug = length();
             bytes = null;
+            files = null;
         }
 
         @Override
         public int length() {
-            return bytes == null ? -1 : bytes.size();
+            return bytes == null ? -1 : (int) Math.min(Integer.MAX_VALUE, computeOutputSize());
         }
         public void reset() {
             bytes.reset();
@@ -832,24 +856,33 @@ class BandStructure {
         @Override
         protected long computeOutputSize() {
             // do not cache
-            return bytes.size();
+            return bytes.size() + filesLength;
         }
 
         @Override
         public void writeDataTo(OutputStream out) throws IOException {
             if (length() == 0)  return;
-            bytes.writeTo(out);
+            writeBytesTo(out);
             if (optDumpBands)  dumpBand();
             destroy();  // done with the bits!
         }
 
+        private void writeBytesTo(OutputStream out) throws IOException {
+            bytes.writeTo(out);
+            if (files != null) {
+                for (Package.File file : files) {
+                    file.writeTo(out);
+                }
+            }
+        }
+
         private void dumpBand() throws IOException {
             assert(optDumpBands);
             try (OutputStream ds = getDumpStream(this, ".bnd")) {
                 if (bytesForDump != null)
                     bytesForDump.writeTo(ds);
                 else
-                    bytes.writeTo(ds);
+                    writeBytesTo(ds);
             }
         }
 
@@ -924,9 +957,21 @@ class BandStructure {
         public OutputStream collectorStream() {
             assert(phase() == COLLECT_PHASE);
             assert(bytes != null);
+            assert(files == null);  // bytes come first
             return bytes;
         }
 
+        /** Collect the contents of a file, but copy them only when
+         *  the band is written.  The file must not change until then.
+         */
+        public void putFile(Package.File file) {
+            assert(phase() == COLLECT_PHASE);
+            assert(bytes != null);
+            if (files == null)  files = new ArrayList<>();
+            files.add(file);
+            filesLength += file.getFileLength();
+        }
+
         public InputStream getInputStream() {
             assert(phase() == DISBURSE_PHASE);
             assert(in != null);
@@ -1093,10 +1138,13 @@ class BandStructure {
         return e;
     }
 
+    // If not null, the codings which won for bands in earlier segments.
+    CodingDecisions codingDecisions;
+
     private CodingChooser codingChooser;
     protected CodingChooser getCodingChooser() {
         if (codingChooser == null) {
-            codingChooser = new CodingChooser(effort, basicCodings);
+            codingChooser = newCodingChooser();
             if (codingChooser.stress != null
                 && this instanceof PackageWriter) {
                 // Twist the random state based on my first file.
@@ -1111,18 +1159,135 @@ class BandStructure {
         return codingChooser;
     }
 
+    private CodingChooser newCodingChooser() {
+        CodingChooser cc = new CodingChooser(effort, basicCodings);
+        if (cc.stress == null)
+            cc.decisions = codingDecisions;
+        return cc;
+    }
+
     public CodingMethod chooseCoding(int[] values, int start, int end,
                                      Coding regular, String bandName,
                                      int[] sizes) {
+        return chooseCoding(null, values, start, end, regular, bandName, sizes);
+    }
+
+    private CodingMethod chooseCoding(CodingChooser cc,
+                                      int[] values, int start, int end,
+                                      Coding regular, String bandName,
+                                      int[] sizes) {
         assert(optVaryCodings);
         if (effort <= MIN_EFFORT) {
             return regular;
         }
-        CodingChooser cc = getCodingChooser();
+        if (cc == null)  cc = getCodingChooser();
         if (verbose > 1 || cc.verbose > 1) {
             Utils.log.fine("--- chooseCoding "+bandName);
         }
-        return cc.choose(values, start, end, regular, sizes);
+        return cc.choose(values, start, end, regular, sizes, bandName);
+    }
+
+    /** Choose codings for all bands, as all_bands.chooseBandCodings() does,
+     *  but evaluate the value bands on nthreads worker threads, each with its
+     *  own CodingChooser.  The meta-coding bytes are then put into
+     *  band_headers in band order, so the output does not depend on nthreads.
+     */
+    void chooseBandCodings(int nthreads) throws IOException {
+        if (nthreads <= 1 || getCodingChooser().stress != null) {
+            // Stress mode draws all choices from one random sequence.
+            all_bands.chooseBandCodings();
+            if (verbose > 0)
+                getCodingChooser().reportEstimates();
+            return;
+        }
+        List<Band> bands = new ArrayList<>();
+        collectLeafBands(all_bands, bands);
+        List<ValueBand> work = new ArrayList<>();
+        for (Band b : bands) {
+            if (b instanceof ValueBand)  work.add((ValueBand) b);
+        }
+        // Long bands take longest, so start them first.
+        work.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        nthreads = Math.min(nthreads, work.size());
+        if (verbose > 0)
+            Utils.log.info("Choosing band codings on "+nthreads+" threads");
+
+        TLGlobals tlg = Utils.getTLGlobals();
+        AtomicInteger nextBand = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(nthreads, r -> {
+            Thread t = new Thread(r, "pack200-band-coder");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> workers = new ArrayList<>(nthreads);
+            for (int i = 0; i < nthreads; i++) {
+                workers.add(pool.submit(() -> {
+                    Utils.currentInstance.set(tlg);
+                    // The caller times the phase; count what we allocate.
+                    PhaseTimer timer = PhaseTimer.startWorker("chooseBandCodings");
+                    try {
+                        CodingChooser cc = newCodingChooser();
+                        for (int j; (j = nextBand.getAndIncrement()) < work.size(); ) {
+                            work.get(j).chooseBandCoding(cc);
+                        }
+                        getCodingChooser().addEstimates(cc);
+                    } finally {
+                        timer.stop();
+                        Utils.currentInstance.set(null);
+                    }
+                }));
+            }
+            for (Future<?> f : workers) {
+                f.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ie.getMessage());
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof RuntimeException)  throw (RuntimeException) t;
+            if (t instanceof Error)             throw (Error) t;
+            throw new IOException(t);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (Band b : bands) {
+            if (b instanceof ValueBand)
+                ((ValueBand) b).putMetaCoding();
+            else
+                b.chooseBandCodings();
+        }
+        if (verbose > 0)
+            getCodingChooser().reportEstimates();
+    }
+
+    /** Add the size and coding of each non-empty band to the metrics.
+     *  Call it once the codings are chosen.
+     */
+    void addBandMetrics(Pack200.Metrics metrics) {
+        List<Band> bands = new ArrayList<>();
+        collectLeafBands(all_bands, bands);
+        for (Band b : bands) {
+            long size = b.outputSize();
+            if (size == 0)  continue;
+            CodingMethod coding = (b instanceof ValueBand)
+                                  ? ((ValueBand) b).bandCoding
+                                  : b.regularCoding;
+            metrics.addBand(b.name(), size, String.valueOf(coding));
+        }
+    }
+
+    private static void collectLeafBands(Band b, List<Band> bands) {
+        if (b instanceof MultiBand) {
+            MultiBand mb = (MultiBand) b;
+            for (int i = 0; i < mb.size(); i++) {
+                collectLeafBands(mb.get(i), bands);
+            }
+        } else {
+            bands.add(b);
+        }
     }
 
     static final byte[] defaultMetaCoding = { _meta_default };
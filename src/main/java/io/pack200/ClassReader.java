@@ -35,10 +35,11 @@ import io.pack200.ConstantPool.BootstrapMethodEntry;
 import io.pack200.ConstantPool.Utf8Entry;
 import io.pack200.Package.Class;
 import io.pack200.Package.InnerClass;
-import java.io.DataInputStream;
-import java.io.FilterInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
@@ -53,34 +54,45 @@ class ClassReader {
 
     Package pkg;
     Class cls;
-    long inPos;
-    long constantPoolLimit = -1;
-    DataInputStream in;
+    final byte[] bytes;  // the whole class file
+    final int inLimit;   // end of the class file in bytes
+    int inPos;           // next byte to read
+    int constantPoolLimit = -1;
     Map<Attribute.Layout, Attribute> attrDefs;
     Map<Attribute.Layout, String> attrCommands;
     String unknownAttrCommand = "error";;
 
     ClassReader(Class cls, InputStream in) throws IOException {
+        this(cls, readAll(in));
+    }
+
+    ClassReader(Class cls, byte[] bytes) {
+        this(cls, bytes, bytes.length);
+    }
+
+    /** Read the class file in the first len bytes.  Class files are
+     *  small, so they are parsed by index arithmetic on the whole file,
+     *  not through a stream.
+     */
+    ClassReader(Class cls, byte[] bytes, int len) {
         this.pkg = cls.getPackage();
         this.cls = cls;
         this.verbose = pkg.verbose;
-        this.in = new DataInputStream(new FilterInputStream(in) {
-            public int read(byte b[], int off, int len) throws IOException {
-                int nr = super.read(b, off, len);
-                if (nr >= 0)  inPos += nr;
-                return nr;
-            }
-            public int read() throws IOException {
-                int ch = super.read();
-                if (ch >= 0)  inPos += 1;
-                return ch;
-            }
-            public long skip(long n) throws IOException {
-                long ns = super.skip(n);
-                if (ns >= 0)  inPos += ns;
-                return ns;
-            }
-        });
+        this.bytes = bytes;
+        this.inLimit = len;
+        assert(len <= bytes.length);
+    }
+
+    /** Read all of the given stream, which must be closed by the caller. */
+    static byte[] readAll(InputStream in) throws IOException {
+        byte[] buf = new byte[1<<12];
+        int len = 0;
+        for (int nr; (nr = in.read(buf, len, buf.length - len)) > 0; ) {
+            len += nr;
+            if (len == buf.length)
+                buf = Arrays.copyOf(buf, len * 2);
+        }
+        return (len == buf.length) ? buf : Arrays.copyOf(buf, len);
     }
 
     public void setAttrDefs(Map<Attribute.Layout, Attribute> attrDefs) {
@@ -92,27 +104,108 @@ class ClassReader {
     }
 
     private void skip(int n, String what) throws IOException {
-        Utils.log.warning("skipping "+n+" bytes of "+what);
-        long skipped = 0;
-        while (skipped < n) {
-            long j = in.skip(n - skipped);
-            assert(j > 0);
-            skipped += j;
-        }
-        assert(skipped == n);
+        if (verbose > 0)
+            Utils.log.fine("skipping "+n+" bytes of "+what);
+        need(n);
+        inPos += n;
+    }
+
+    // Make sure n more bytes are there, as DataInputStream would.
+    private void need(int n) throws EOFException {
+        if (n < 0 || n > inLimit - inPos)
+            throw new EOFException();
+    }
+
+    private int readUnsignedByte() throws IOException {
+        need(1);
+        return bytes[inPos++] & 0xFF;
     }
 
     private int readUnsignedShort() throws IOException {
-        return in.readUnsignedShort();
+        need(2);
+        int pos = inPos;
+        inPos = pos + 2;
+        return ((bytes[pos] & 0xFF) << 8) | (bytes[pos+1] & 0xFF);
     }
 
     private int readInt() throws IOException {
-        return in.readInt();
+        need(4);
+        int pos = inPos;
+        inPos = pos + 4;
+        return ((bytes[pos]   & 0xFF) << 24) | ((bytes[pos+1] & 0xFF) << 16)
+             | ((bytes[pos+2] & 0xFF) <<  8) |  (bytes[pos+3] & 0xFF);
+    }
+
+    private long readLong() throws IOException {
+        long hi = readInt();
+        return (hi << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    private byte[] readBytes(int n) throws IOException {
+        need(n);
+        byte[] res = Arrays.copyOfRange(bytes, inPos, inPos + n);
+        inPos += n;
+        return res;
+    }
+
+    /** Read a string in modified UTF-8, as DataInput.readUTF does, but
+     *  straight from the class file bytes.  Most are plain ASCII, which
+     *  is decoded without a scratch char array.
+     */
+    private String readUTF() throws IOException {
+        int utflen = readUnsignedShort();
+        need(utflen);
+        int pos = inPos, end = pos + utflen;
+        inPos = end;
+        int i = pos;
+        while (i < end && bytes[i] >= 0)  i++;
+        if (i == end)
+            return new String(bytes, pos, utflen, StandardCharsets.ISO_8859_1);
+        char[] chars = new char[utflen];
+        int n = 0;
+        for (int j = pos; j < i; j++) {
+            chars[n++] = (char) bytes[j];
+        }
+        while (i < end) {
+            int c = bytes[i] & 0xFF;
+            switch (c >> 4) {
+            case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+                // 0xxxxxxx
+                i++;
+                chars[n++] = (char) c;
+                break;
+            case 12: case 13:
+                // 110x xxxx   10xx xxxx
+                if (i + 2 > end)
+                    throw new UTFDataFormatException("malformed input: partial character at end");
+                int c2 = bytes[i+1];
+                if ((c2 & 0xC0) != 0x80)
+                    throw new UTFDataFormatException("malformed input around byte " + (i+1-pos));
+                chars[n++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+                i += 2;
+                break;
+            case 14:
+                // 1110 xxxx  10xx xxxx  10xx xxxx
+                if (i + 3 > end)
+                    throw new UTFDataFormatException("malformed input: partial character at end");
+                c2 = bytes[i+1];
+                int c3 = bytes[i+2];
+                if (((c2 & 0xC0) != 0x80) || ((c3 & 0xC0) != 0x80))
+                    throw new UTFDataFormatException("malformed input around byte " + (i+1-pos));
+                chars[n++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+                i += 3;
+                break;
+            default:
+                // 10xx xxxx,  1111 xxxx
+                throw new UTFDataFormatException("malformed input around byte " + (i-pos));
+            }
+        }
+        return new String(chars, 0, n);
     }
 
     /** Read a 2-byte int, and return the <em>global</em> CP entry for it. */
     private Entry readRef() throws IOException {
-        int i = in.readUnsignedShort();
+        int i = readUnsignedShort();
         return i == 0 ? null : cls.cpMap[i];
     }
 
@@ -179,7 +272,7 @@ class ClassReader {
             readAttributes(ATTR_CONTEXT_CLASS, cls);
             fixUnresolvedEntries();
             cls.finishReading();
-            assert(0 >= in.read(new byte[1]));
+            assert(inPos == inLimit);
             ok = true;
         } finally {
             if (!ok) {
@@ -189,7 +282,7 @@ class ClassReader {
     }
 
     void readMagicNumbers() throws IOException {
-        cls.magic = in.readInt();
+        cls.magic = readInt();
         if (cls.magic != JAVA_MAGIC)
             throw new Attribute.FormatException
                 ("Bad magic number in class file "
@@ -226,7 +319,7 @@ class ClassReader {
     }
 
     void readConstantPool() throws IOException {
-        int length = in.readUnsignedShort();
+        int length = readUnsignedShort();
         //System.err.println("reading CP, length="+length);
 
         int[] fixups = new int[length*4];
@@ -236,30 +329,30 @@ class ClassReader {
         cpMap[0] = null;
         for (int i = 1; i < length; i++) {
             //System.err.println("reading CP elt, i="+i);
-            int tag = in.readByte();
+            int tag = (byte) readUnsignedByte();
             switch (tag) {
                 case CONSTANT_Utf8:
-                    cpMap[i] = ConstantPool.getUtf8Entry(in.readUTF());
+                    cpMap[i] = ConstantPool.getUtf8Entry(readUTF());
                     break;
                 case CONSTANT_Integer:
                     {
-                        cpMap[i] = ConstantPool.getLiteralEntry(in.readInt());
+                        cpMap[i] = ConstantPool.getLiteralEntry(readInt());
                     }
                     break;
                 case CONSTANT_Float:
                     {
-                        cpMap[i] = ConstantPool.getLiteralEntry(in.readFloat());
+                        cpMap[i] = ConstantPool.getLiteralEntry(Float.intBitsToFloat(readInt()));
                     }
                     break;
                 case CONSTANT_Long:
                     {
-                        cpMap[i] = ConstantPool.getLiteralEntry(in.readLong());
+                        cpMap[i] = ConstantPool.getLiteralEntry(readLong());
                         cpMap[++i] = null;
                     }
                     break;
                 case CONSTANT_Double:
                     {
-                        cpMap[i] = ConstantPool.getLiteralEntry(in.readDouble());
+                        cpMap[i] = ConstantPool.getLiteralEntry(Double.longBitsToDouble(readLong()));
                         cpMap[++i] = null;
                     }
                     break;
@@ -270,7 +363,7 @@ class ClassReader {
                 case CONSTANT_MethodType:
                     fixups[fptr++] = i;
                     fixups[fptr++] = tag;
-                    fixups[fptr++] = in.readUnsignedShort();
+                    fixups[fptr++] = readUnsignedShort();
                     fixups[fptr++] = -1;  // empty ref2
                     break;
                 case CONSTANT_Fieldref:
@@ -279,20 +372,20 @@ class ClassReader {
                 case CONSTANT_NameandType:
                     fixups[fptr++] = i;
                     fixups[fptr++] = tag;
-                    fixups[fptr++] = in.readUnsignedShort();
-                    fixups[fptr++] = in.readUnsignedShort();
+                    fixups[fptr++] = readUnsignedShort();
+                    fixups[fptr++] = readUnsignedShort();
                     break;
                 case CONSTANT_InvokeDynamic:
                     fixups[fptr++] = i;
                     fixups[fptr++] = tag;
-                    fixups[fptr++] = -1 ^ in.readUnsignedShort();  // not a ref
-                    fixups[fptr++] = in.readUnsignedShort();
+                    fixups[fptr++] = -1 ^ readUnsignedShort();  // not a ref
+                    fixups[fptr++] = readUnsignedShort();
                     break;
                 case CONSTANT_MethodHandle:
                     fixups[fptr++] = i;
                     fixups[fptr++] = tag;
-                    fixups[fptr++] = -1 ^ in.readUnsignedByte();
-                    fixups[fptr++] = in.readUnsignedShort();
+                    fixups[fptr++] = -1 ^ readUnsignedByte();
+                    fixups[fptr++] = readUnsignedShort();
                     break;
                 default:
                     throw new ClassFormatException("Bad constant pool tag " +
@@ -518,7 +611,7 @@ class ClassReader {
                                                         unknownAttrCommand);
                 }
             }
-            long pos0 = inPos;  // in case we want to check it
+            int pos0 = inPos;  // in case we want to check it
             if (a.layout() == Package.attrCodeEmpty) {
                 // These are hardwired.
                 Class.Method m = (Class.Method) h;
@@ -544,9 +637,7 @@ class ClassReader {
                 assert(length == inPos - pos0);
                 // Keep empty attribute a...
             } else if (length > 0) {
-                byte[] bytes = new byte[length];
-                in.readFully(bytes);
-                a = a.addContent(bytes);
+                a = a.addContent(readBytes(length));
             }
             if (a.size() == 0 && !a.layout().isEmpty()) {
                 throw new ClassFormatException(name +
@@ -561,8 +652,7 @@ class ClassReader {
     void readCode(Code code) throws IOException {
         code.max_stack = readUnsignedShort();
         code.max_locals = readUnsignedShort();
-        code.bytes = new byte[readInt()];
-        in.readFully(code.bytes);
+        code.bytes = readBytes(readInt());
         Entry[] cpMap = cls.getCPMap();
         Instruction.opcodeChecker(code.bytes, cpMap, this.cls.version);
         int nh = readUnsignedShort();
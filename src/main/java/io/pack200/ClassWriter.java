@@ -33,15 +33,15 @@ import io.pack200.ConstantPool.MethodHandleEntry;
 import io.pack200.ConstantPool.BootstrapMethodEntry;
 import io.pack200.Package.Class;
 import io.pack200.Package.InnerClass;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
 import java.util.List;
 import static io.pack200.Constants.*;
 /**
  * Writer for a class file that is incorporated into a package.
+ * The class file is sized exactly first, then laid down in one
+ * byte array and handed to the output in a single write.
  * @author John Rose
  */
 class ClassWriter {
@@ -49,59 +49,165 @@ class ClassWriter {
 
     Package pkg;
     Class cls;
-    DataOutputStream out;
+    OutputStream out;
     Index cpIndex;
     Index bsmIndex;
 
+    byte[] bytes;  // the class file, once sized
+    int pos;       // next byte to write
+
+    // Maps from pool position to local CP index, reused class after
+    // class on each thread; see Index.mapByPoolIndex.
+    private static final ThreadLocal<int[]> poolMaps = new ThreadLocal<>();
+
     ClassWriter(Class cls, OutputStream out) throws IOException {
         this.pkg = cls.getPackage();
         this.cls = cls;
         this.verbose = pkg.verbose;
-        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out = out;
         this.cpIndex = ConstantPool.makeIndex(cls.toString(), cls.getCPMap());
         this.cpIndex.flattenSigs = true;
+        int[] poolMap = poolMap(cls.getCPMap());
+        this.cpIndex.mapByPoolIndex(poolMap);
         if (cls.hasBootstrapMethods()) {
             this.bsmIndex = ConstantPool.makeIndex(cpIndex.debugName+".BootstrapMethods",
                                                    cls.getBootstrapMethodMap());
+            this.bsmIndex.mapByPoolIndex(poolMap(cls.getBootstrapMethodMap()));
         }
         if (verbose > 1)
             Utils.log.fine("local CP="+(verbose > 2 ? cpIndex.dumpString() : cpIndex.toString()));
     }
 
-    private void writeShort(int x) throws IOException {
-        out.writeShort(x);
+    // Get this thread's pool map, big enough for the given entries.
+    private static int[] poolMap(Entry[] cpMap) {
+        int limit = 0;
+        for (Entry e : cpMap) {
+            if (e != null && e.poolIndex >= limit)
+                limit = e.poolIndex + 1;
+        }
+        int[] map = poolMaps.get();
+        if (map == null || map.length < limit) {
+            map = new int[Math.max(limit, (map == null) ? 1<<10 : map.length * 2)];
+            poolMaps.set(map);
+        }
+        return map;
+    }
+
+    private void writeByte(int x) {
+        bytes[pos++] = (byte) x;
+    }
+
+    private void writeShort(int x) {
+        bytes[pos]   = (byte)(x >>> 8);
+        bytes[pos+1] = (byte) x;
+        pos += 2;
+    }
+
+    private void writeInt(int x) {
+        bytes[pos]   = (byte)(x >>> 24);
+        bytes[pos+1] = (byte)(x >>> 16);
+        bytes[pos+2] = (byte)(x >>>  8);
+        bytes[pos+3] = (byte) x;
+        pos += 4;
+    }
+
+    private void writeLong(long x) {
+        writeInt((int)(x >>> 32));
+        writeInt((int) x);
+    }
+
+    private void writeBytes(byte[] b) {
+        System.arraycopy(b, 0, bytes, pos, b.length);
+        pos += b.length;
     }
 
-    private void writeInt(int x) throws IOException {
-        out.writeInt(x);
+    /** Write a string in modified UTF-8, as DataOutput.writeUTF does.
+     *  Its length was checked when the class was sized.
+     */
+    private void writeUTF(String s) {
+        int pos0 = pos;
+        pos += 2;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            int c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                bytes[pos++] = (byte) c;
+            } else if (c > 0x07FF) {
+                bytes[pos]   = (byte)(0xE0 | ((c >> 12) & 0x0F));
+                bytes[pos+1] = (byte)(0x80 | ((c >>  6) & 0x3F));
+                bytes[pos+2] = (byte)(0x80 | ( c        & 0x3F));
+                pos += 3;
+            } else {
+                bytes[pos]   = (byte)(0xC0 | ((c >>  6) & 0x1F));
+                bytes[pos+1] = (byte)(0x80 | ( c        & 0x3F));
+                pos += 2;
+            }
+        }
+        int utflen = pos - (pos0 + 2);
+        bytes[pos0]   = (byte)(utflen >>> 8);
+        bytes[pos0+1] = (byte) utflen;
+    }
+
+    private static int utfSize(String s) throws UTFDataFormatException {
+        int len = s.length();
+        int utflen = len;
+        for (int i = 0; i < len; i++) {
+            int c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)  continue;
+            utflen += (c > 0x07FF) ? 2 : 1;
+        }
+        if (utflen > 0xFFFF)
+            throw new UTFDataFormatException("encoded string too long: "+utflen+" bytes");
+        return utflen;
     }
 
     /** Write a 2-byte int representing a CP entry, using the local cpIndex. */
-    private void writeRef(Entry e) throws IOException {
+    private void writeRef(Entry e) {
         writeRef(e, cpIndex);
     }
 
     /** Write a 2-byte int representing a CP entry, using the given cpIndex. */
-    private void writeRef(Entry e, Index cpIndex) throws IOException {
+    private void writeRef(Entry e, Index cpIndex) {
         int i = (e == null) ? 0 : cpIndex.indexOf(e);
         writeShort(i);
     }
 
+    // Leave room for the 4-byte length of an attribute, to be filled
+    // in by endAttribute.
+    private int beginAttribute() {
+        pos += 4;
+        return pos;
+    }
+
+    private int endAttribute(int start) {
+        int length = pos - start;
+        int pos1 = pos;
+        pos = start - 4;
+        writeInt(length);
+        pos = pos1;
+        return length;
+    }
+
     void write() throws IOException {
         boolean ok = false;
         try {
             if (verbose > 1)  Utils.log.fine("...writing "+cls);
+            // Put the class attributes in the order they will be written.
+            reorderBSMandICS(cls);
+            bytes = new byte[classSize()];
+            pos = 0;
             writeMagicNumbers();
             writeConstantPool();
             writeHeader();
             writeMembers(false);  // fields
             writeMembers(true);   // methods
             writeAttributes(ATTR_CONTEXT_CLASS, cls);
+            assert(pos == bytes.length);
             /* Closing here will cause all the underlying
                streams to close, Causing the jar stream
                to close prematurely, instead we just flush.
                out.close();
              */
+            out.write(bytes);
             out.flush();
             ok = true;
         } finally {
@@ -111,7 +217,109 @@ class ClassWriter {
         }
     }
 
-    void writeMagicNumbers() throws IOException {
+    // Sizing.  These follow the write methods below, step by step.
+
+    int classSize() throws IOException {
+        int size = 8;  // magic and version
+        size += constantPoolSize();
+        size += 8 + 2 * cls.interfaces.length;
+        size += membersSize(cls.getFields());
+        size += membersSize(cls.getMethods());
+        size += attributesSize(cls);
+        return size;
+    }
+
+    int constantPoolSize() throws IOException {
+        Entry[] cpMap = cls.cpMap;
+        int size = 2;
+        for (int i = 0; i < cpMap.length; i++) {
+            Entry e = cpMap[i];
+            if (e == null)  continue;
+            byte tag = e.getTag();
+            switch (tag) {
+                case CONSTANT_Utf8:
+                    size += 3 + utfSize(e.stringValue());
+                    break;
+                case CONSTANT_Class:
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                    size += 3;
+                    break;
+                case CONSTANT_MethodHandle:
+                    size += 4;
+                    break;
+                case CONSTANT_Integer:
+                case CONSTANT_Float:
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                case CONSTANT_NameandType:
+                case CONSTANT_InvokeDynamic:
+                    size += 5;
+                    break;
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    size += 9;
+                    break;
+                default:
+                    // Let writeConstantPool report it.
+                    break;
+            }
+        }
+        return size;
+    }
+
+    int membersSize(List<? extends Class.Member> mems) {
+        int size = 2;
+        for (Class.Member m : mems) {
+            size += 6 + attributesSize(m);
+        }
+        return size;
+    }
+
+    int attributesSize(Attribute.Holder h) {
+        if (h.attributes == null)
+            return 2;
+        int size = 2;
+        for (Attribute a : h.attributes) {
+            size += 6;
+            if (a.layout() == Package.attrCodeEmpty ||
+                a.layout() == Package.attrBootstrapMethodsEmpty ||
+                a.layout() == Package.attrInnerClassesEmpty) {
+                if ("Code".equals(a.name())) {
+                    Class.Method m = (Class.Method) h;
+                    size += codeSize(m.code);
+                } else if ("BootstrapMethods".equals(a.name())) {
+                    size += bootstrapMethodsSize(cls);
+                } else if ("InnerClasses".equals(a.name())) {
+                    size += 2 + 8 * cls.getInnerClasses().size();
+                } else {
+                    throw new AssertionError();
+                }
+            } else {
+                size += a.size();
+            }
+        }
+        return size;
+    }
+
+    int codeSize(Code code) {
+        return 8 + code.bytes.length
+            + 2 + 8 * code.getHandlerCount()
+            + attributesSize(code);
+    }
+
+    int bootstrapMethodsSize(Class cls) {
+        int size = 2;
+        for (BootstrapMethodEntry e : cls.getBootstrapMethods()) {
+            size += 4 + 2 * e.argRefs.length;
+        }
+        return size;
+    }
+
+    // Writing.
+
+    void writeMagicNumbers() {
         writeInt(cls.magic);
         writeShort(cls.version.minor);
         writeShort(cls.version.major);
@@ -126,26 +334,26 @@ class ClassWriter {
             if (e == null)  continue;
             byte tag = e.getTag();
             if (verbose > 2)  Utils.log.fine("   CP["+i+"] = "+e);
-            out.write(tag);
+            writeByte(tag);
             switch (tag) {
                 case CONSTANT_Signature:
                     throw new AssertionError("CP should have Signatures remapped to Utf8");
                 case CONSTANT_Utf8:
-                    out.writeUTF(e.stringValue());
+                    writeUTF(e.stringValue());
                     break;
                 case CONSTANT_Integer:
-                    out.writeInt(((NumberEntry)e).numberValue().intValue());
+                    writeInt(((NumberEntry)e).numberValue().intValue());
                     break;
                 case CONSTANT_Float:
                     float fval = ((NumberEntry)e).numberValue().floatValue();
-                    out.writeInt(Float.floatToRawIntBits(fval));
+                    writeInt(Float.floatToRawIntBits(fval));
                     break;
                 case CONSTANT_Long:
-                    out.writeLong(((NumberEntry)e).numberValue().longValue());
+                    writeLong(((NumberEntry)e).numberValue().longValue());
                     break;
                 case CONSTANT_Double:
                     double dval = ((NumberEntry)e).numberValue().doubleValue();
-                    out.writeLong(Double.doubleToRawLongBits(dval));
+                    writeLong(Double.doubleToRawLongBits(dval));
                     break;
                 case CONSTANT_Class:
                 case CONSTANT_String:
@@ -154,7 +362,7 @@ class ClassWriter {
                     break;
                 case CONSTANT_MethodHandle:
                     MethodHandleEntry mhe = (MethodHandleEntry) e;
-                    out.writeByte(mhe.refKind);
+                    writeByte(mhe.refKind);
                     writeRef(mhe.getRef(0));
                     break;
                 case CONSTANT_Fieldref:
@@ -176,7 +384,7 @@ class ClassWriter {
         }
     }
 
-    void writeHeader() throws IOException {
+    void writeHeader() {
         writeShort(cls.flags);
         writeRef(cls.thisClass);
         writeRef(cls.superClass);
@@ -186,7 +394,7 @@ class ClassWriter {
         }
     }
 
-    void writeMembers(boolean doMethods) throws IOException {
+    void writeMembers(boolean doMethods) {
         List<? extends Class.Member> mems;
         if (!doMethods)
             mems = cls.getFields();
@@ -198,7 +406,7 @@ class ClassWriter {
         }
     }
 
-    void writeMember(Class.Member m, boolean doMethod) throws IOException {
+    void writeMember(Class.Member m, boolean doMethod) {
         if (verbose > 2)  Utils.log.fine("writeMember "+m);
         writeShort(m.flags);
         writeRef(m.getDescriptor().nameRef);
@@ -223,20 +431,13 @@ class ClassWriter {
         return;
     }
 
-    // handy buffer for collecting attrs
-    ByteArrayOutputStream buf    = new ByteArrayOutputStream();
-    DataOutputStream      bufOut = new DataOutputStream(buf);
-
-    void writeAttributes(int ctype, Attribute.Holder h) throws IOException {
+    void writeAttributes(int ctype, Attribute.Holder h) {
         if (h.attributes == null) {
             writeShort(0);  // attribute size
             return;
         }
-        // there may be cases if an InnerClass attribute is explicit, then the
-        // ordering could be wrong, fix the ordering before we write it out.
-        if (h instanceof Package.Class)
-            reorderBSMandICS(h);
-
+        // An explicit InnerClass attribute may have been out of order
+        // with BootstrapMethods; write has already fixed that.
         writeShort(h.attributes.size());
         for (Attribute a : h.attributes) {
             a.finishRefs(cpIndex);
@@ -245,10 +446,7 @@ class ClassWriter {
                 a.layout() == Package.attrBootstrapMethodsEmpty ||
                 a.layout() == Package.attrInnerClassesEmpty) {
                 // These are hardwired.
-                DataOutputStream savedOut = out;
-                assert(out != bufOut);
-                buf.reset();
-                out = bufOut;
+                int start = beginAttribute();
                 if ("Code".equals(a.name())) {
                     Class.Method m = (Class.Method) h;
                     writeCode(m.code);
@@ -261,26 +459,24 @@ class ClassWriter {
                 } else {
                     throw new AssertionError();
                 }
-                out = savedOut;
+                int length = endAttribute(start);
                 if (verbose > 2)
-                    Utils.log.fine("Attribute "+a.name()+" ["+buf.size()+"]");
-                writeInt(buf.size());
-                buf.writeTo(out);
+                    Utils.log.fine("Attribute "+a.name()+" ["+length+"]");
             } else {
                 if (verbose > 2)
                     Utils.log.fine("Attribute "+a.name()+" ["+a.size()+"]");
                 writeInt(a.size());
-                out.write(a.bytes());
+                writeBytes(a.bytes());
             }
         }
     }
 
-    void writeCode(Code code) throws IOException {
+    void writeCode(Code code) {
         code.finishRefs(cpIndex);
         writeShort(code.max_stack);
         writeShort(code.max_locals);
         writeInt(code.bytes.length);
-        out.write(code.bytes);
+        writeBytes(code.bytes);
         int nh = code.getHandlerCount();
         writeShort(nh);
         for (int i = 0; i < nh; i++) {
@@ -292,7 +488,7 @@ class ClassWriter {
         writeAttributes(ATTR_CONTEXT_CODE, code);
     }
 
-    void writeBootstrapMethods(Class cls) throws IOException {
+    void writeBootstrapMethods(Class cls) {
         List<BootstrapMethodEntry> bsms = cls.getBootstrapMethods();
         writeShort(bsms.size());
         for (BootstrapMethodEntry e : bsms) {
@@ -304,7 +500,7 @@ class ClassWriter {
         }
     }
 
-    void writeInnerClasses(Class cls) throws IOException {
+    void writeInnerClasses(Class cls) {
         List<InnerClass> ics = cls.getInnerClasses();
         writeShort(ics.size());
         for (InnerClass ic : ics) {
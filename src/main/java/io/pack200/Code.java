@@ -69,7 +69,7 @@ class Code extends Attribute.Holder {
 
     byte[] bytes;
     Fixups fixups;  // reference relocations, if any are required
-    Object insnMap; // array of instruction boundaries
+    InstructionMap insnMap; // instruction boundaries, made on demand
 
     int getLength() { return bytes.length; }
 
@@ -114,7 +114,7 @@ class Code extends Attribute.Holder {
     void setInstructionMap(int[] insnMap, int mapLen) {
         //int[] oldMap = null;
         //assert((oldMap = getInstructionMap()) != null);
-        this.insnMap = allocateInstructionMap(insnMap, mapLen);
+        this.insnMap = new InstructionMap(insnMap, mapLen, getLength());
         //assert(Arrays.equals(oldMap, getInstructionMap()));
     }
     void setInstructionMap(int[] insnMap) {
@@ -122,7 +122,7 @@ class Code extends Attribute.Holder {
     }
 
     int[] getInstructionMap() {
-        return expandInstructionMap(getInsnMap());
+        return getInsnMap().toArray();
     }
 
     void addFixups(Collection<Fixups.Fixup> moreFixups) {
@@ -152,7 +152,8 @@ class Code extends Attribute.Holder {
         } else {
             // References (to a local cpMap) are embedded in the bytes.
             ConstantPool.Entry[] cpMap = getCPMap();
-            for (Instruction i = instructionAt(0); i != null; i = i.next()) {
+            Instruction.Cursor i = new Instruction.Cursor();
+            for (boolean more = i.reset(bytes); more; more = i.next()) {
                 if (verbose > 4)
                     System.out.println(i);
                 int cpref = i.getCPIndex();
@@ -168,69 +169,22 @@ class Code extends Attribute.Holder {
     // Since bytecodes are the single largest contributor to
     // package size, it's worth a little bit of trouble
     // to reduce the per-bytecode memory footprint.
-    // In the current scheme, half of the bulk of these arrays
-    // due to bytes, and half to shorts.  (Ints are insignificant.)
-    // Given an average of 1.8 bytes per instruction, this means
-    // instruction boundary arrays are about a 75% overhead--tolerable.
-    // (By using bytes, we get 33% savings over just shorts and ints.
-    // Using both bytes and shorts gives 66% savings over just ints.)
-    static final boolean shrinkMaps = true;
+    // The instruction boundaries are kept in a bitset (InstructionMap)
+    // of about a fifth of a byte per bytecode, and only for methods
+    // which code BCIs at all:  in branches, handlers or attributes.
 
-    private Object allocateInstructionMap(int[] insnMap, int mapLen) {
-        int PClimit = getLength();
-        if (shrinkMaps && PClimit <= Byte.MAX_VALUE - Byte.MIN_VALUE) {
-            byte[] map = new byte[mapLen+1];
-            for (int i = 0; i < mapLen; i++) {
-                map[i] = (byte)(insnMap[i] + Byte.MIN_VALUE);
-            }
-            map[mapLen] = (byte)(PClimit + Byte.MIN_VALUE);
-            return map;
-        } else if (shrinkMaps && PClimit < Short.MAX_VALUE - Short.MIN_VALUE) {
-            short[] map = new short[mapLen+1];
-            for (int i = 0; i < mapLen; i++) {
-                map[i] = (short)(insnMap[i] + Short.MIN_VALUE);
-            }
-            map[mapLen] = (short)(PClimit + Short.MIN_VALUE);
-            return map;
-        } else {
-            int[] map = Arrays.copyOf(insnMap, mapLen + 1);
-            map[mapLen] = PClimit;
-            return map;
-        }
-    }
-    private int[] expandInstructionMap(Object map0) {
-        int[] imap;
-        if (map0 instanceof byte[]) {
-            byte[] map = (byte[]) map0;
-            imap = new int[map.length-1];
-            for (int i = 0; i < imap.length; i++) {
-                imap[i] = map[i] - Byte.MIN_VALUE;
-            }
-        } else if (map0 instanceof short[]) {
-            short[] map = (short[]) map0;
-            imap = new int[map.length-1];
-            for (int i = 0; i < imap.length; i++) {
-                imap[i] = map[i] - Byte.MIN_VALUE;
-            }
-        } else {
-            int[] map = (int[]) map0;
-            imap = Arrays.copyOfRange(map, 0, map.length - 1);
-        }
-        return imap;
-    }
-
-    Object getInsnMap() {
+    InstructionMap getInsnMap() {
         // Build a map of instruction boundaries.
         if (insnMap != null) {
             return insnMap;
         }
         int[] map = new int[getLength()];
         int fillp = 0;
-        for (Instruction i = instructionAt(0); i != null; i = i.next()) {
+        Instruction.Cursor i = new Instruction.Cursor();
+        for (boolean more = i.reset(bytes); more; more = i.next()) {
             map[fillp++] = i.getPC();
         }
-        // Make it byte[], short[], or int[] according to the max BCI.
-        insnMap = allocateInstructionMap(map, fillp);
+        insnMap = new InstructionMap(map, fillp, getLength());
         //assert(assertBCICodingsOK());
         return insnMap;
     }
@@ -244,83 +198,11 @@ class Code extends Attribute.Holder {
      */
     public int encodeBCI(int bci) {
         if (bci <= 0 || bci > getLength())  return bci;
-        Object map0 = getInsnMap();
-        int i, len;
-        if (shrinkMaps && map0 instanceof byte[]) {
-            byte[] map = (byte[]) map0;
-            len = map.length;
-            i = Arrays.binarySearch(map, (byte)(bci + Byte.MIN_VALUE));
-        } else if (shrinkMaps && map0 instanceof short[]) {
-            short[] map = (short[]) map0;
-            len = map.length;
-            i = Arrays.binarySearch(map, (short)(bci + Short.MIN_VALUE));
-        } else {
-            int[] map = (int[]) map0;
-            len = map.length;
-            i = Arrays.binarySearch(map, bci);
-        }
-        assert(i != -1);
-        assert(i != 0);
-        assert(i != len);
-        assert(i != -len-1);
-        return (i >= 0) ? i : len + bci - (-i-1);
+        return getInsnMap().encode(bci);
     }
     public int decodeBCI(int bciCode) {
         if (bciCode <= 0 || bciCode > getLength())  return bciCode;
-        Object map0 = getInsnMap();
-        int i, len;
-        // len == map.length
-        // If bciCode < len, result is map[bciCode], the common and fast case.
-        // Otherwise, let map[i] be the smallest map[*] larger than bci.
-        // Then, required by the return statement of encodeBCI:
-        //   bciCode == len + bci - i
-        // Thus:
-        //   bci-i == bciCode-len
-        //   map[i]-adj-i == bciCode-len ; adj in (0..map[i]-map[i-1])
-        // We can solve this by searching for adjacent entries
-        // map[i-1], map[i] such that:
-        //   map[i-1]-(i-1) <= bciCode-len < map[i]-i
-        // This can be approximated by searching map[i] for bciCode and then
-        // linear searching backward.  Given the right i, we then have:
-        //   bci == bciCode-len + i
-        // This linear search is at its worst case for indexes in the beginning
-        // of a large method, but it's not clear that this is a problem in
-        // practice, since BCIs are usually on instruction boundaries.
-        if (shrinkMaps && map0 instanceof byte[]) {
-            byte[] map = (byte[]) map0;
-            len = map.length;
-            if (bciCode < len)
-                return map[bciCode] - Byte.MIN_VALUE;
-            i = Arrays.binarySearch(map, (byte)(bciCode + Byte.MIN_VALUE));
-            if (i < 0)  i = -i-1;
-            int key = bciCode-len + Byte.MIN_VALUE;
-            for (;; i--) {
-                if (map[i-1]-(i-1) <= key)  break;
-            }
-        } else if (shrinkMaps && map0 instanceof short[]) {
-            short[] map = (short[]) map0;
-            len = map.length;
-            if (bciCode < len)
-                return map[bciCode] - Short.MIN_VALUE;
-            i = Arrays.binarySearch(map, (short)(bciCode + Short.MIN_VALUE));
-            if (i < 0)  i = -i-1;
-            int key = bciCode-len + Short.MIN_VALUE;
-            for (;; i--) {
-                if (map[i-1]-(i-1) <= key)  break;
-            }
-        } else {
-            int[] map = (int[]) map0;
-            len = map.length;
-            if (bciCode < len)
-                return map[bciCode];
-            i = Arrays.binarySearch(map, bciCode);
-            if (i < 0)  i = -i-1;
-            int key = bciCode-len;
-            for (;; i--) {
-                if (map[i-1]-(i-1) <= key)  break;
-            }
-        }
-        return bciCode-len + i;
+        return getInsnMap().decode(bciCode);
     }
 
     public void finishRefs(ConstantPool.Index ix) {
@@ -356,12 +238,6 @@ class Code extends Attribute.Holder {
 /* TEST CODE ONLY
     private boolean assertBCICodingsOK() {
         boolean ok = true;
-        int len = java.lang.reflect.Array.getLength(insnMap);
-        int base = 0;
-        if (insnMap.getClass().getComponentType() == Byte.TYPE)
-            base = Byte.MIN_VALUE;
-        if (insnMap.getClass().getComponentType() == Short.TYPE)
-            base = Short.MIN_VALUE;
         for (int i = -1, imax = getLength()+1; i <= imax; i++) {
             int bci = i;
             int enc = Math.min(-999, bci-1);
@@ -373,21 +249,12 @@ class Code extends Attribute.Holder {
                 ee.printStackTrace();
             }
             if (dec == bci) {
-                //System.out.println("BCI="+bci+(enc<len?"":"   ")+" enc="+enc);
+                //System.out.println("BCI="+bci+" enc="+enc);
                 continue;
             }
             if (ok) {
-                for (int q = 0; q <= 1; q++) {
-                    StringBuffer sb = new StringBuffer();
-                    sb.append("bci "+(q==0?"map":"del")+"["+len+"] = {");
-                    for (int j = 0; j < len; j++) {
-                        int mapi = ((Number)java.lang.reflect.Array.get(insnMap, j)).intValue() - base;
-                        mapi -= j*q;
-                        sb.append(" "+mapi);
-                    }
-                    sb.append(" }");
-                    System.out.println("*** "+sb);
-                }
+                System.out.println("*** bci map = "
+                                   +Arrays.toString(getInstructionMap()));
             }
             System.out.println("*** BCI="+bci+" enc="+enc+" dec="+dec);
             ok = false;
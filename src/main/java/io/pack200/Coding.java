@@ -28,6 +28,8 @@ package io.pack200;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import static io.pack200.Constants.*;
@@ -290,13 +292,17 @@ class Coding implements Comparable<Coding>, CodingMethod, Histogram.BitMetric {
 
     // Top-level coding of single integers:
     public static void writeInt(byte[] out, int[] outpos, int sx, int B, int H, int S) {
+        // Report number of bytes written by updating outpos[0]:
+        outpos[0] = writeInt(out, outpos[0], sx, B, H, S);
+    }
+    // Same, but returns the position after the bytes written.
+    static int writeInt(byte[] out, int pos, int sx, int B, int H, int S) {
         long ux = encodeSign32(sx, S);
         assert(ux == toUnsigned32((int)ux));
         assert(ux < codeRangeLong(B, H))
             : Long.toHexString(ux);
         int L = 256-H;
         long sum = ux;
-        int pos = outpos[0];
         for (int i = 0; i < B-1; i++) {
             if (sum < L)
                 break;
@@ -306,10 +312,9 @@ class Coding implements Comparable<Coding>, CodingMethod, Histogram.BitMetric {
             out[pos++] = (byte)b_i;
         }
         out[pos++] = (byte)sum;
-        // Report number of bytes written by updating outpos[0]:
-        outpos[0] = pos;
         // Check right away for mis-coding.
         //assert(sx == readInt(out, new int[1], B, H, S));
+        return pos;
     }
     public static int readInt(byte[] in, int[] inpos, int B, int H, int S) {
         // U(b[i]: i<n) == Sum[i<n]( b[i] * H^i )
@@ -455,35 +460,148 @@ class Coding implements Comparable<Coding>, CodingMethod, Histogram.BitMetric {
         return readIntFrom(in, B, H, S);
     }
     public void writeTo(OutputStream out, int x) throws IOException {
-        byte[] buf = new byte[B];
-        int[] pos = new int[1];
-        writeInt(buf, pos, x, B, H, S);
-        out.write(buf, 0, pos[0]);
+        byte[] buf = writeBuffer.get();
+        out.write(buf, 0, writeInt(buf, 0, x, B, H, S));
     }
 
+    // Scratch space for writeTo and writeArrayTo.  Codings are interned
+    // and shared by all threads, so each thread gets its own.
+    private static final ThreadLocal<byte[]> writeBuffer
+        = ThreadLocal.withInitial(() -> new byte[1<<8]);
+
     // Stream/array versions
     public void readArrayFrom(InputStream in, int[] a, int start, int end) throws IOException {
-        // %%% use byte[] buffer
-        for (int i = start; i < end; i++)
-            a[i] = readFrom(in);
+        if (in instanceof PackageReader.LimitedBuffer) {
+            // Decode straight out of the reader's buffer.
+            ((PackageReader.LimitedBuffer) in).readValues(this, a, start, end);
+        } else {
+            for (int i = start; i < end; i++)
+                a[i] = readFrom(in);
+        }
 
+        boolean subrange = isSubrange();
         for (int dstep = 0; dstep < del; dstep++) {
             long state = 0;
             for (int i = start; i < end; i++) {
                 state += a[i];
                 // Reduce array values to the required range.
-                if (isSubrange()) {
+                if (subrange) {
                     state = reduceToUnsignedRange(state);
                 }
                 a[i] = (int) state;
             }
         }
     }
+
+    /** Decode values from in, starting at inpos[0], into a[start..end),
+     *  as readFrom would.  Deltas are not undone.  Stops early if fewer
+     *  than B bytes remain before inmax, so that a value is never cut off.
+     *  Updates inpos[0] and returns the index of the next value to decode.
+     */
+    int readArrayFrom(byte[] in, int[] inpos, int inmax,
+                      int[] a, int start, int end) {
+        int pos = inpos[0];
+        int i = start;
+        if (B == 1) {
+            // BYTE1 and friends:  one byte per value.
+            int n = Math.min(end - i, inmax - pos);
+            if (S == 0) {
+                for (int k = 0; k < n; k++)
+                    a[i++] = in[pos++] & 0xFF;
+            } else {
+                for (int k = 0; k < n; k++)
+                    a[i++] = decodeSign32(in[pos++] & 0xFF, S);
+            }
+        } else if ((H & (H-1)) == 0) {
+            // UNSIGNED5, DELTA5, CHAR3, and other codings where H is a
+            // power of two:  U(b[i]: i<n) == Sum[i<n]( b[i] << (lgH*i) )
+            int lgH = Integer.numberOfTrailingZeros(H);
+            int safe = inmax - B;
+            for (; i < end && pos <= safe; i++) {
+                int b_i = in[pos++] & 0xFF;
+                long sum = b_i;
+                for (int k = 1, sh = lgH; k < B && b_i >= L; k++, sh += lgH) {
+                    b_i = in[pos++] & 0xFF;
+                    sum += (long)b_i << sh;
+                }
+                assert(sum >= 0 && sum < codeRangeLong(B, H));
+                a[i] = (S == 0) ? (int) sum : decodeSign32(sum, S);
+            }
+        } else {
+            int safe = inmax - B;
+            for (; i < end && pos <= safe; i++) {
+                long sum = 0;
+                long H_i = 1;
+                for (int k = 0; k < B; k++) {
+                    int b_i = in[pos++] & 0xFF;
+                    sum += b_i*H_i;
+                    H_i *= H;
+                    if (b_i < L)  break;
+                }
+                assert(sum >= 0 && sum < codeRangeLong(B, H));
+                a[i] = decodeSign32(sum, S);
+            }
+        }
+        inpos[0] = pos;
+        return i;
+    }
+    /** Decode values from in, starting at its position, into a[start..end),
+     *  as the byte[] version does, and stop early on the same terms
+     *  before inmax.  The bytes are fetched by absolute gets, and the
+     *  position is moved past them once, at the end.
+     *  Returns the index of the next value to decode.
+     */
+    int readArrayFrom(ByteBuffer in, int inmax,
+                      int[] a, int start, int end) {
+        int pos = in.position();
+        int i = start;
+        if (B == 1) {
+            int n = Math.min(end - i, inmax - pos);
+            if (S == 0) {
+                for (int k = 0; k < n; k++)
+                    a[i++] = in.get(pos++) & 0xFF;
+            } else {
+                for (int k = 0; k < n; k++)
+                    a[i++] = decodeSign32(in.get(pos++) & 0xFF, S);
+            }
+        } else if ((H & (H-1)) == 0) {
+            int lgH = Integer.numberOfTrailingZeros(H);
+            int safe = inmax - B;
+            for (; i < end && pos <= safe; i++) {
+                int b_i = in.get(pos++) & 0xFF;
+                long sum = b_i;
+                for (int k = 1, sh = lgH; k < B && b_i >= L; k++, sh += lgH) {
+                    b_i = in.get(pos++) & 0xFF;
+                    sum += (long)b_i << sh;
+                }
+                assert(sum >= 0 && sum < codeRangeLong(B, H));
+                a[i] = (S == 0) ? (int) sum : decodeSign32(sum, S);
+            }
+        } else {
+            int safe = inmax - B;
+            for (; i < end && pos <= safe; i++) {
+                long sum = 0;
+                long H_i = 1;
+                for (int k = 0; k < B; k++) {
+                    int b_i = in.get(pos++) & 0xFF;
+                    sum += b_i*H_i;
+                    H_i *= H;
+                    if (b_i < L)  break;
+                }
+                assert(sum >= 0 && sum < codeRangeLong(B, H));
+                a[i] = decodeSign32(sum, S);
+            }
+        }
+        ((Buffer) in).position(pos);
+        return i;
+    }
     public void writeArrayTo(OutputStream out, int[] a, int start, int end) throws IOException {
         if (end <= start)  return;
-        for (int dstep = 0; dstep < del; dstep++) {
+        boolean subrange = isSubrange();
+        // The last delta step, if any, is taken on the fly below.
+        for (int dstep = 0; dstep < del-1; dstep++) {
             int[] deltas;
-            if (!isSubrange())
+            if (!subrange)
                 deltas = makeDeltas(a, start, end, 0, 0);
             else
                 deltas = makeDeltas(a, start, end, min, max);
@@ -494,17 +612,30 @@ class Coding implements Comparable<Coding>, CodingMethod, Histogram.BitMetric {
         // The following code is a buffered version of this loop:
         //    for (int i = start; i < end; i++)
         //        writeTo(out, a[i]);
-        byte[] buf = new byte[1<<8];
+        // with a[i] replaced by its delta, as makeDeltas computes it.
+        byte[] buf = writeBuffer.get();
         final int bufmax = buf.length-B;
-        int[] pos = { 0 };
-        for (int i = start; i < end; ) {
-            while (pos[0] <= bufmax) {
-                writeTo(buf, pos, a[i++]);
-                if (i >= end)  break;
+        int pos = 0;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            int x = a[i];
+            if (del > 0) {
+                int value = x;
+                assert(!subrange || (value >= 0 && value+min <= max));
+                x = value - state;
+                state = value;
+                if (subrange) {
+                    // Reduce delta values to the required range.
+                    x = reduceToSignedRange(x, min, max);
+                }
+            }
+            if (pos > bufmax) {
+                out.write(buf, 0, pos);
+                pos = 0;
             }
-            out.write(buf, 0, pos[0]);
-            pos[0] = 0;
+            pos = writeInt(buf, pos, x, B, H, S);
         }
+        out.write(buf, 0, pos);
     }
 
     /** Tell if the range of this coding (number of distinct
@@ -29,6 +29,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -65,6 +66,8 @@ class CodingChooser {
 
     Random stress;  // If not null, stress mode oracle.
 
+    CodingDecisions decisions;  // If not null, winners to try first.
+
     // Element in sorted set of coding choices:
     static
     class Choice {
@@ -129,7 +132,21 @@ class CodingChooser {
                 = p200.getInteger(Utils.COM_PREFIX+"stress.coding");
             if (lstress != 0)
                 this.stress = new Random(lstress);
+            // How to size the trial encodings:  "deflate" runs them
+            // through zip, which is exact but slow; "entropy" and
+            // "entropy1" estimate from order-0 or order-1 byte statistics.
+            String estimator
+                = p200.getProperty(Utils.COM_PREFIX+"coding.estimator", "deflate");
+            switch (estimator) {
+            case "deflate":   break;
+            case "entropy":   entropySizer = new EntropySizer(false); break;
+            case "entropy1":  entropySizer = new EntropySizer(true);  break;
+            default:
+                throw new RuntimeException("Bad option: " + Utils.COM_PREFIX
+                                           + "coding.estimator = " + estimator);
+            }
         }
+        byteSizer = new Sizer(entropySizer != null ? entropySizer : zipOut);
 
         this.effort = effort;
         // The following line "makes sense" but is too much
@@ -234,6 +251,15 @@ class CodingChooser {
     public static final int ZIP_SIZE = 1;
 
     CodingMethod choose(int[] values, int start, int end, Coding regular, int[] sizes) {
+        return choose(values, start, end, regular, sizes, null);
+    }
+
+    /** Choose a coding for the values of the named band.  If there are
+     *  decisions to consult, try the coding which won for the band before,
+     *  and record the one which wins now.
+     */
+    CodingMethod choose(int[] values, int start, int end, Coding regular, int[] sizes,
+                        String band) {
         // Save the value array
         reset(values, start, end);
 
@@ -324,6 +350,35 @@ class CodingChooser {
                 bestZipSize = regularChoice.zipSize;
             }
         }
+        int regularZipSize = regularChoice.zipSize;
+
+        // Try first the coding which won for this band before.  If it
+        // wins by as much again, within the fuzz, search no further.
+        CodingDecisions.Decision hint = null;
+        int signature = 0;
+        if (band != null && decisions != null && topLevel) {
+            signature = CodingDecisions.signature(end - start, min, max);
+            hint = decisions.find(band, signature);
+        }
+        boolean settled = false;
+        if (hint != null) {
+            Choice c = (hint.coding < 0) ? regularChoice : choiceAt(hint.coding);
+            if (c != null && c.searchOrder == Integer.MAX_VALUE) {
+                evaluate(c);
+                int nextMaxd = updateDistances(c);
+                if (c == bestChoice)
+                    maxd = nextMaxd;
+            }
+            settled = (c == bestChoice
+                       && bestZipSize * fuzz <= regularZipSize * hint.ratio);
+            if (settled) {
+                searchOrderLimit = searchOrder;
+                if (verbose > 2)
+                    Utils.log.info("chooser: settled on "+bestMethod+" for "+band);
+            }
+        }
+        // Unless they lost last time, try the fancier codings.
+        boolean tryMore = !(settled && hint.plainOnly);
 
         int dscale = 1;
         // Continually select a new choice to evaluate.
@@ -352,25 +407,46 @@ class CodingChooser {
         }
         bestChoice = null;
 
-        if (!disablePopCoding
+        if (tryMore
+            && !disablePopCoding
             && optUsePopulationCoding
             && effort >= POP_EFFORT
             && bestMethod instanceof Coding) {
             tryPopulationCoding(plainBest);
         }
 
-        if (!disableRunCoding
+        if (tryMore
+            && !disableRunCoding
             && optUseAdaptiveCoding
             && effort >= RUN_EFFORT
             && bestMethod instanceof Coding) {
             tryAdaptiveCoding(plainBest);
         }
 
+        if (band != null && decisions != null && topLevel) {
+            Choice c = choiceFor(plainBest);
+            int coding = (c == regularChoice) ? -1 : (c == null) ? -2 : c.index;
+            if (coding >= -1) {
+                decisions.record(band, new CodingDecisions.Decision(
+                        signature, coding, bestMethod == plainBest,
+                        (float) bestZipSize / regularZipSize));
+            }
+        }
+
         // Pass back the requested information:
         if (sizes != null) {
             sizes[BYTE_SIZE] = bestByteSize;
             sizes[ZIP_SIZE]  = bestZipSize;
         }
+        if (entropySizer != null && topLevel && verbose > 0) {
+            // Measure the estimate against zip, for reportEstimates.
+            int deflated = deflatedSize(bestMethod);
+            estimatedZipTotal += bestZipSize;
+            deflatedZipTotal  += deflated;
+            if (verbose > 1)
+                Utils.log.info("chooser: estimated zip size "+bestZipSize+
+                               ", deflated "+deflated);
+        }
         if (verbose > 1) {
             Utils.log.info("chooser: result="+bestMethod+" "+
                              (zipSize1-bestZipSize)+
@@ -391,6 +467,22 @@ class CodingChooser {
         return choose(values, 0, values.length, regular, null);
     }
 
+    // The choice of the coding at the given index in allCodingChoices.
+    private Choice choiceAt(int index) {
+        for (Choice c : choices) {
+            if (c.index == index)  return c;
+        }
+        return null;
+    }
+
+    private Choice choiceFor(Coding coding) {
+        if (regularChoice.coding == coding)  return regularChoice;
+        for (Choice c : choices) {
+            if (c.coding == coding)  return c;
+        }
+        return null;
+    }
+
     private int markUsableChoices(Coding regular) {
         int numChoices = 0;
         for (int i = 0; i < choices.length; i++) {
@@ -1178,13 +1270,114 @@ class CodingChooser {
         }
     }
 
+    /** Estimates the zipped size of the bytes written to it from their
+     *  entropy, much faster than running them through a Deflater.
+     *  Each byte costs -lg(p) bits, where p is its frequency in the
+     *  output (order 0), or optionally its frequency after the previous
+     *  byte (order 1), whichever model is cheaper, after charging each
+     *  model for the table a decoder would need.
+     */
+    static
+    class EntropySizer extends OutputStream {
+        // Bits charged per distinct byte or byte pair, for the table.
+        static final int TABLE_BITS = 5;
+
+        private final int[] counts = new int[256];
+        private final int[] pairCounts;     // by (prev<<8)+b, if order 1
+        private final int[] contextCounts;  // by prev, if order 1
+        private int[] pairsUsed;            // nonzero pairCounts, to reset
+        private int distinct, distinctPairs;
+        private int count, prev;
+        // Running sums of xlgx(c):  over counts for order 0, and over
+        // context counts less pair counts for order 1.
+        private double sum0, sum1;
+
+        EntropySizer(boolean order1) {
+            if (order1) {
+                pairCounts    = new int[256 * 256];
+                contextCounts = new int[256];
+                pairsUsed     = new int[1 << 8];
+            } else {
+                pairCounts = contextCounts = null;
+            }
+        }
+
+        public void write(int b) {
+            b &= 0xFF;
+            int c = counts[b]++;
+            if (c == 0)  distinct++;
+            sum0 += xlgxStep(c);
+            count++;
+            if (pairCounts != null) {
+                int pair = (prev << 8) + b;
+                int pc = pairCounts[pair]++;
+                if (pc == 0) {
+                    if (distinctPairs == pairsUsed.length)
+                        pairsUsed = Arrays.copyOf(pairsUsed, distinctPairs * 2);
+                    pairsUsed[distinctPairs++] = pair;
+                }
+                sum1 += xlgxStep(contextCounts[prev]++) - xlgxStep(pc);
+                prev = b;
+            }
+        }
+        public void write(byte b[], int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        void reset() {
+            if (pairCounts != null) {
+                for (int i = 0; i < distinctPairs; i++) {
+                    pairCounts[pairsUsed[i]] = 0;
+                }
+                Arrays.fill(contextCounts, 0);
+            }
+            Arrays.fill(counts, 0);
+            distinct = distinctPairs = count = prev = 0;
+            sum0 = sum1 = 0;
+        }
+
+        int getZipSize() {
+            double bits = xlgx(count) - sum0 + TABLE_BITS * distinct;
+            if (pairCounts != null)
+                bits = Math.min(bits, sum1 + TABLE_BITS * distinctPairs);
+            return 1 + (int) Math.ceil(bits / 8);  // never zero
+        }
+
+        private static final double[] XLGX = new double[1 << 12];
+        static {
+            for (int x = 1; x < XLGX.length; x++)
+                XLGX[x] = x * Math.log(x) / Math.log(2);
+        }
+        // x lg(x), which is zero at zero
+        static double xlgx(int x) {
+            if (x < XLGX.length)  return XLGX[x];
+            return x * Math.log(x) / Math.log(2);
+        }
+        // the change in x lg(x) when x is incremented
+        static double xlgxStep(int x) {
+            return xlgx(x+1) - xlgx(x);
+        }
+    }
+
     private Sizer zipSizer  = new Sizer();
     private Deflater zipDef = new Deflater();
     private DeflaterOutputStream zipOut = new DeflaterOutputStream(zipSizer, zipDef);
-    private Sizer byteSizer = new Sizer(zipOut);
+    private EntropySizer entropySizer;  // if not null, replaces zipOut
+    private final Sizer byteSizer;      // copies to zipOut or entropySizer
     private Sizer byteOnlySizer = new Sizer();
 
+    // Totals of estimated and actual zip sizes of chosen codings,
+    // when estimating by entropy and verbose.
+    private long estimatedZipTotal, deflatedZipTotal;
+
     private void resetData() {
+        if (entropySizer != null) {
+            entropySizer.reset();
+            byteSizer.reset();
+            return;
+        }
         flushData();
         zipDef.reset();
         if (context != null) {
@@ -1209,10 +1402,43 @@ class CodingChooser {
         return byteSizer.getSize();
     }
     private int getZipSize() {
+        if (entropySizer != null)
+            return entropySizer.getZipSize();
         flushData();
         return zipSizer.getSize();
     }
 
+    // Run zip over the current values, coded by c.
+    private int deflatedSize(CodingMethod c) {
+        try {
+            flushData();
+            zipDef.reset();
+            zipSizer.reset();
+            c.writeArrayTo(zipOut, values, start, end);
+            flushData();
+            return zipSizer.getSize();
+        } catch (IOException ee) {
+            throw new RuntimeException(ee); // cannot happen
+        }
+    }
+
+    /** Add the zip size totals of another chooser into this one. */
+    synchronized void addEstimates(CodingChooser cc) {
+        estimatedZipTotal += cc.estimatedZipTotal;
+        deflatedZipTotal  += cc.deflatedZipTotal;
+    }
+
+    /** Log how far the entropy estimates of the chosen codings were
+     *  from their real zipped sizes.
+     */
+    void reportEstimates() {
+        if (entropySizer == null || deflatedZipTotal == 0)  return;
+        Utils.log.info("Estimated zip size of chosen codings "+
+                       estimatedZipTotal+", deflated "+deflatedZipTotal+
+                       " (off by "+pct(estimatedZipTotal - deflatedZipTotal,
+                                       deflatedZipTotal)+")");
+    }
+
 
     /// Stress-test helpers.
 
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The codings which won for each band, so that a later choice for a band
+ * with similar values can try the same coding first, and stop there if
+ * it does about as well again.  A packer carries decisions from segment
+ * to segment, and may save them to a file to carry them from run to run.
+ * <p>
+ * A packer keeps one set of decisions, and gives each segment a copy.
+ * The segment consults the decisions made before it, and records its own
+ * apart, to be added in when the segment is done.  So the choices do
+ * not depend on the order in which worker threads choose band codings.
+ */
+final class CodingDecisions {
+    private static final String HEADER = "# pack200 coding decisions 1";
+
+    /** One band's winning coding. */
+    static final class Decision {
+        final int signature;    // of the values, from signature()
+        final int coding;       // index in the chooser's codings, or -1
+                                // for the band's regular coding
+        final boolean plainOnly;  // population and adaptive coding lost
+        final float ratio;      // zipped size, relative to the regular coding
+
+        Decision(int signature, int coding, boolean plainOnly, float ratio) {
+            this.signature = signature;
+            this.coding = coding;
+            this.plainOnly = plainOnly;
+            this.ratio = ratio;
+        }
+
+        // Of two decisions for a band in one segment, keep the same one,
+        // whichever is recorded first.
+        boolean precedes(Decision that) {
+            if (this.ratio != that.ratio)
+                return this.ratio < that.ratio;
+            if (this.coding != that.coding)
+                return this.coding < that.coding;
+            if (this.signature != that.signature)
+                return this.signature < that.signature;
+            return this.plainOnly && !that.plainOnly;
+        }
+
+        public String toString() {
+            return signature+" "+coding+" "+plainOnly+" "+ratio;
+        }
+    }
+
+    private final Map<String, Decision> known;
+    private final Map<String, Decision> made = new HashMap<>();
+
+    CodingDecisions() {
+        this(new HashMap<>());
+    }
+
+    private CodingDecisions(Map<String, Decision> known) {
+        this.known = known;
+    }
+
+    /**
+     * A compact signature of a band's values:  the magnitudes of their
+     * count, least and greatest.  A decision is only used again for
+     * values with the same signature.
+     */
+    static int signature(int length, int min, int max) {
+        return (magnitude(length) << 14) | (magnitude(min) << 7) | magnitude(max);
+    }
+
+    // 0 for zero, 1..32 for positive and 33..64 for negative numbers.
+    private static int magnitude(int x) {
+        if (x >= 0)
+            return 32 - Integer.numberOfLeadingZeros(x);
+        return 64 - Integer.numberOfLeadingZeros(~x);
+    }
+
+    /** The decision made for the band before, if it had the same signature. */
+    Decision find(String band, int signature) {
+        Decision d = known.get(band);
+        return (d != null && d.signature == signature) ? d : null;
+    }
+
+    synchronized void record(String band, Decision d) {
+        Decision old = made.get(band);
+        if (old == null || d.precedes(old))
+            made.put(band, d);
+    }
+
+    /** A copy of these decisions, for a segment to consult and add to. */
+    CodingDecisions copy() {
+        return new CodingDecisions(new HashMap<>(known));
+    }
+
+    /** Add the decisions a segment made, replacing older ones. */
+    void addAll(CodingDecisions segment) {
+        synchronized (segment) {
+            known.putAll(segment.made);
+        }
+    }
+
+    int size() {
+        return known.size();
+    }
+
+    static CodingDecisions load(File file) throws IOException {
+        CodingDecisions decisions = new CodingDecisions();
+        try (BufferedReader in = Files.newBufferedReader(
+                file.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(in.readLine()))
+                throw new IOException("Not a coding decisions file: "+file);
+            for (String line; (line = in.readLine()) != null; ) {
+                // The band name goes last, since it may contain spaces.
+                String[] f = line.split(" ", 5);
+                if (f.length != 5)
+                    throw new IOException("Bad coding decision: "+line);
+                try {
+                    decisions.known.put(f[4], new Decision(
+                            Integer.parseInt(f[0]), Integer.parseInt(f[1]),
+                            Boolean.parseBoolean(f[2]), Float.parseFloat(f[3])));
+                } catch (NumberFormatException ee) {
+                    throw new IOException("Bad coding decision: "+line, ee);
+                }
+            }
+        }
+        return decisions;
+    }
+
+    void save(File file) throws IOException {
+        File tmp = new File(file.getPath()+".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(
+                tmp.toPath(), StandardCharsets.UTF_8))) {
+            out.println(HEADER);
+            for (Map.Entry<String, Decision> e : new TreeMap<>(known).entrySet()) {
+                out.println(e.getValue()+" "+e.getKey());
+            }
+            if (out.checkError())
+                throw new IOException("Cannot write "+tmp);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+}
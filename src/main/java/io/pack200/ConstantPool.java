@@ -51,12 +51,13 @@ class ConstantPool {
      *  Used for well-known strings like "SourceFile", "<init>", etc.
      *  Also used to back up more complex constant pool entries, like Class.
      */
-    public static synchronized Utf8Entry getUtf8Entry(String value) {
+    public static Utf8Entry getUtf8Entry(String value) {
         Map<String, Utf8Entry> utf8Entries  = Utils.getTLGlobals().getUtf8Entries();
         Utf8Entry e = utf8Entries.get(value);
         if (e == null) {
             e = new Utf8Entry(value);
-            utf8Entries.put(e.stringValue(), e);
+            Utf8Entry e0 = utf8Entries.putIfAbsent(e.stringValue(), e);
+            if (e0 != null)  e = e0;  // another thread got there first
         }
         return e;
     }
@@ -67,7 +68,8 @@ class ConstantPool {
         if (e == null) {
             e = new ClassEntry(getUtf8Entry(name));
             assert(name.equals(e.stringValue()));
-            classEntries.put(e.stringValue(), e);
+            ClassEntry e0 = classEntries.putIfAbsent(e.stringValue(), e);
+            if (e0 != null)  e = e0;  // another thread got there first
         }
         return e;
     }
@@ -80,7 +82,8 @@ class ConstantPool {
                 e = new StringEntry(getUtf8Entry((String)value));
             else
                 e = new NumberEntry((Number)value);
-            literalEntries.put(value, e);
+            LiteralEntry e0 = literalEntries.putIfAbsent(value, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
@@ -96,7 +99,8 @@ class ConstantPool {
         if (e == null) {
             e = new SignatureEntry(type);
             assert(e.stringValue().equals(type));
-            signatureEntries.put(type, e);
+            SignatureEntry e0 = signatureEntries.putIfAbsent(type, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
@@ -107,14 +111,13 @@ class ConstantPool {
 
     /** Factory for descriptor (name-and-type) constants. */
     public static DescriptorEntry getDescriptorEntry(Utf8Entry nameRef, SignatureEntry typeRef) {
-        Map<String, DescriptorEntry> descriptorEntries = Utils.getTLGlobals().getDescriptorEntries();
-        String key = DescriptorEntry.stringValueOf(nameRef, typeRef);
+        Map<Key, DescriptorEntry> descriptorEntries = Utils.getTLGlobals().getDescriptorEntries();
+        Key key = new Key(CONSTANT_NameandType, nameRef, typeRef);
         DescriptorEntry e = descriptorEntries.get(key);
         if (e == null) {
             e = new DescriptorEntry(nameRef, typeRef);
-            assert(e.stringValue().equals(key))
-                : (e.stringValue()+" != "+(key));
-            descriptorEntries.put(key, e);
+            DescriptorEntry e0 = descriptorEntries.putIfAbsent(key, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
@@ -125,27 +128,26 @@ class ConstantPool {
 
     /** Factory for member reference constants. */
     public static MemberEntry getMemberEntry(byte tag, ClassEntry classRef, DescriptorEntry descRef) {
-        Map<String, MemberEntry> memberEntries = Utils.getTLGlobals().getMemberEntries();
-        String key = MemberEntry.stringValueOf(tag, classRef, descRef);
+        Map<Key, MemberEntry> memberEntries = Utils.getTLGlobals().getMemberEntries();
+        Key key = new Key(tag, classRef, descRef);
         MemberEntry e = memberEntries.get(key);
         if (e == null) {
             e = new MemberEntry(tag, classRef, descRef);
-            assert(e.stringValue().equals(key))
-                : (e.stringValue()+" != "+(key));
-            memberEntries.put(key, e);
+            MemberEntry e0 = memberEntries.putIfAbsent(key, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
 
     /** Factory for MethodHandle constants. */
     public static MethodHandleEntry getMethodHandleEntry(byte refKind, MemberEntry memRef) {
-        Map<String, MethodHandleEntry> methodHandleEntries = Utils.getTLGlobals().getMethodHandleEntries();
-        String key = MethodHandleEntry.stringValueOf(refKind, memRef);
+        Map<Key, MethodHandleEntry> methodHandleEntries = Utils.getTLGlobals().getMethodHandleEntries();
+        Key key = new Key(refKind, memRef, null);
         MethodHandleEntry e = methodHandleEntries.get(key);
         if (e == null) {
             e = new MethodHandleEntry(refKind, memRef);
-            assert(e.stringValue().equals(key));
-            methodHandleEntries.put(key, e);
+            MethodHandleEntry e0 = methodHandleEntries.putIfAbsent(key, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
@@ -158,7 +160,8 @@ class ConstantPool {
         if (e == null) {
             e = new MethodTypeEntry(sigRef);
             assert(e.stringValue().equals(key));
-            methodTypeEntries.put(key, e);
+            MethodTypeEntry e0 = methodTypeEntries.putIfAbsent(key, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
@@ -168,13 +171,13 @@ class ConstantPool {
 
     /** Factory for InvokeDynamic constants. */
     public static InvokeDynamicEntry getInvokeDynamicEntry(BootstrapMethodEntry bssRef, DescriptorEntry descRef) {
-        Map<String, InvokeDynamicEntry> invokeDynamicEntries = Utils.getTLGlobals().getInvokeDynamicEntries();
-        String key = InvokeDynamicEntry.stringValueOf(bssRef, descRef);
+        Map<Key, InvokeDynamicEntry> invokeDynamicEntries = Utils.getTLGlobals().getInvokeDynamicEntries();
+        Key key = new Key(CONSTANT_InvokeDynamic, bssRef, descRef);
         InvokeDynamicEntry e = invokeDynamicEntries.get(key);
         if (e == null) {
             e = new InvokeDynamicEntry(bssRef, descRef);
-            assert(e.stringValue().equals(key));
-            invokeDynamicEntries.put(key, e);
+            InvokeDynamicEntry e0 = invokeDynamicEntries.putIfAbsent(key, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
@@ -187,17 +190,46 @@ class ConstantPool {
         if (e == null) {
             e = new BootstrapMethodEntry(bsmRef, argRefs);
             assert(e.stringValue().equals(key));
-            bootstrapMethodEntries.put(key, e);
+            BootstrapMethodEntry e0 = bootstrapMethodEntries.putIfAbsent(key, e);
+            if (e0 != null)  e = e0;
         }
         return e;
     }
 
+    /** Lookup key for an entry built from one or two other entries,
+     *  so that the factories can find it without making its string.
+     *  The tag distinguishes member kinds, or holds a refKind.
+     */
+    static final class Key {
+        final int tag;
+        final Entry ref0, ref1;
+        final int hash;
+        Key(int tag, Entry ref0, Entry ref1) {
+            this.tag  = tag;
+            this.ref0 = ref0;
+            this.ref1 = ref1;
+            int hc2 = (ref1 == null) ? 0 : ref1.hashCode();
+            this.hash = ((ref0.hashCode() + (hc2 << 8)) ^ hc2) * 31 + tag;
+        }
+        public int hashCode() {
+            return hash;
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))  return false;
+            Key that = (Key) o;
+            return this.tag == that.tag
+                && this.ref0.eq(that.ref0)
+                && (this.ref1 == null ? that.ref1 == null
+                    : that.ref1 != null && this.ref1.eq(that.ref1));
+        }
+    }
 
     /** Entries in the constant pool. */
     public abstract static
     class Entry implements Comparable<Object> {
         protected final byte tag;       // a CONSTANT_foo code
         protected int valueHash;        // cached hashCode
+        protected int poolIndex = -1;   // position in the segment's pool
 
         protected Entry(byte tag) {
             this.tag = tag;
@@ -1103,6 +1135,9 @@ class ConstantPool {
         // reports true for signatures, but the iterator()
         // never produces them!
         private int findIndexOf(Entry e) {
+            if (indexByPool != null) {
+                return findPoolIndexOf(e);
+            }
             if (indexKey == null) {
                 initializeIndex();
             }
@@ -1149,9 +1184,45 @@ class ConstantPool {
         // internal hash table
         protected Entry[] indexKey;
         protected int[]   indexValue;
+        // optional direct map, from Entry.poolIndex to index
+        protected int[]   indexByPool;
         protected void clearIndex() {
             indexKey   = null;
             indexValue = null;
+            indexByPool = null;
+        }
+
+        /** Look entries up by their pool positions, in the given map,
+         *  instead of building the hash table.  The map may be shared
+         *  with other indexes, and keeps their stale slots; those are
+         *  detected, and the few entries without a usable slot are
+         *  found by a scan.
+         */
+        protected void mapByPoolIndex(int[] map) {
+            for (int i = 0; i < cpMap.length; i++) {
+                Entry e = cpMap[i];
+                if (e == null)  continue;
+                int pi = e.poolIndex;
+                if (pi >= 0 && pi < map.length)
+                    map[pi] = i;
+            }
+            indexByPool = map;
+        }
+
+        private int findPoolIndexOf(Entry e) {
+            if (flattenSigs && e.tag == CONSTANT_Signature)
+                e = ((SignatureEntry) e).asUtf8Entry();
+            int pi = e.poolIndex;
+            if (pi >= 0 && pi < indexByPool.length) {
+                int index = indexByPool[pi];
+                if (index < cpMap.length && cpMap[index] == e)
+                    return index;
+            }
+            // Not numbered in this pool, or its slot was taken.
+            for (int i = 0; i < cpMap.length; i++) {
+                if (cpMap[i] == e)  return i;
+            }
+            return -1;
         }
         private int findIndexLocation(Entry e) {
             int size   = indexKey.length;
@@ -1357,6 +1428,42 @@ class ConstantPool {
             return idx;
         }
 
+        /** Number every entry by its position in the whole pool,
+         *  in definition order, for Index.mapByPoolIndex.  Class files
+         *  refer to signatures as Utf8 strings, and may need the given
+         *  extra entries, so those are numbered next, where the pool
+         *  does not already have them.
+         *  Return the number of positions handed out.
+         */
+        public int numberEntries(Collection<? extends Entry> extras) {
+            Index sigs = indexByTag[CONSTANT_Signature];
+            Entry[] sigMap = (sigs == null) ? noRefs : sigs.cpMap;
+            for (Entry e : sigMap) {
+                ((SignatureEntry) e).asUtf8Entry().poolIndex = -1;
+            }
+            for (Entry e : extras) {
+                e.poolIndex = -1;
+            }
+            int fillp = 0;
+            for (byte tag : TAGS_IN_ORDER) {
+                Index ix = indexByTag[tag];
+                if (ix == null)  continue;
+                for (Entry e : ix.cpMap) {
+                    e.poolIndex = fillp++;
+                }
+            }
+            for (Entry e : sigMap) {
+                Utf8Entry u = ((SignatureEntry) e).asUtf8Entry();
+                if (u.poolIndex < 0)
+                    u.poolIndex = fillp++;
+            }
+            for (Entry e : extras) {
+                if (e.poolIndex < 0)
+                    e.poolIndex = fillp++;
+            }
+            return fillp;
+        }
+
         public void initIndexByTag(byte tag, Index ix) {
             assert(indexByTag[tag] == null);  // do not init twice
             Entry[] cpMap = ix.cpMap;
@@ -66,6 +66,7 @@ class Driver {
         boolean doPack   = true;
         boolean doUnpack = false;
         boolean doRepack = false;
+        boolean doIncremental = false;
         boolean doZip = true;
         String logFile = null;
         String verboseProp = Utils.DEBUG_VERBOSE;
@@ -187,6 +188,9 @@ class Driver {
                 case "--repack":
                     doRepack = true;
                     break;
+                case "--incremental":
+                    doIncremental = true;
+                    break;
                 case "--no-gzip":
                     doZip = (val == null);
                     break;
@@ -220,9 +224,17 @@ class Driver {
         if (!av.isEmpty())
             jarfile = av.remove(0);
 
+        if (doIncremental && (doRepack || packfile.isEmpty() || packfile.equals("-"))) {
+            // The previous pack file is the base, so there must be one.
+            printUsage(doPack, false, System.err);
+            System.exit(2);
+            return;
+        }
+
         String newfile = "";  // output JAR file if --repack
         String bakfile = "";  // temporary backup of input JAR
         String tmpfile = "";  // temporary file to be deleted
+        String basefile = ""; // previous pack file if --incremental
         if (doRepack) {
             // The first argument is the target JAR file.
             // (Note:  *.pac is nonstandard, but may be necessary
@@ -285,6 +297,14 @@ class Driver {
 
             if (doPack) {
                 // Mode = Pack.
+                if (doIncremental) {
+                    // Move the previous pack file aside, to repack
+                    // only the segments whose input has changed.
+                    basefile = moveBase(packfile);
+                    if (!basefile.isEmpty())
+                        jpack.properties().put(Utils.PACK_INCREMENTAL_BASE, basefile);
+                    jpack.properties().put(Utils.PACK_INCREMENTAL_INDEX, packfile+".idx");
+                }
                 JarFile in = new JarFile(new File(jarfile));
                 OutputStream out;
                 // Packfile must be -, *.gz, *.pack, or *.pac.
@@ -314,6 +334,12 @@ class Driver {
                 jpack.pack(in, out);
                 //in.close();  // p200 closes in but not out
                 out.close();
+                if (!basefile.isEmpty()) {
+                    // Success; the base is no longer needed.
+                    new File(basefile).delete();
+                    new File(basefile+".idx").delete();
+                    basefile = "";
+                }
             }
 
             if (doRepack && newfile.equals(jarfile)) {
@@ -365,6 +391,12 @@ class Driver {
             }
 
         } finally {
+            // Put back the previous pack file, if packing failed.
+            if (!basefile.isEmpty()) {
+                new File(packfile).delete();
+                new File(basefile).renameTo(new File(packfile));
+                new File(basefile+".idx").renameTo(new File(packfile+".idx"));
+            }
             // Close jarfile recovery bracket.
             if (!bakfile.isEmpty()) {
                 File jarFile = new File(jarfile);
@@ -394,6 +426,25 @@ class Driver {
         return tmpfile.toFile();
     }
 
+    // Move a pack file and its segment index aside, to be the base of
+    // an incremental pack.  Return the new name, or "" if there is none.
+    private static
+    String moveBase(String packfile) throws IOException {
+        File pack = new File(packfile);
+        File idx = new File(packfile+".idx");
+        if (!pack.exists() || !idx.exists())
+            return "";
+        File base = createTempFile(packfile, ".base");
+        base.delete();
+        if (!pack.renameTo(base))
+            return "";
+        if (!idx.renameTo(new File(base.getPath()+".idx"))) {
+            base.renameTo(pack);
+            return "";
+        }
+        return base.getPath();
+    }
+
     private static
     void printUsage(boolean doPack, boolean full, PrintStream out) {
         String prog = doPack ? "pack200" : "unpack200";
@@ -435,6 +486,7 @@ class Driver {
     private static final String PACK200_OPTION_MAP =
         (""
          +"--repack                 $ \n  -r +>- @--repack              $ \n"
+         +"--incremental            $ \n"
          +"--no-gzip                $ \n  -g +>- @--no-gzip             $ \n"
          +"--strip-debug            $ \n  -G +>- @--strip-debug         $ \n"
          +"--no-keep-file-order     $ \n  -O +>- @--no-keep-file-order  $ \n"
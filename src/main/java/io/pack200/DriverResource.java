@@ -70,6 +70,8 @@ public class DriverResource extends ListResourceBundle {
                 "  -G, --strip-debug               remove debugging attributes (SourceFile,",
                 "                                  LineNumberTable, LocalVariableTable",
                 "                                  and LocalVariableTypeTable) while packing",
+                "  --incremental                   repack only the segments of the existing",
+                "                                  pack file whose input has changed",
                 "  -O, --no-keep-file-order        do not transmit file ordering information",
                 "  --keep-file-order               (default) preserve input file ordering",
                 "  -S{N}, --segment-limit={N}      limit segment sizes (default unlimited)",
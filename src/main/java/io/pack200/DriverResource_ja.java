@@ -70,6 +70,8 @@ public class DriverResource_ja extends ListResourceBundle {
                 "  -G\u3001--strip-debug               \u5727\u7E2E\u4E2D\u306B\u30C7\u30D0\u30C3\u30B0\u5C5E\u6027(SourceFile\u3001",
                 "                                  LineNumberTable\u3001LocalVariableTable",
                 "                                  \u3001LocalVariableTypeTable)\u3092\u524A\u9664\u3057\u307E\u3059",
+                "  --incremental                   \u65E2\u5B58\u306Epack\u30D5\u30A1\u30A4\u30EB\u306E\u3046\u3061\u3001\u5165\u529B\u304C\u5909\u66F4\u3055\u308C\u305F",
+                "                                  \u30BB\u30B0\u30E1\u30F3\u30C8\u306E\u307F\u3092\u518D\u5727\u7E2E\u3057\u307E\u3059",
                 "  -O\u3001--no-keep-file-order        \u30D5\u30A1\u30A4\u30EB\u306E\u9806\u5E8F\u4ED8\u3051\u60C5\u5831\u3092\u8EE2\u9001\u3057\u307E\u305B\u3093",
                 "  --keep-file-order               (\u30C7\u30D5\u30A9\u30EB\u30C8)\u5165\u529B\u30D5\u30A1\u30A4\u30EB\u306E\u9806\u5E8F\u4ED8\u3051\u3092\u4FDD\u6301\u3057\u307E\u3059",
                 "  -S{N}\u3001--segment-limit={N}      \u30BB\u30B0\u30E1\u30F3\u30C8\u30FB\u30B5\u30A4\u30BA\u3092\u5236\u9650\u3057\u307E\u3059(\u30C7\u30D5\u30A9\u30EB\u30C8\u306F\u7121\u5236\u9650)",
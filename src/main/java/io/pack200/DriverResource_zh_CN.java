@@ -70,6 +70,7 @@ public class DriverResource_zh_CN extends ListResourceBundle {
                 "  -G, --strip-debug               \u6253\u5305\u65F6\u5220\u9664\u8C03\u8BD5\u5C5E\u6027 (SourceFile,",
                 "                                  LineNumberTable, LocalVariableTable",
                 "                                  \u548C LocalVariableTypeTable)",
+                "  --incremental                   \u4EC5\u91CD\u65B0\u6253\u5305\u73B0\u6709\u5305\u6587\u4EF6\u4E2D\u8F93\u5165\u5DF2\u66F4\u6539\u7684\u6BB5",
                 "  -O, --no-keep-file-order        \u4E0D\u4F20\u8F93\u6587\u4EF6\u6392\u5E8F\u4FE1\u606F",
                 "  --keep-file-order               (\u9ED8\u8BA4\u503C) \u4FDD\u7559\u8F93\u5165\u6587\u4EF6\u6392\u5E8F",
                 "  -S{N}, --segment-limit={N}      \u9650\u5236\u6BB5\u5927\u5C0F (\u9ED8\u8BA4\u4E3A\u65E0\u9650\u5236)",
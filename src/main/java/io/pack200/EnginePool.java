@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+/**
+ * A fixed set of engines shared by concurrent callers.  Each call
+ * borrows an idle engine, loads it with the pool's properties, and
+ * puts it back when done.  An engine clears its constant pool maps
+ * after each run, but keeps them, so they need not be regrown.
+ */
+abstract class EnginePool<E extends TLGlobals> {
+    private final BlockingQueue<E> idle;
+    final PropMap props = new PropMap();
+
+    EnginePool(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("pool size "+size);
+        idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            idle.add(newEngine());
+        }
+    }
+
+    abstract E newEngine();
+
+    public SortedMap<String, String> properties() {
+        return props;
+    }
+
+    E borrow() throws IOException {
+        E engine;
+        try {
+            engine = idle.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ie.getMessage());
+        }
+        engine.props.clear();
+        engine.props.putAll(props);
+        return engine;
+    }
+
+    private volatile Pack200.Metrics lastMetrics;
+
+    public Pack200.Metrics metrics() {
+        return lastMetrics;
+    }
+
+    void release(E engine) {
+        Pack200.Metrics m = engine.metrics();
+        if (m != null)
+            lastMetrics = m;
+        boolean added = idle.offer(engine);
+        assert(added);
+    }
+
+    static final class Packers extends EnginePool<PackerImpl>
+                               implements Pack200.Packer {
+        Packers(int size) {
+            super(size);
+        }
+
+        PackerImpl newEngine() {
+            return new PackerImpl();
+        }
+
+        public void pack(JarFile in, OutputStream out) throws IOException {
+            PackerImpl engine = borrow();
+            try {
+                engine.pack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        public void pack(JarInputStream in, OutputStream out) throws IOException {
+            PackerImpl engine = borrow();
+            try {
+                engine.pack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        @Override
+        public void pack(Path in, WritableByteChannel out) throws IOException {
+            PackerImpl engine = borrow();
+            try {
+                engine.pack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        @Override
+        public CompletableFuture<Pack200.PackResult> packAsync(Path in, Path out,
+                                                               Executor executor,
+                                                               IntConsumer progress) {
+            return AsyncRun.start(executor, progress, in, out, run -> {
+                PackerImpl engine = borrow();
+                try {
+                    run.pack(engine, in, out);
+                } finally {
+                    release(engine);
+                }
+            });
+        }
+    }
+
+    static final class Unpackers extends EnginePool<UnpackerImpl>
+                                 implements Pack200.Unpacker {
+        Unpackers(int size) {
+            super(size);
+        }
+
+        UnpackerImpl newEngine() {
+            return new UnpackerImpl();
+        }
+
+        public void unpack(InputStream in, JarOutputStream out) throws IOException {
+            UnpackerImpl engine = borrow();
+            try {
+                engine.unpack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        public void unpack(File in, JarOutputStream out) throws IOException {
+            UnpackerImpl engine = borrow();
+            try {
+                engine.unpack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        @Override
+        public void unpack(ReadableByteChannel in, Path out) throws IOException {
+            UnpackerImpl engine = borrow();
+            try {
+                engine.unpack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        @Override
+        public void unpack(ByteBuffer in, JarOutputStream out) throws IOException {
+            UnpackerImpl engine = borrow();
+            try {
+                engine.unpack(in, out);
+            } finally {
+                release(engine);
+            }
+        }
+
+        @Override
+        public CompletableFuture<Pack200.PackResult> unpackAsync(Path in, Path out,
+                                                                 Executor executor,
+                                                                 IntConsumer progress) {
+            return AsyncRun.start(executor, progress, in, out, run -> {
+                UnpackerImpl engine = borrow();
+                try {
+                    run.unpack(engine, in, out);
+                } finally {
+                    release(engine);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Holds the contents of a Package.File.  Small contents live on the
+ * heap; past the package's spill threshold they move to a temporary
+ * file, so that large pass-through resources are never held in memory.
+ * Resources from a jar file need not be read until they are written.
+ * A store may replace itself when written to, so callers must keep the
+ * store returned by {@link #write}.
+ */
+abstract class FileStore {
+    /** Append bytes, and return the store which now holds the contents. */
+    abstract FileStore write(byte[] b, int off, int len) throws IOException;
+
+    abstract long length();
+
+    abstract void writeTo(OutputStream out) throws IOException;
+
+    /** A stream of the contents.  Close it when done. */
+    abstract InputStream getInputStream() throws IOException;
+
+    /** Let go of any resources, such as a temporary file. */
+    void release() {
+    }
+
+    /** Contents in heap blocks.  The default store. */
+    static final class Heap extends FileStore {
+        private final long spillThreshold;  // -1 if never
+        private final ArrayList<byte[]> prepend = new ArrayList<>();
+        private final ByteArrayOutputStream append = new ByteArrayOutputStream();
+
+        Heap(long spillThreshold) {
+            this.spillThreshold = spillThreshold;
+        }
+
+        FileStore write(byte[] b, int off, int len) throws IOException {
+            if (((append.size() | len) << 2) < 0) {
+                prepend.add(append.toByteArray());
+                append.reset();
+            }
+            append.write(b, off, len);
+            if (spillThreshold >= 0 && length() > spillThreshold) {
+                Spill spill = new Spill();
+                for (byte[] block : prepend) {
+                    spill.write(block, 0, block.length);
+                }
+                byte[] tail = append.toByteArray();
+                return spill.write(tail, 0, tail.length);
+            }
+            return this;
+        }
+        long length() {
+            long len = 0;
+            for (byte[] block : prepend) {
+                len += block.length;
+            }
+            return len + append.size();
+        }
+        void writeTo(OutputStream out) throws IOException {
+            for (byte[] block : prepend) {
+                out.write(block);
+            }
+            append.writeTo(out);
+        }
+        InputStream getInputStream() {
+            InputStream in = new ByteArrayInputStream(append.toByteArray());
+            if (prepend.isEmpty())  return in;
+            List<InputStream> isa = new ArrayList<>(prepend.size()+1);
+            for (byte[] bytes : prepend) {
+                isa.add(new ByteArrayInputStream(bytes));
+            }
+            isa.add(in);
+            return new SequenceInputStream(Collections.enumeration(isa));
+        }
+    }
+
+    /** Contents borrowed from a buffer, such as a mapped pack file. */
+    static final class Slice extends FileStore {
+        private final long spillThreshold;
+        private final ByteBuffer slice;
+
+        Slice(ByteBuffer slice, long spillThreshold) {
+            this.slice = slice;
+            this.spillThreshold = spillThreshold;
+        }
+
+        FileStore write(byte[] b, int off, int len) throws IOException {
+            // Copy out the slice before adding to it.
+            byte[] buf = new byte[slice.remaining()];
+            slice.duplicate().get(buf);
+            return new Heap(spillThreshold)
+                .write(buf, 0, buf.length)
+                .write(b, off, len);
+        }
+        long length() {
+            return slice.remaining();
+        }
+        void writeTo(OutputStream out) throws IOException {
+            ByteBuffer b = slice.duplicate();
+            byte[] buf = new byte[Math.min(b.remaining(), 1 << 16)];
+            while (b.hasRemaining()) {
+                int nr = Math.min(buf.length, b.remaining());
+                b.get(buf, 0, nr);
+                out.write(buf, 0, nr);
+            }
+        }
+        InputStream getInputStream() {
+            return Utils.newInputStream(slice.duplicate());
+        }
+    }
+
+    /** Contents still in an input jar, read only when written out. */
+    static final class JarSource extends FileStore {
+        private final long spillThreshold;
+        private final JarFile jar;
+        private final JarEntry entry;
+
+        JarSource(JarFile jar, JarEntry entry, long spillThreshold) {
+            assert(entry.getSize() >= 0);
+            this.jar = jar;
+            this.entry = entry;
+            this.spillThreshold = spillThreshold;
+        }
+
+        FileStore write(byte[] b, int off, int len) throws IOException {
+            // Read in the entry before adding to it.
+            FileStore store = new Heap(spillThreshold);
+            try (InputStream in = getInputStream()) {
+                byte[] buf = new byte[1 << 16];
+                for (int nr; (nr = in.read(buf)) > 0; ) {
+                    store = store.write(buf, 0, nr);
+                }
+            }
+            return store.write(b, off, len);
+        }
+        long length() {
+            return entry.getSize();
+        }
+        void writeTo(OutputStream out) throws IOException {
+            long count = 0;
+            try (InputStream in = getInputStream()) {
+                byte[] buf = new byte[1 << 16];
+                for (int nr; (nr = in.read(buf)) > 0; ) {
+                    out.write(buf, 0, nr);
+                    count += nr;
+                }
+            }
+            // The size went into the file headers already.
+            if (count != entry.getSize())
+                throw new IOException("Size of "+entry.getName()+" changed from "
+                                      +entry.getSize()+" to "+count);
+        }
+        InputStream getInputStream() throws IOException {
+            return jar.getInputStream(entry);
+        }
+    }
+
+    /** Contents in a temporary file, deleted on release. */
+    static final class Spill extends FileStore {
+        private final java.io.File file;
+        private OutputStream out;  // null once the contents are read
+        private long length;
+
+        Spill() throws IOException {
+            file = java.io.File.createTempFile("pack200-", ".bits");
+            boolean ok = false;
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+                ok = true;
+            } finally {
+                if (!ok)  file.delete();
+            }
+        }
+
+        FileStore write(byte[] b, int off, int len) throws IOException {
+            if (out == null)
+                throw new IllegalStateException("spilled contents already read");
+            out.write(b, off, len);
+            length += len;
+            return this;
+        }
+        long length() {
+            return length;
+        }
+        private void finish() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+        void writeTo(OutputStream os) throws IOException {
+            try (InputStream in = getInputStream()) {
+                byte[] buf = new byte[1 << 16];
+                for (int nr; (nr = in.read(buf)) > 0; ) {
+                    os.write(buf, 0, nr);
+                }
+            }
+        }
+        InputStream getInputStream() throws IOException {
+            finish();
+            return new FileInputStream(file);
+        }
+        void release() {
+            try {
+                finish();
+            } catch (IOException ee) {
+                // The file is going away anyway.
+            }
+            file.delete();
+        }
+    }
+}
@@ -103,31 +103,19 @@ class Instruction  {
 
     public static Instruction at(byte[] bytes, int pc, Instruction reuse) {
         int bc = getByte(bytes, pc);
-        int prefix = -1;
         int w = 0;
-        int length = BC_LENGTH[w][bc];
-        if (length == 0) {
-            // Hard cases:
-            switch (bc) {
-            case _wide:
-                bc = getByte(bytes, pc+1);
-                w = 1;
-                length = BC_LENGTH[w][bc];
-                if (length == 0) {
-                    // unknown instruction; treat as one byte
-                    length = 1;
-                }
-                break;
-            case _tableswitch:
-                return new TableSwitch(bytes, pc);
-            case _lookupswitch:
-                return new LookupSwitch(bytes, pc);
-            default:
-                // unknown instruction; treat as one byte
-                length = 1;
-                break;
-            }
+        // Hard cases:
+        switch (bc) {
+        case _wide:
+            bc = getByte(bytes, pc+1);
+            w = 1;
+            break;
+        case _tableswitch:
+            return new TableSwitch(bytes, pc);
+        case _lookupswitch:
+            return new LookupSwitch(bytes, pc);
         }
+        int length = plainLength(bc, w);
         assert(length > 0);
         assert(pc+length <= bytes.length);
         // Speed hack:  Instruction.next reuses self if possible.
@@ -145,23 +133,11 @@ class Instruction  {
 
     // Return the constant pool index, or -1 if none.
     public int getCPIndex() {
-        int indexLoc = BC_INDEX[w][bc];
-        if (indexLoc == 0)  return -1;
-        assert(w == 0);
-        if (length == 2)
-            return getByte(bytes, pc+indexLoc);  // _ldc opcode only
-        else
-            return getShort(bytes, pc+indexLoc);
+        return cpIndexAt(bytes, pc, bc, w, length);
     }
 
     public void setCPIndex(int cpi) {
-        int indexLoc = BC_INDEX[w][bc];
-        assert(indexLoc != 0);
-        if (length == 2)
-            setByte(bytes, pc+indexLoc, cpi);  // _ldc opcode only
-        else
-            setShort(bytes, pc+indexLoc, cpi);
-        assert(getCPIndex() == cpi);
+        setCPIndexAt(bytes, pc, bc, w, length, cpi);
     }
 
     public ConstantPool.Entry getCPRef(ConstantPool.Entry[] cpMap) {
@@ -171,79 +147,47 @@ class Instruction  {
 
     // Return the slot of the affected local, or -1 if none.
     public int getLocalSlot() {
-        int slotLoc = BC_SLOT[w][bc];
-        if (slotLoc == 0)  return -1;
-        if (w == 0)
-            return getByte(bytes, pc+slotLoc);
-        else
-            return getShort(bytes, pc+slotLoc);
+        return localSlotAt(bytes, pc, bc, w);
     }
 
     // Return the target of the branch, or -1 if none.
     public int getBranchLabel() {
-        int branchLoc = BC_BRANCH[w][bc];
-        if (branchLoc == 0)  return -1;
-        assert(w == 0);
-        assert(length == 3 || length == 5);
-        int offset;
-        if (length == 3)
-            offset = (short)getShort(bytes, pc+branchLoc);
-        else
-            offset = getInt(bytes, pc+branchLoc);
-        assert(offset+pc >= 0);
-        assert(offset+pc <= bytes.length);
-        return offset+pc;
+        return branchLabelAt(bytes, pc, bc, w, length);
     }
 
     public void setBranchLabel(int targetPC) {
-        int branchLoc = BC_BRANCH[w][bc];
-        assert(branchLoc != 0);
-        if (length == 3)
-            setShort(bytes, pc+branchLoc, targetPC-pc);
-        else
-            setInt(bytes, pc+branchLoc, targetPC-pc);
-        assert(targetPC == getBranchLabel());
+        setBranchLabelAt(bytes, pc, bc, w, length, targetPC);
     }
 
     // Return the trailing constant in the instruction (as a signed value).
     // Return 0 if there is none.
     public int getConstant() {
-        int conLoc = BC_CON[w][bc];
-        if (conLoc == 0)  return 0;
-        switch (length - conLoc) {
-        case 1: return (byte) getByte(bytes, pc+conLoc);
-        case 2: return (short) getShort(bytes, pc+conLoc);
-        }
-        assert(false);
-        return 0;
+        return constantAt(bytes, pc, bc, w, length);
     }
 
     public void setConstant(int con) {
-        int conLoc = BC_CON[w][bc];
-        assert(conLoc != 0);
-        switch (length - conLoc) {
-        case 1: setByte(bytes, pc+conLoc, con); break;
-        case 2: setShort(bytes, pc+conLoc, con); break;
-        }
-        assert(con == getConstant());
+        setConstantAt(bytes, pc, bc, w, length, con);
     }
 
     public abstract static class Switch extends Instruction {
         // Each case is a (value, label) pair, indexed 0 <= n < caseCount
-        public abstract int  getCaseCount();
-        public abstract int  getCaseValue(int n);
-        public abstract int  getCaseLabel(int n);
-        public abstract void setCaseCount(int caseCount);
-        public abstract void setCaseValue(int n, int value);
-        public abstract void setCaseLabel(int n, int targetPC);
-        protected abstract int getLength(int caseCount);
-
-        public int  getDefaultLabel()             { return intAt(0)+pc; }
+        public int  getCaseCount()      { return caseCountAt(bytes, bc, apc); }
+        public int  getCaseValue(int n) { return caseValueAt(bytes, bc, apc, n); }
+        public int  getCaseLabel(int n) { return caseLabelAt(bytes, bc, pc, apc, n); }
+        public void setCaseCount(int caseCount) {
+            setCaseCountAt(bytes, bc, apc, caseCount);
+            length = getLength(caseCount);
+        }
+        public void setCaseValue(int n, int val) { setCaseValueAt(bytes, bc, apc, n, val); }
+        public void setCaseLabel(int n, int tpc) { setCaseLabelAt(bytes, bc, pc, apc, n, tpc); }
+        protected int getLength(int caseCount)   { return switchLength(bc, pc, apc, caseCount); }
+
+        public int getDefaultLabel()             { return intAt(0)+pc; }
         public void setDefaultLabel(int targetPC) { setIntAt(0, targetPC-pc); }
 
         protected int apc;        // aligned pc (table base)
-        protected int intAt(int n) { return getInt(bytes, apc + n*4); }
-        protected void setIntAt(int n, int x) { setInt(bytes, apc + n*4, x); }
+        protected int intAt(int n) { return switchIntAt(bytes, apc, n); }
+        protected void setIntAt(int n, int x) { setSwitchIntAt(bytes, apc, n, x); }
         protected Switch(byte[] bytes, int pc, int bc) {
             super(bytes, pc, bc, /*w*/0, /*length*/0);
             this.apc = alignPC(pc+1);
@@ -270,51 +214,300 @@ class Instruction  {
         // apc:  (df, lo, hi, (hi-lo+1)*(label))
         public int getLowCase()        { return intAt(1); }
         public int getHighCase()       { return intAt(2); }
-        public int getCaseCount()      { return intAt(2)-intAt(1)+1; }
-        public int getCaseValue(int n) { return getLowCase()+n; }
-        public int getCaseLabel(int n) { return intAt(3+n)+pc; }
 
         public void setLowCase(int val)  { setIntAt(1, val); }
         public void setHighCase(int val) { setIntAt(2, val); }
-        public void setCaseLabel(int n, int tpc) { setIntAt(3+n, tpc-pc); }
-        public void setCaseCount(int caseCount) {
-            setHighCase(getLowCase() + caseCount - 1);
-            length = getLength(caseCount);
-        }
-        public void setCaseValue(int n, int val) {
-            if (n != 0)  throw new UnsupportedOperationException();
-            int caseCount = getCaseCount();
-            setLowCase(val);
-            setCaseCount(caseCount);  // keep invariant
-        }
 
         TableSwitch(byte[] bytes, int pc) {
             super(bytes, pc, _tableswitch);
         }
-        protected int getLength(int caseCount) {
-            return (apc-pc) + (3 + caseCount) * 4;
-        }
     }
 
     public static class LookupSwitch extends Switch {
         // apc:  (df, nc, nc*(case, label))
-        public int getCaseCount()      { return intAt(1); }
-        public int getCaseValue(int n) { return intAt(2+n*2+0); }
-        public int getCaseLabel(int n) { return intAt(2+n*2+1)+pc; }
+        LookupSwitch(byte[] bytes, int pc) {
+            super(bytes, pc, _lookupswitch);
+        }
+    }
 
-        public void setCaseCount(int caseCount)  {
-            setIntAt(1, caseCount);
-            length = getLength(caseCount);
+    /**
+     * A view of one instruction at a time, moved along the bytecodes of
+     * a method.  Unlike {@link Instruction#next}, it never allocates,
+     * not even for switches, and its queries are table lookups on its
+     * own primitive fields.  Use it for scanning whole methods; use an
+     * Instruction where one must be kept or printed.
+     */
+    static final class Cursor {
+        private byte[] bytes;
+        private int pc;        // location of this instruction
+        private int bc;        // opcode of this instruction, or -1 at the end
+        private int w;         // 0 if normal, 1 if a _wide prefix at pc
+        private int length;    // bytes in this instruction
+        private int apc;       // aligned pc (table base) of a switch
+
+        /** Move to the first instruction; return false if there is none. */
+        boolean reset(byte[] bytes) {
+            return at(bytes, 0);
         }
-        public void setCaseValue(int n, int val) { setIntAt(2+n*2+0, val); }
-        public void setCaseLabel(int n, int tpc) { setIntAt(2+n*2+1, tpc-pc); }
 
-        LookupSwitch(byte[] bytes, int pc) {
-            super(bytes, pc, _lookupswitch);
+        /** Move to the instruction at pc in the given bytecodes. */
+        boolean at(byte[] bytes, int pc) {
+            this.bytes = bytes;
+            return at(pc);
+        }
+
+        /** Move to the instruction at pc; return false if pc is the end. */
+        boolean at(int pc) {
+            this.pc = pc;
+            if (pc == bytes.length) {
+                bc = -1;
+                length = 0;
+                return false;
+            }
+            bc = getByte(bytes, pc);
+            w = 0;
+            // Hard cases, as in Instruction.at:
+            switch (bc) {
+            case _wide:
+                bc = getByte(bytes, pc+1);
+                w = 1;
+                break;
+            case _tableswitch:
+            case _lookupswitch:
+                apc = Switch.alignPC(pc+1);
+                length = switchLength(bc, pc, apc, caseCountAt(bytes, bc, apc));
+                assert(pc+length <= bytes.length);
+                return true;
+            }
+            length = plainLength(bc, w);
+            assert(length > 0);
+            assert(pc+length <= bytes.length);
+            return true;
+        }
+
+        /** Move to the next instruction; return false at the end. */
+        boolean next() {
+            return at(pc + length);
+        }
+
+        byte[] getBytes()        { return bytes; }
+        int getBC()              { return bc; }
+        boolean isWide()         { return w != 0; }
+        int getPC()              { return pc; }
+        int getLength()          { return length; }
+        int getNextPC()          { return pc + length; }
+        boolean isNonstandard()  { return Instruction.isNonstandard(bc); }
+        boolean isSwitch()       { return bc == _tableswitch || bc == _lookupswitch; }
+
+        byte getCPTag()          { return BC_TAG[w][bc]; }
+        int getCPIndex()         { return cpIndexAt(bytes, pc, bc, w, length); }
+        int getLocalSlot()       { return localSlotAt(bytes, pc, bc, w); }
+        int getBranchLabel()     { return branchLabelAt(bytes, pc, bc, w, length); }
+        int getConstant()        { return constantAt(bytes, pc, bc, w, length); }
+        void setBranchLabel(int targetPC) {
+            setBranchLabelAt(bytes, pc, bc, w, length, targetPC);
+        }
+
+        ConstantPool.Entry getCPRef(ConstantPool.Entry[] cpMap) {
+            int index = getCPIndex();
+            return (index < 0) ? null : cpMap[index];
+        }
+
+        /// Switches, as in TableSwitch and LookupSwitch:
+
+        int getAlignedPC() {
+            assert(isSwitch());
+            return apc;
+        }
+        int getCaseCount()       { return caseCountAt(bytes, bc, apc); }
+        int getCaseValue(int n)  { return caseValueAt(bytes, bc, apc, n); }
+        int getCaseLabel(int n)  { return caseLabelAt(bytes, bc, pc, apc, n); }
+        int getDefaultLabel() {
+            assert(isSwitch());
+            return switchIntAt(bytes, apc, 0)+pc;
         }
-        protected int getLength(int caseCount) {
-            return (apc-pc) + (2 + caseCount*2) * 4;
+
+        void setCaseCount(int caseCount) {
+            setCaseCountAt(bytes, bc, apc, caseCount);
+            length = switchLength(bc, pc, apc, caseCount);
+        }
+        void setCaseValue(int n, int value) {
+            setCaseValueAt(bytes, bc, apc, n, value);
+        }
+        void setCaseLabel(int n, int targetPC) {
+            setCaseLabelAt(bytes, bc, pc, apc, n, targetPC);
+        }
+        void setDefaultLabel(int targetPC) {
+            assert(isSwitch());
+            setSwitchIntAt(bytes, apc, 0, targetPC-pc);
+        }
+
+        // For debugging and messages only; makes an Instruction.
+        public String toString() {
+            return Instruction.at(bytes, pc).toString();
+        }
+        String toString(ConstantPool.Entry[] cpMap) {
+            return Instruction.at(bytes, pc).toString(cpMap);
+        }
+    }
+
+    /// Operands of the instruction at pc with the given opcode, width
+    /// (1 after a _wide prefix) and length.  Instruction and Cursor
+    /// both read and write their operands through these.
+
+    // The length of an instruction other than a switch.
+    private static int plainLength(int bc, int w) {
+        int length = BC_LENGTH[w][bc];
+        if (length == 0) {
+            // unknown instruction; treat as one byte
+            length = 1;
+        }
+        return length;
+    }
+
+    static int cpIndexAt(byte[] bytes, int pc, int bc, int w, int length) {
+        int indexLoc = BC_INDEX[w][bc];
+        if (indexLoc == 0)  return -1;
+        assert(w == 0);
+        if (length == 2)
+            return getByte(bytes, pc+indexLoc);  // _ldc opcode only
+        else
+            return getShort(bytes, pc+indexLoc);
+    }
+
+    static void setCPIndexAt(byte[] bytes, int pc, int bc, int w, int length, int cpi) {
+        int indexLoc = BC_INDEX[w][bc];
+        assert(indexLoc != 0);
+        if (length == 2)
+            setByte(bytes, pc+indexLoc, cpi);  // _ldc opcode only
+        else
+            setShort(bytes, pc+indexLoc, cpi);
+        assert(cpIndexAt(bytes, pc, bc, w, length) == cpi);
+    }
+
+    static int localSlotAt(byte[] bytes, int pc, int bc, int w) {
+        int slotLoc = BC_SLOT[w][bc];
+        if (slotLoc == 0)  return -1;
+        if (w == 0)
+            return getByte(bytes, pc+slotLoc);
+        else
+            return getShort(bytes, pc+slotLoc);
+    }
+
+    static int branchLabelAt(byte[] bytes, int pc, int bc, int w, int length) {
+        int branchLoc = BC_BRANCH[w][bc];
+        if (branchLoc == 0)  return -1;
+        assert(w == 0);
+        assert(length == 3 || length == 5);
+        int offset;
+        if (length == 3)
+            offset = (short)getShort(bytes, pc+branchLoc);
+        else
+            offset = getInt(bytes, pc+branchLoc);
+        assert(offset+pc >= 0);
+        assert(offset+pc <= bytes.length);
+        return offset+pc;
+    }
+
+    static void setBranchLabelAt(byte[] bytes, int pc, int bc, int w, int length, int targetPC) {
+        int branchLoc = BC_BRANCH[w][bc];
+        assert(branchLoc != 0);
+        if (length == 3)
+            setShort(bytes, pc+branchLoc, targetPC-pc);
+        else
+            setInt(bytes, pc+branchLoc, targetPC-pc);
+        assert(targetPC == branchLabelAt(bytes, pc, bc, w, length));
+    }
+
+    static int constantAt(byte[] bytes, int pc, int bc, int w, int length) {
+        int conLoc = BC_CON[w][bc];
+        if (conLoc == 0)  return 0;
+        switch (length - conLoc) {
+        case 1: return (byte) getByte(bytes, pc+conLoc);
+        case 2: return (short) getShort(bytes, pc+conLoc);
+        }
+        assert(false);
+        return 0;
+    }
+
+    static void setConstantAt(byte[] bytes, int pc, int bc, int w, int length, int con) {
+        int conLoc = BC_CON[w][bc];
+        assert(conLoc != 0);
+        switch (length - conLoc) {
+        case 1: setByte(bytes, pc+conLoc, con); break;
+        case 2: setShort(bytes, pc+conLoc, con); break;
         }
+        assert(con == constantAt(bytes, pc, bc, w, length));
+    }
+
+    /// Switch tables, at the aligned pc apc after a switch opcode bc:
+    // tableswitch apc:  (df, lo, hi, (hi-lo+1)*(label))
+    // lookupswitch apc:  (df, nc, nc*(case, label))
+
+    static int switchLength(int bc, int pc, int apc, int caseCount) {
+        if (bc == _tableswitch)
+            return (apc-pc) + (3 + caseCount) * 4;
+        assert(bc == _lookupswitch);
+        return (apc-pc) + (2 + caseCount*2) * 4;
+    }
+
+    static int caseCountAt(byte[] bytes, int bc, int apc) {
+        if (bc == _tableswitch)
+            return switchIntAt(bytes, apc, 2)-switchIntAt(bytes, apc, 1)+1;
+        assert(bc == _lookupswitch);
+        return switchIntAt(bytes, apc, 1);
+    }
+
+    static int caseValueAt(byte[] bytes, int bc, int apc, int n) {
+        if (bc == _tableswitch)
+            return switchIntAt(bytes, apc, 1)+n;
+        assert(bc == _lookupswitch);
+        return switchIntAt(bytes, apc, 2+n*2+0);
+    }
+
+    static int caseLabelAt(byte[] bytes, int bc, int pc, int apc, int n) {
+        if (bc == _tableswitch)
+            return switchIntAt(bytes, apc, 3+n)+pc;
+        assert(bc == _lookupswitch);
+        return switchIntAt(bytes, apc, 2+n*2+1)+pc;
+    }
+
+    // The caller must update the length of the instruction.
+    static void setCaseCountAt(byte[] bytes, int bc, int apc, int caseCount) {
+        if (bc == _tableswitch) {
+            setSwitchIntAt(bytes, apc, 2, switchIntAt(bytes, apc, 1) + caseCount - 1);
+        } else {
+            assert(bc == _lookupswitch);
+            setSwitchIntAt(bytes, apc, 1, caseCount);
+        }
+    }
+
+    static void setCaseValueAt(byte[] bytes, int bc, int apc, int n, int value) {
+        if (bc == _tableswitch) {
+            if (n != 0)  throw new UnsupportedOperationException();
+            int caseCount = caseCountAt(bytes, bc, apc);
+            setSwitchIntAt(bytes, apc, 1, value);
+            setCaseCountAt(bytes, bc, apc, caseCount);  // keep invariant
+        } else {
+            assert(bc == _lookupswitch);
+            setSwitchIntAt(bytes, apc, 2+n*2+0, value);
+        }
+    }
+
+    static void setCaseLabelAt(byte[] bytes, int bc, int pc, int apc, int n, int targetPC) {
+        if (bc == _tableswitch) {
+            setSwitchIntAt(bytes, apc, 3+n, targetPC-pc);
+        } else {
+            assert(bc == _lookupswitch);
+            setSwitchIntAt(bytes, apc, 2+n*2+1, targetPC-pc);
+        }
+    }
+
+    private static int switchIntAt(byte[] bytes, int apc, int n) {
+        return getInt(bytes, apc + n*4);
+    }
+    private static void setSwitchIntAt(byte[] bytes, int apc, int n, int x) {
+        setInt(bytes, apc + n*4, x);
     }
 
     /** Two instructions are equal if they have the same bytes. */
@@ -651,8 +844,8 @@ class Instruction  {
 
     public static void opcodeChecker(byte[] code, ConstantPool.Entry[] cpMap,
             Package.Version clsVersion) throws FormatException {
-        Instruction i = at(code, 0);
-        while (i != null) {
+        Cursor i = new Cursor();
+        for (boolean more = i.reset(code); more; more = i.next()) {
             int opcode = i.getBC();
             if (opcode < _nop || opcode > _jsr_w) {
                 String message = "illegal opcode: " + opcode + " " + i;
@@ -663,7 +856,7 @@ class Instruction  {
                 byte tag = i.getCPTag();
                 boolean match = e.tagMatches(tag);
                 if (!match &&
-                        (i.bc == _invokespecial || i.bc == _invokestatic) &&
+                        (opcode == _invokespecial || opcode == _invokestatic) &&
                         e.tagMatches(CONSTANT_InterfaceMethodref) &&
                         clsVersion.greaterThan(Constants.JAVA7_MAX_CLASS_VERSION)) {
                     match = true;
@@ -675,7 +868,6 @@ class Instruction  {
                     throw new FormatException(message);
                 }
             }
-            i = i.next();
         }
     }
     static class FormatException extends IOException {
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+/**
+ * The instruction boundaries of a method, and the BCI coding which
+ * Code.encodeBCI and Code.decodeBCI build on them.
+ * <p>
+ * The boundaries are kept as a bitset with one bit per bytecode
+ * position, plus one bit for the end of the code, so they cost about
+ * a fifth of a byte per bytecode, where the arrays they replace cost
+ * one to four bytes per instruction.  A rank directory of one int per
+ * 64 positions gives the number of the instruction at a BCI in
+ * constant time; a select directory, sampled at every 64th
+ * instruction, finds the BCI of a numbered instruction with a short
+ * forward scan.
+ */
+final class InstructionMap {
+    private static final int SAMPLE_SHIFT = 6;
+
+    private final int length;   // code length; bit length marks the end
+    private final int count;    // boundaries, including the end
+    private final long[] bits;  // bit pc is set if an instruction starts at pc
+    private final int[] ranks;  // ranks[w] = boundaries below bit w*64
+    private final int[] samples; // samples[k] = word holding boundary k*64
+
+    /** Make a map of the first n boundaries in pcs, which are in order,
+     *  for code of the given length.
+     */
+    InstructionMap(int[] pcs, int n, int length) {
+        this.length = length;
+        this.bits = new long[(length >>> 6) + 1];
+        for (int i = 0; i < n; i++) {
+            int pc = pcs[i];
+            assert(pc >= 0 && pc < length);
+            assert(i == 0 || pcs[i-1] < pc);
+            bits[pc >>> 6] |= 1L << pc;
+        }
+        bits[length >>> 6] |= 1L << length;
+        this.count = n + 1;
+        this.ranks = new int[bits.length];
+        this.samples = new int[((count - 1) >>> SAMPLE_SHIFT) + 1];
+        int rank = 0;
+        for (int w = 0; w < bits.length; w++) {
+            ranks[w] = rank;
+            int next = rank + Long.bitCount(bits[w]);
+            // Note every sampled boundary which falls in this word.
+            for (int k = (rank + (1 << SAMPLE_SHIFT) - 1) >>> SAMPLE_SHIFT;
+                 (k << SAMPLE_SHIFT) < next; k++) {
+                samples[k] = w;
+            }
+            rank = next;
+        }
+        assert(rank == count);
+    }
+
+    /** Number of instructions, plus one for the end of the code. */
+    int size() {
+        return count;
+    }
+
+    boolean isBoundary(int bci) {
+        return (bits[bci >>> 6] & (1L << bci)) != 0;
+    }
+
+    /** The number of boundaries below bci. */
+    int rank(int bci) {
+        long below = bits[bci >>> 6] & ((1L << bci) - 1);
+        return ranks[bci >>> 6] + Long.bitCount(below);
+    }
+
+    /** Encode a BCI in 0..length, as documented in Code.encodeBCI. */
+    int encode(int bci) {
+        assert(bci >= 0 && bci <= length);
+        int rank = rank(bci);
+        if (isBoundary(bci))
+            return rank;
+        // Irregular BCIs are numbered after all the boundaries.
+        return count + (bci - rank);
+    }
+
+    /** Invert encode. */
+    int decode(int bciCode) {
+        assert(bciCode >= 0 && bciCode <= length);
+        if (bciCode < count)
+            return selectBoundary(bciCode);
+        return selectIrregular(bciCode - count);
+    }
+
+    /** The pc of instruction number k (or the end, if k == size()-1). */
+    int selectBoundary(int k) {
+        int w = samples[k >>> SAMPLE_SHIFT];
+        while (w+1 < ranks.length && ranks[w+1] <= k) {
+            w++;
+        }
+        return (w << 6) + selectInWord(bits[w], k - ranks[w]);
+    }
+
+    // The BCI of the k-th position, from 0, which is not a boundary.
+    private int selectIrregular(int k) {
+        // Binary search for the last word with at most k gaps below it.
+        int lo = 0, hi = ranks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if ((mid << 6) - ranks[mid] <= k)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        int bci = (lo << 6) + selectInWord(~bits[lo], k - ((lo << 6) - ranks[lo]));
+        assert(bci < length && !isBoundary(bci));
+        return bci;
+    }
+
+    // Position of the r-th set bit, from 0, in x.
+    private static int selectInWord(long x, int r) {
+        int base = 0;
+        for (int c; r >= (c = Long.bitCount(x & 0xFF)); r -= c) {
+            x >>>= 8;
+            base += 8;
+        }
+        for (; r > 0; r--) {
+            x &= x - 1;  // drop the lowest set bit
+        }
+        return base + Long.numberOfTrailingZeros(x);
+    }
+
+    /** The boundaries, not including the end. */
+    int[] toArray() {
+        int[] pcs = new int[count - 1];
+        for (int i = 0; i < pcs.length; i++) {
+            pcs[i] = selectBoundary(i);
+        }
+        return pcs;
+    }
+}
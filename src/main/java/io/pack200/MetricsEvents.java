@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The metrics of a run as JFR events: one per phase and one per band,
+ * committed when the run finishes.  This class refers to jdk.jfr, so it
+ * is loaded only once {@link PhaseTimer} has found that the JVM has it.
+ */
+final class MetricsEvents {
+    private MetricsEvents() {}
+
+    @Name("io.pack200.Phase")
+    @Label("Pack200 Phase")
+    @Category("Pack200")
+    @Description("Time and allocation of one phase of a pack or unpack run, summed over its segments")
+    static final class PhaseEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Phase")
+        String name;
+
+        @Label("Count")
+        int count;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Allocated")
+        @DataAmount(DataAmount.BYTES)
+        long allocated;
+    }
+
+    @Name("io.pack200.Band")
+    @Label("Pack200 Band")
+    @Category("Pack200")
+    @Description("Size and coding of one band of a packed archive, summed over its segments")
+    static final class BandEvent extends Event {
+        @Label("Band")
+        String name;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        long size;
+
+        @Label("Coding")
+        String coding;
+    }
+
+    static void commit(String operation, Pack200.Metrics metrics) {
+        for (Pack200.Metrics.Phase p : metrics.phases()) {
+            PhaseEvent e = new PhaseEvent();
+            if (!e.isEnabled())  break;
+            e.operation = operation;
+            e.name = p.name();
+            e.count = p.count();
+            e.elapsed = p.elapsed().toNanos();
+            e.allocated = p.allocatedBytes();
+            e.commit();
+        }
+        for (Pack200.Metrics.Band b : metrics.bands()) {
+            BandEvent e = new BandEvent();
+            if (!e.isEnabled())  break;
+            e.name = b.name();
+            e.size = b.size();
+            e.coding = b.coding();
+            e.commit();
+        }
+    }
+}
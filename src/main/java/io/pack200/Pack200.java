@@ -26,11 +26,28 @@ package io.pack200;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
+import java.io.BufferedOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
@@ -162,6 +179,48 @@ public abstract class Pack200 {
         return (Unpacker) newInstance(UNPACK_PROVIDER);
     }
 
+    /**
+     * Obtain a Packer which may be used by many threads at once.
+     * Each call to {@code pack} borrows one of {@code size} engines,
+     * waiting if all of them are busy, and returns it when done.
+     * Engines are reused from one archive to the next.
+     * <p>
+     * The borrowed engine runs with a copy of the pool's
+     * {@link Packer#properties properties}, taken as the call starts.
+     * Set them before sharing the pool between threads.  Progress
+     * is not reported through the pool's properties.
+     * <p>
+     * The pool always uses the system-default implementation.
+     *
+     * @param size the number of engines
+     * @return  A newly allocated pool of Packer engines.
+     * @throws IllegalArgumentException if {@code size} is less than 1
+     */
+    public static Packer newPackerPool(int size) {
+        return new EnginePool.Packers(size);
+    }
+
+    /**
+     * Obtain an Unpacker which may be used by many threads at once.
+     * Each call to {@code unpack} borrows one of {@code size} engines,
+     * waiting if all of them are busy, and returns it when done.
+     * Engines are reused from one archive to the next.
+     * <p>
+     * The borrowed engine runs with a copy of the pool's
+     * {@link Unpacker#properties properties}, taken as the call starts.
+     * Set them before sharing the pool between threads.  Progress
+     * is not reported through the pool's properties.
+     * <p>
+     * The pool always uses the system-default implementation.
+     *
+     * @param size the number of engines
+     * @return  A newly allocated pool of Unpacker engines.
+     * @throws IllegalArgumentException if {@code size} is less than 1
+     */
+    public static Unpacker newUnpackerPool(int size) {
+        return new EnginePool.Unpackers(size);
+    }
+
     // Interfaces
     /**
      * The packer engine applies various transformations to the input JAR file,
@@ -571,6 +630,65 @@ public abstract class Pack200 {
          * @throws    IOException if an error is encountered.
          */
         void pack(JarInputStream in, OutputStream out) throws IOException ;
+
+        /**
+         * Packs a JAR file into a Pack200 archive, written to a channel.
+         * <p>
+         * Does not close its output.  (Pack200 archives are appendable.)
+         * <p>
+         * The default implementation calls {@link #pack(JarFile, OutputStream)}
+         * through a buffered stream over the channel.
+         *
+         * @param in the JAR file to read
+         * @param out a WritableByteChannel
+         * @throws    IOException if an error is encountered.
+         * @throws    java.nio.channels.IllegalBlockingModeException if the
+         *            channel is selectable and in non-blocking mode.
+         */
+        default void pack(Path in, WritableByteChannel out) throws IOException {
+            OutputStream out0 = new BufferedOutputStream(Channels.newOutputStream(out));
+            pack(new JarFile(in.toFile()), out0);
+            out0.flush();
+        }
+
+        /**
+         * Packs a JAR file into a Pack200 archive file, on the given
+         * executor.
+         * <p>
+         * Cancelling the returned future stops the packer at the
+         * next segment boundary (see {@link #SEGMENT_LIMIT}).  If the
+         * run fails or is cancelled, the output file is deleted.
+         * Progress is passed to the given callback, if any, in place
+         * of the {@link #PROGRESS} property.
+         * <p>
+         * The default implementation calls {@link #pack(JarFile, OutputStream)}
+         * and cannot stop once it has started.
+         *
+         * @param in the JAR file to read
+         * @param out the archive file to write
+         * @param executor runs the packer
+         * @param progress receives percentages from 0 to 100, or null
+         * @return a future holding the sizes of the input and output
+         */
+        default CompletableFuture<PackResult> packAsync(Path in, Path out,
+                                                        Executor executor,
+                                                        IntConsumer progress) {
+            return AsyncRun.start(executor, progress, in, out,
+                                  run -> run.pack(this, in, out));
+        }
+
+        /**
+         * Returns where the time of this engine's last run went, or
+         * null if it has not run.  The metrics of a run do not change
+         * once it has returned.
+         * <p>
+         * The default implementation returns null.
+         *
+         * @return the metrics of the last run, or null
+         */
+        default Metrics metrics() {
+            return null;
+        }
     }
 
     /**
@@ -682,6 +800,289 @@ public abstract class Pack200 {
          * @throws    IOException if an error is encountered.
          */
         void unpack(File in, JarOutputStream out) throws IOException;
+
+        /**
+         * Read a Pack200 archive from a channel, and write the encoded
+         * JAR to a file.
+         * <p>
+         * Closes its input, and the JAR file.
+         * <p>
+         * The default implementation calls
+         * {@link #unpack(InputStream, JarOutputStream)} with a stream
+         * over the channel.
+         *
+         * @param in a ReadableByteChannel.
+         * @param out the JAR file to write.
+         * @throws    IOException if an error is encountered.
+         * @throws    java.nio.channels.IllegalBlockingModeException if the
+         *            channel is selectable and in non-blocking mode.
+         */
+        default void unpack(ReadableByteChannel in, Path out) throws IOException {
+            try (JarOutputStream jout = new JarOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(out)))) {
+                unpack(Channels.newInputStream(in), jout);
+            }
+        }
+
+        /**
+         * Read a Pack200 archive from the position to the limit of a
+         * buffer, and write the encoded JAR to a JarOutputStream.
+         * <p>
+         * Advances the buffer's position to its limit.
+         * Does not close its output.  (The output can accumulate more elements.)
+         * <p>
+         * The default implementation calls
+         * {@link #unpack(InputStream, JarOutputStream)} with a stream
+         * over the buffer.
+         *
+         * @param in a ByteBuffer.
+         * @param out a JarOutputStream.
+         * @throws    IOException if an error is encountered.
+         */
+        default void unpack(ByteBuffer in, JarOutputStream out) throws IOException {
+            unpack(Utils.newInputStream(in), out);
+        }
+
+        /**
+         * Unpacks a Pack200 archive file into a JAR file, on the given
+         * executor.
+         * <p>
+         * Cancelling the returned future stops the unpacker at the
+         * next segment boundary.  If the run fails or is cancelled,
+         * the output file is deleted.  Progress is passed to the given
+         * callback, if any, in place of the {@link #PROGRESS} property.
+         * <p>
+         * The default implementation calls {@link #unpack(File, JarOutputStream)}
+         * and cannot stop once it has started.
+         *
+         * @param in the archive file to read
+         * @param out the JAR file to write
+         * @param executor runs the unpacker
+         * @param progress receives percentages from 0 to 100, or null
+         * @return a future holding the sizes of the input and output
+         */
+        default CompletableFuture<PackResult> unpackAsync(Path in, Path out,
+                                                          Executor executor,
+                                                          IntConsumer progress) {
+            return AsyncRun.start(executor, progress, in, out,
+                                  run -> run.unpack(this, in, out));
+        }
+
+        /**
+         * Returns where the time of this engine's last run went, or
+         * null if it has not run.  The metrics of a run do not change
+         * once it has returned.
+         * <p>
+         * The default implementation returns null.
+         *
+         * @return the metrics of the last run, or null
+         */
+        default Metrics metrics() {
+            return null;
+        }
+    }
+
+    /**
+     * The outcome of an asynchronous pack or unpack.
+     *
+     * @see Packer#packAsync
+     * @see Unpacker#unpackAsync
+     */
+    public static final class PackResult {
+        private final long inputSize;
+        private final long outputSize;
+        private final Duration elapsed;
+
+        PackResult(long inputSize, long outputSize, Duration elapsed) {
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.elapsed = elapsed;
+        }
+
+        /** @return the size of the input file, in bytes */
+        public long inputSize() {
+            return inputSize;
+        }
+
+        /** @return the size of the output file, in bytes */
+        public long outputSize() {
+            return outputSize;
+        }
+
+        /** @return the time from the start of the run to its end */
+        public Duration elapsed() {
+            return elapsed;
+        }
+
+        public String toString() {
+            return inputSize+" -> "+outputSize+" bytes in "+elapsed.toMillis()+"ms";
+        }
+    }
+
+    /**
+     * Where the time of a pack or unpack run went: the wall time and
+     * heap allocation of each phase, and for a pack run the size and
+     * chosen coding of each band.  Phases and bands are summed over
+     * the segments of the archive.
+     * <p>
+     * The time of a phase is wall time, taken on the thread that runs
+     * the phase or waits for its worker threads, such as those parsing
+     * classes.  Its allocation covers that thread and all of its
+     * workers, and is -1 if the JVM cannot measure it.
+     * <p>
+     * Where the JVM has JFR, a finished run also commits each phase as
+     * an {@code io.pack200.Phase} event and each band as an
+     * {@code io.pack200.Band} event.
+     *
+     * @see Packer#metrics
+     * @see Unpacker#metrics
+     */
+    public static final class Metrics {
+        private final Map<String, Phase> phases = new LinkedHashMap<>();
+        private final Map<String, Band> bands = new LinkedHashMap<>();
+        private int segments;
+
+        Metrics() {
+        }
+
+        synchronized void addPhase(String name, int count, long nanos, long allocated) {
+            Phase p = phases.get(name);
+            if (p == null) {
+                p = new Phase(name, 0, 0, 0);
+            }
+            phases.put(name, new Phase(name, p.count + count, p.nanos + nanos,
+                                       (p.allocated < 0 || allocated < 0)
+                                       ? -1 : p.allocated + allocated));
+        }
+
+        synchronized void addBand(String name, long size, String coding) {
+            Band b = bands.get(name);
+            if (b == null) {
+                b = new Band(name);
+                bands.put(name, b);
+            }
+            b.add(size, coding);
+        }
+
+        synchronized void addSegment() {
+            segments += 1;
+        }
+
+        /** @return the number of segments read or written */
+        public synchronized int segments() {
+            return segments;
+        }
+
+        /** @return the phases of the run, in the order they first ran */
+        public synchronized List<Phase> phases() {
+            return new ArrayList<>(phases.values());
+        }
+
+        /** @return the bands written by a pack run, in archive order */
+        public synchronized List<Band> bands() {
+            List<Band> list = new ArrayList<>(bands.size());
+            for (Band b : bands.values()) {
+                list.add(new Band(b));
+            }
+            return list;
+        }
+
+        public synchronized String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(segments).append(" segments\n");
+            for (Phase p : phases.values()) {
+                sb.append(p).append('\n');
+            }
+            for (Band b : bands.values()) {
+                sb.append(b).append('\n');
+            }
+            return sb.toString();
+        }
+
+        /** One phase of a run. */
+        public static final class Phase {
+            private final String name;
+            private final int count;
+            private final long nanos;
+            private final long allocated;
+
+            Phase(String name, int count, long nanos, long allocated) {
+                this.name = name;
+                this.count = count;
+                this.nanos = nanos;
+                this.allocated = allocated;
+            }
+
+            /** @return the name of the phase, such as {@code chooseBandCodings} */
+            public String name() {
+                return name;
+            }
+
+            /** @return how many times the phase ran */
+            public int count() {
+                return count;
+            }
+
+            /** @return the wall time spent in the phase, timed on the
+             *  thread that ran it, not summed over its worker threads */
+            public Duration elapsed() {
+                return Duration.ofNanos(nanos);
+            }
+
+            /** @return the bytes allocated in the phase, by the thread that
+             *  ran it and its worker threads together, or -1 if unknown */
+            public long allocatedBytes() {
+                return allocated;
+            }
+
+            public String toString() {
+                return name+" x"+count+": "+(nanos / 1000000)+"ms, "
+                    +(allocated < 0 ? "?" : String.valueOf(allocated))+" bytes allocated";
+            }
+        }
+
+        /** One band of a packed archive. */
+        public static final class Band {
+            private final String name;
+            private long size;
+            // Each distinct coding once, in the order segments chose them.
+            private final Set<String> codings = new LinkedHashSet<>();
+
+            Band(String name) {
+                this.name = name;
+            }
+
+            Band(Band b) {
+                this.name = b.name;
+                this.size = b.size;
+                this.codings.addAll(b.codings);
+            }
+
+            void add(long size, String coding) {
+                this.size += size;
+                codings.add(coding);
+            }
+
+            /** @return the name of the band, such as {@code cp_Utf8_chars} */
+            public String name() {
+                return name;
+            }
+
+            /** @return the size of the band in the archive, in bytes */
+            public long size() {
+                return size;
+            }
+
+            /** @return the coding chosen for the band; if segments chose
+             *  differently, their codings separated by commas */
+            public String coding() {
+                return String.join(", ", codings);
+            }
+
+            public String toString() {
+                return name+": "+size+" bytes, "+coding();
+            }
+        }
     }
 
     // Private stuff....
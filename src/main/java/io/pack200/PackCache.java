@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An on-disk cache of pack streams, for inputs which are packed again
+ * and again.  An entry holds either a whole archive or one segment,
+ * found by a key from {@link PackDigest}.  Once the entries outgrow the
+ * size limit, the least recently used ones are deleted.
+ * <p>
+ * Entries are written to a temporary file and renamed into place, so
+ * packers in this process or in others may share a directory.  Failing
+ * to store an entry does not fail the pack.
+ */
+final class PackCache {
+    private static final String SUFFIX = ".pack";
+
+    private final File dir;
+    private final long maxSize;
+    // Size of the entries at the last scan, plus what has been stored
+    // since; -1 before the first scan.
+    private long total = -1;
+
+    private PackCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /** Return the cache named by the packing options, or null if none. */
+    static PackCache open(PropMap props) {
+        String dir = props.getProperty(Utils.PACK_CACHE_DIR, "");
+        if (dir.isEmpty())  return null;
+        File d = new File(dir);
+        d.mkdirs();
+        return new PackCache(d, props.getLong(Utils.PACK_CACHE_SIZE, 256L<<20));
+    }
+
+    /** If the key has an entry, copy it to out and return its size,
+     *  else return -1.
+     */
+    long copyTo(String key, OutputStream out) throws IOException {
+        File f = new File(dir, key+SUFFIX);
+        InputStream in;
+        try {
+            in = new FileInputStream(f);
+        } catch (FileNotFoundException ee) {
+            return -1;  // a miss, or evicted just now
+        }
+        long size = 0;
+        try {
+            byte[] buf = new byte[1<<14];
+            for (int nr; (nr = in.read(buf)) > 0; ) {
+                out.write(buf, 0, nr);
+                size += nr;
+            }
+        } finally {
+            in.close();
+        }
+        // Now it is the most recently used.
+        f.setLastModified(System.currentTimeMillis());
+        return size;
+    }
+
+    /** Start a new entry for the key. */
+    Entry begin(String key) {
+        return new Entry(key);
+    }
+
+    /** Store the bytes as the entry for the key. */
+    void put(String key, ByteArrayOutputStream bytes) {
+        Entry e = begin(key);
+        try {
+            e.write(bytes);
+            e.commit();
+        } finally {
+            e.abort();
+        }
+    }
+
+    /** An entry being written.  Either commit or abort it. */
+    final class Entry {
+        private final String key;
+        private File tmp;
+        private OutputStream out;  // null once broken or done
+
+        Entry(String key) {
+            this.key = key;
+            try {
+                tmp = File.createTempFile("pack200-", ".tmp", dir);
+                out = new FileOutputStream(tmp);
+            } catch (IOException ee) {
+                fail(ee);
+            }
+        }
+
+        private void fail(IOException ee) {
+            Utils.log.warning("Cannot store in pack cache "+dir+": "+ee);
+            abort();
+        }
+
+        void write(ByteArrayOutputStream bytes) {
+            if (out == null)  return;
+            try {
+                bytes.writeTo(out);
+            } catch (IOException ee) {
+                fail(ee);
+            }
+        }
+
+        /** A stream which writes to the given one and to the entry. */
+        OutputStream tee(OutputStream main) {
+            return new OutputStream() {
+                public void write(int b) throws IOException {
+                    main.write(b);
+                    if (out == null)  return;
+                    try {
+                        out.write(b);
+                    } catch (IOException ee) {
+                        fail(ee);
+                    }
+                }
+                public void write(byte[] b, int off, int len) throws IOException {
+                    main.write(b, off, len);
+                    if (out == null)  return;
+                    try {
+                        out.write(b, off, len);
+                    } catch (IOException ee) {
+                        fail(ee);
+                    }
+                }
+                public void flush() throws IOException {
+                    main.flush();
+                }
+            };
+        }
+
+        void commit() {
+            if (out == null)  return;
+            long size;
+            try {
+                out.close();
+                out = null;
+                size = tmp.length();
+                File f = new File(dir, key+SUFFIX);
+                try {
+                    Files.move(tmp.toPath(), f.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ee) {
+                    Files.move(tmp.toPath(), f.toPath(),
+                               StandardCopyOption.REPLACE_EXISTING);
+                }
+                tmp = null;
+            } catch (IOException ee) {
+                fail(ee);
+                return;
+            }
+            added(size);
+        }
+
+        /** Throw the entry away, unless it has been committed. */
+        void abort() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ee) {
+                    // It is going away anyway.
+                }
+                out = null;
+            }
+            if (tmp != null) {
+                tmp.delete();
+                tmp = null;
+            }
+        }
+    }
+
+    // Count a new entry.  Scan the directory only if the entries may
+    // have outgrown the limit; a scan also counts what other packers
+    // sharing the directory have stored or deleted.
+    private synchronized void added(long size) {
+        if (total >= 0 && total + size <= maxSize) {
+            total += size;
+            return;
+        }
+        evict();
+    }
+
+    // Delete the least recently used entries, until they fit in three
+    // quarters of the limit, so the next few entries need no scan.
+    private synchronized void evict() {
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (entries == null)  return;
+        long total = 0;
+        long[] times = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            total += entries[i].length();
+            times[i] = entries[i].lastModified();
+        }
+        if (total > maxSize) {
+            long target = maxSize - maxSize / 4;
+            Integer[] order = new Integer[entries.length];
+            for (int i = 0; i < order.length; i++)  order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+            for (int i = 0; i < order.length && total > target; i++) {
+                File f = entries[order[i]];
+                long size = f.length();
+                if (f.delete())
+                    total -= size;
+            }
+        }
+        this.total = total;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Computes the keys by which packed archives and segments are found
+ * again:  in the pack cache, and in the index of a base pack file when
+ * repacking incrementally.  A key is a SHA-256 digest of the input bytes
+ * and of the packing options which affect the output, so that a change
+ * of either makes a new key.
+ */
+final class PackDigest {
+    private static final String FORMAT = "pack200-digest-2";
+
+    private final byte[] optionsDigest;
+
+    PackDigest(PropMap props) {
+        Key k = new Key();
+        k.add(FORMAT);
+        k.add(PackDigest.class.getPackage().getImplementationVersion());
+        // Modification times in the archive depend on the time zone.
+        k.add(TimeZone.getDefault().getID());
+        k.add(Utils.SORT_MEMBERS_DESCR_MAJOR+" "+Utils.SORT_HANDLES_KIND_MAJOR+" "
+              +Utils.SORT_INDY_BSS_MAJOR+" "+Utils.SORT_BSS_BSM_MAJOR);
+        for (Map.Entry<String, String> e : props.entrySet()) {
+            if (!affectsOutput(e.getKey()))  continue;
+            k.add(e.getKey());
+            k.add(e.getValue());
+        }
+        this.optionsDigest = k.digest();
+    }
+
+    // These options change how the packer runs, but not what it writes.
+    private static boolean affectsOutput(String key) {
+        switch (key) {
+        case Pack200.Packer.PROGRESS:
+        case Utils.DEBUG_VERBOSE:
+        case Utils.PACK_THREADS:
+        case Utils.PACK_SEGMENT_THREADS:
+        case Utils.SPILL_THRESHOLD:
+        case Utils.PACK_CACHE_DIR:
+        case Utils.PACK_CACHE_SIZE:
+        case Utils.PACK_INCREMENTAL_BASE:
+        case Utils.PACK_INCREMENTAL_INDEX:
+            return false;
+        }
+        return true;
+    }
+
+    /** The key of a whole archive packed from the given JAR file. */
+    String archiveKey(File jar) throws IOException {
+        Key k = newKey("archive");
+        try (InputStream in = new FileInputStream(jar)) {
+            k.add(in);
+        }
+        return k.toString();
+    }
+
+    /** The key of the segment the package holds, before the writer
+     *  has touched it, or null if a class lacks its input digest.
+     */
+    String segmentKey(Package pkg) throws IOException {
+        Key k = newKey("segment");
+        // What the segment inherits from the ones before it:
+        k.add(pkg.default_modtime);
+        k.add(pkg.default_options);
+        for (Package.InnerClass ic : pkg.getAllInnerClasses()) {
+            k.add(ic.thisClass.stringValue());
+            k.add(ic.outerClass == null ? null : ic.outerClass.stringValue());
+            k.add(ic.name == null ? null : ic.name.stringValue());
+            k.add(ic.flags);
+        }
+        for (Package.File file : pkg.files) {
+            k.add(file.nameString);
+            k.add(file.modtime);
+            k.add(file.options);
+            if (file.isClassStub()) {
+                byte[] d = file.getStubClass().inputDigest;
+                if (d == null)  return null;
+                k.add(d);
+            } else {
+                try (InputStream in = file.getInputStream()) {
+                    k.add(in);
+                }
+            }
+        }
+        return k.toString();
+    }
+
+    /** The segment key, qualified by the count of segments to follow.
+     *  The count is only a hint to the unpacker, but it is written
+     *  into the segment header.
+     */
+    String segmentKey(String key, int nextCount) {
+        Key k = newKey("counted");
+        k.add(key);
+        k.add(nextCount);
+        return k.toString();
+    }
+
+    private Key newKey(String kind) {
+        Key k = new Key();
+        k.add(kind);
+        k.add(optionsDigest);
+        return k;
+    }
+
+    /** A digest of a sequence of values. */
+    private static final class Key {
+        private final MessageDigest md = newDigest();
+
+        void add(String s) {
+            if (s == null) {
+                add(-1);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            add(b.length);
+            md.update(b);
+        }
+
+        void add(long x) {
+            for (int i = 56; i >= 0; i -= 8) {
+                md.update((byte) (x >>> i));
+            }
+        }
+
+        void add(byte[] b) {
+            add(b.length);
+            md.update(b);
+        }
+
+        // The stream's own digest goes in, length first like any other
+        // byte array, so its content cannot run into the next value.
+        void add(InputStream in) throws IOException {
+            MessageDigest content = newDigest();
+            byte[] buf = new byte[1<<14];
+            for (int nr; (nr = in.read(buf)) > 0; ) {
+                content.update(buf, 0, nr);
+            }
+            add(content.digest());
+        }
+
+        byte[] digest() {
+            return md.digest();
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+                  .append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ee) {
+            throw new InternalError("SHA-256", ee);
+        }
+    }
+}
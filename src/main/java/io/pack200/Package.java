@@ -34,12 +34,11 @@ import io.pack200.ConstantPool.LiteralEntry;
 import io.pack200.ConstantPool.Utf8Entry;
 import io.pack200.ConstantPool.Entry;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.SequenceInputStream;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -52,6 +51,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import static io.pack200.Constants.*;
 
@@ -61,10 +61,14 @@ import static io.pack200.Constants.*;
  */
 class Package {
     int verbose;
+    long spillThreshold = -1;  // file contents past this go to disk
     {
         PropMap pmap = Utils.currentPropMap();
-        if (pmap != null)
+        if (pmap != null) {
             verbose = pmap.getInteger(Utils.DEBUG_VERBOSE);
+            if (!pmap.getProperty(Utils.SPILL_THRESHOLD, "").isEmpty())
+                spillThreshold = Math.max(-1, pmap.getLong(Utils.SPILL_THRESHOLD));
+        }
     }
 
     final int magic = JAVA_PACKAGE_MAGIC;
@@ -116,6 +120,7 @@ class Package {
     public void reset() {
         cp = new ConstantPool.IndexGroup();
         classes.clear();
+        releaseFiles();
         files.clear();
         BandStructure.nextSeqForDebug = 0;
         observedHighestClassVersion = null;
@@ -178,6 +183,9 @@ class Package {
         // Optional file characteristics and data source (a "class stub")
         File file;
 
+        // Digest of the class file bytes, kept for the pack cache
+        byte[] inputDigest;
+
         // File header
         int magic;
         Version version;
@@ -750,8 +758,7 @@ class Package {
         int modtime = NO_MODTIME;
         int options = 0;  // random flag bits, such as deflate_hint
         Class stubClass;  // if this is a stub, here's the class
-        ArrayList<byte[]> prepend = new ArrayList<>();  // list of byte[]
-        java.io.ByteArrayOutputStream append = new ByteArrayOutputStream();
+        FileStore contents = newFileStore();  // null if a stub
 
         File(Utf8Entry name) {
             this.name = name;
@@ -817,31 +824,33 @@ class Package {
             return new java.io.File(parent, fname);
         }
 
-        public void addBytes(byte[] bytes) {
+        public void addBytes(byte[] bytes) throws IOException {
             addBytes(bytes, 0, bytes.length);
         }
-        public void addBytes(byte[] bytes, int off, int len) {
-            if (((append.size() | len) << 2) < 0) {
-                prepend.add(append.toByteArray());
-                append.reset();
-            }
-            append.write(bytes, off, len);
+        /** Use the given bytes, such as a slice of a mapped pack file,
+         *  as the contents of this file, without copying them.
+         */
+        void setBytes(ByteBuffer bytes) {
+            assert(getFileLength() == 0);
+            contents = new FileStore.Slice(bytes, spillThreshold);
+        }
+        /** Take the contents from the given jar entry, but only when
+         *  they are written out.  The jar must stay open until then.
+         */
+        void setSource(JarFile jar, JarEntry entry) {
+            assert(getFileLength() == 0);
+            contents = new FileStore.JarSource(jar, entry, spillThreshold);
+        }
+        public void addBytes(byte[] bytes, int off, int len) throws IOException {
+            contents = contents.write(bytes, off, len);
         }
         public long getFileLength() {
-            long len = 0;
-            if (prepend == null || append == null)  return 0;
-            for (byte[] block : prepend) {
-                len += block.length;
-            }
-            len += append.size();
-            return len;
+            if (contents == null)  return 0;
+            return contents.length();
         }
         public void writeTo(OutputStream out) throws IOException {
-            if (prepend == null || append == null)  return;
-            for (byte[] block : prepend) {
-                out.write(block);
-            }
-            append.writeTo(out);
+            if (contents == null)  return;
+            contents.writeTo(out);
         }
         public void readFrom(InputStream in) throws IOException {
             byte[] buf = new byte[1 << 16];
@@ -850,15 +859,13 @@ class Package {
                 addBytes(buf, 0, nr);
             }
         }
-        public InputStream getInputStream() {
-            InputStream in = new ByteArrayInputStream(append.toByteArray());
-            if (prepend.isEmpty())  return in;
-            List<InputStream> isa = new ArrayList<>(prepend.size()+1);
-            for (byte[] bytes : prepend) {
-                isa.add(new ByteArrayInputStream(bytes));
-            }
-            isa.add(in);
-            return new SequenceInputStream(Collections.enumeration(isa));
+        public InputStream getInputStream() throws IOException {
+            if (contents == null)  return new ByteArrayInputStream(new byte[0]);
+            return contents.getInputStream();
+        }
+        // Drop the contents, and any temporary file holding them.
+        void release() {
+            if (contents != null)  contents.release();
         }
 
         protected void visitRefs(int mode, Collection<Entry> refs) {
@@ -870,8 +877,7 @@ class Package {
     File newStub(String classFileNameString) {
         File stub = new File(classFileNameString);
         stub.options |= FO_IS_CLASS_STUB;
-        stub.prepend = null;
-        stub.append = null;  // do not collect data
+        stub.contents = null;  // do not collect data
         return stub;
     }
 
@@ -888,6 +894,18 @@ class Package {
         assert(added);
     }
 
+    // Where new files keep their contents.
+    FileStore newFileStore() {
+        return new FileStore.Heap(spillThreshold);
+    }
+
+    // Files are done with once written out.
+    void releaseFiles() {
+        for (File file : files) {
+            file.release();
+        }
+    }
+
     // Is there a globally declared table of inner classes?
     List<InnerClass> allInnerClasses = new ArrayList<>();
     Map<ClassEntry, InnerClass>   allInnerClassesByThis;
@@ -1108,29 +1126,36 @@ class Package {
         // what is one of { Debug, Compile, Constant, Exceptions, InnerClasses }
         if (verbose > 0)
             Utils.log.info("Stripping "+what.toLowerCase()+" data and attributes...");
+        for (Class c : classes) {
+            stripAttributeKind(c, what);
+        }
+    }
+
+    // Strip one class, as stripAttributeKind(what) does all of them.
+    void stripAttributeKind(Class c, String what) {
         switch (what) {
             case "Debug":
-                strip("SourceFile");
-                strip("LineNumberTable");
-                strip("LocalVariableTable");
-                strip("LocalVariableTypeTable");
+                c.strip("SourceFile");
+                c.strip("LineNumberTable");
+                c.strip("LocalVariableTable");
+                c.strip("LocalVariableTypeTable");
                 break;
             case "Compile":
                 // Keep the inner classes normally.
                 // Although they have no effect on execution,
                 // the Reflection API exposes them, and JCK checks them.
-                // NO: // strip("InnerClasses");
-                strip("Deprecated");
-                strip("Synthetic");
+                // NO: // c.strip("InnerClasses");
+                c.strip("Deprecated");
+                c.strip("Synthetic");
                 break;
             case "Exceptions":
                 // Keep the exceptions normally.
                 // Although they have no effect on execution,
                 // the Reflection API exposes them, and JCK checks them.
-                strip("Exceptions");
+                c.strip("Exceptions");
                 break;
             case "Constant":
-                stripConstantFields();
+                stripConstantFields(c);
                 break;
         }
     }
@@ -1151,17 +1176,21 @@ class Package {
 
     public void stripConstantFields() {
         for (Class c : classes) {
-            for (Iterator<Class.Field> j = c.fields.iterator(); j.hasNext(); ) {
-                Class.Field f = j.next();
-                if (Modifier.isFinal(f.flags)
-                    // do not strip non-static finals:
-                    && Modifier.isStatic(f.flags)
-                    && f.getAttribute("ConstantValue") != null
-                    && !f.getName().startsWith("serial")) {
-                    if (verbose > 2) {
-                        Utils.log.fine(">> Strip "+this+" ConstantValue");
-                        j.remove();
-                    }
+            stripConstantFields(c);
+        }
+    }
+
+    private void stripConstantFields(Class c) {
+        for (Iterator<Class.Field> j = c.fields.iterator(); j.hasNext(); ) {
+            Class.Field f = j.next();
+            if (Modifier.isFinal(f.flags)
+                // do not strip non-static finals:
+                && Modifier.isStatic(f.flags)
+                && f.getAttribute("ConstantValue") != null
+                && !f.getName().startsWith("serial")) {
+                if (verbose > 2) {
+                    Utils.log.fine(">> Strip "+this+" ConstantValue");
+                    j.remove();
                 }
             }
         }
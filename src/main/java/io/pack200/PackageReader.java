@@ -36,6 +36,9 @@ import java.io.FilterInputStream;
 import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Arrays;
@@ -67,6 +70,34 @@ class PackageReader extends BandStructure {
         this.in = new LimitedBuffer(in);
     }
 
+    /** Receives each file of a segment as soon as it has been read,
+     *  with an input stream of its bits.  A class file comes after its
+     *  class has been reconstructed, and with no bits.
+     */
+    interface FileSink {
+        void accept(File file, InputStream bits) throws IOException;
+    }
+
+    // If not null, files are handed here instead of keeping their bits.
+    FileSink fileSink;
+
+    /** Read the next segment from a buffer which is shared by
+     *  all the segments of an archive, such as one over a channel.
+     */
+    PackageReader(Package pkg, LimitedBuffer in) throws IOException {
+        this.pkg = pkg;
+        this.in = in;
+    }
+
+    /** Read a segment starting at the position of the given buffer,
+     *  such as a memory-mapped pack file.  On return the position is
+     *  just past the segment.
+     */
+    PackageReader(Package pkg, ByteBuffer in) throws IOException {
+        this.pkg = pkg;
+        this.in = new MappedBuffer(in);
+    }
+
     /** A buffered input stream which is careful not to
      *  read its underlying stream ahead of a given mark,
      *  called the 'readLimit'.  This property declares
@@ -122,6 +153,25 @@ class PackageReader extends BandStructure {
         public long skip(long n) throws IOException {
             throw new RuntimeException("no skipping");
         }
+        /** Read values of the given coding into a[start..end), without
+         *  undoing deltas.  Values lying wholly in the buffer are decoded
+         *  in bulk; one that straddles its end is read through read(),
+         *  which refills the buffer.
+         */
+        void readValues(Coding c, int[] a, int start, int end) throws IOException {
+            int[] inpos = new int[1];
+            for (int i = start; i < end; ) {
+                inpos[0] = pos;
+                i = c.readArrayFrom(buf, inpos, count, a, i, end);
+                pos = inpos[0];
+                if (i < end)
+                    a[i++] = c.readFrom(this);
+            }
+        }
+        // For subclasses which do not read a stream.
+        LimitedBuffer() {
+            super(null, 1);
+        }
         LimitedBuffer(InputStream originalIn) {
             super(null, 1<<14);
             servedPos = pos;
@@ -146,6 +196,107 @@ class PackageReader extends BandStructure {
                 }
             };
         }
+        // Reads the channel straight into the buffer's own array.
+        // The channel must be in blocking mode.
+        LimitedBuffer(ReadableByteChannel ch) {
+            super(null, 1<<14);
+            Utils.checkBlocking(ch);
+            servedPos = pos;
+            super.in = new InputStream() {
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return (read(b, 0, 1) <= 0) ? -1 : b[0] & 0xFF;
+                }
+                public int read(byte b[], int off, int len) throws IOException {
+                    if (buffered == limit)
+                        return -1;
+                    if (limit != -1) {
+                        long remaining = limit - buffered;
+                        if (len > remaining)
+                            len = (int)remaining;
+                    }
+                    int nr = ch.read(ByteBuffer.wrap(b, off, len));
+                    if (nr > 0)  buffered += nr;
+                    return nr;
+                }
+                public void close() throws IOException {
+                    ch.close();
+                }
+            };
+        }
+    }
+
+    /** A LimitedBuffer over bytes which are all in memory already.
+     *  Reads come straight from the ByteBuffer, whose position counts
+     *  the bytes served, and file bits are taken as slices, not copied.
+     */
+    static
+    class MappedBuffer extends LimitedBuffer {
+        final ByteBuffer bytes;
+        final int base;      // position of the first byte served
+
+        MappedBuffer(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.base = bytes.position();
+            this.limit = -1;
+        }
+        @Override
+        public long getBytesServed() {
+            return bytes.position() - base;
+        }
+        @Override
+        public boolean atLimit() {
+            return getBytesServed() == limit;
+        }
+        @Override
+        public int available() {
+            long avail = bytes.remaining();
+            if (limit != -1)
+                avail = Math.min(avail, limit - getBytesServed());
+            return (int) avail;
+        }
+        @Override
+        public int read() {
+            if (available() == 0)  return -1;
+            return bytes.get() & 0xFF;
+        }
+        @Override
+        public int read(byte b[], int off, int len) {
+            if (len == 0)  return 0;
+            int nr = Math.min(len, available());
+            if (nr == 0)  return -1;
+            bytes.get(b, off, nr);
+            return nr;
+        }
+        @Override
+        public void mark(int readlimit) {
+            ((Buffer) bytes).mark();
+        }
+        @Override
+        public void reset() {
+            ((Buffer) bytes).reset();
+        }
+        @Override
+        public void close() {
+        }
+        @Override
+        void readValues(Coding c, int[] a, int start, int end) throws IOException {
+            // Decode straight out of the bytes, up to the limit.
+            for (int i = start; i < end; ) {
+                i = c.readArrayFrom(bytes, bytes.position() + available(),
+                                    a, i, end);
+                if (i < end)
+                    a[i++] = c.readFrom(this);
+            }
+        }
+        /** Return the next size bytes as a slice, and skip over them. */
+        ByteBuffer slice(long size) throws IOException {
+            if (size > available())  throw new EOFException();
+            ByteBuffer slice = bytes.slice();
+            ((Buffer) slice).limit((int) size);
+            ((Buffer) bytes).position(bytes.position() + (int) size);
+            return slice;
+        }
     }
 
     void read() throws IOException {
@@ -162,21 +313,36 @@ class PackageReader extends BandStructure {
             //        file_bands
             readFileHeader();
             readBandHeaders();
+            PhaseTimer timer = PhaseTimer.start("readConstantPool");
             readConstantPool();  // cp_bands
+            timer.stop();
+            timer = PhaseTimer.start("readClasses");
             readAttrDefs();
+            numberEntries();
             readInnerClasses();
             Class[] classes = readClasses();
+            timer.stop();
+            timer = PhaseTimer.start("readByteCodes");
             readByteCodes();
+            timer.stop();
+            timer = PhaseTimer.start("readFiles");
             readFiles();     // file_bands
+            timer.stop();
             assert(archiveSize1 == 0 || in.atLimit());
             assert(archiveSize1 == 0 ||
                    in.getBytesServed() == archiveSize0+archiveSize1);
             all_bands.doneDisbursing();
 
             // As a post-pass, build constant pools and inner classes.
-            for (int i = 0; i < classes.length; i++) {
+            // (A file sink has had them built and handed over already.)
+            timer = PhaseTimer.start("reconstructClasses");
+            for (int i = 0; fileSink == null && i < classes.length; i++) {
                 reconstructClass(classes[i]);
             }
+            timer.stop();
+            Pack200.Metrics metrics = PhaseTimer.current();
+            if (metrics != null)
+                metrics.addSegment();
 
             ok = true;
         } catch (Exception ee) {
@@ -690,6 +856,18 @@ class PackageReader extends BandStructure {
         setBandIndexes();
     }
 
+    // Number the pool, with the attribute names class files will
+    // need, so ClassWriter can find local indexes without hashing.
+    void numberEntries() {
+        List<Entry> names = new ArrayList<>();
+        for (List<Attribute.Layout> defList : attrDefs) {
+            for (Attribute.Layout def : defList) {
+                if (def != null)  names.add(def.getNameRef());
+            }
+        }
+        pkg.cp.numberEntries(names);
+    }
+
     void readUtf8Bands(Entry[] cpMap) throws IOException {
         //  cp_Utf8:
         //        *cp_Utf8_prefix :DELTA5
@@ -903,6 +1081,10 @@ class PackageReader extends BandStructure {
         }
         assert(in.getReadLimit() == -1 || in.getReadLimit() == totalFileLength);
 
+        // A mapped archive can hand out its file bits without copying,
+        // unless they must also be dumped.
+        MappedBuffer mapped = (in instanceof MappedBuffer && !optDumpBands)
+                              ? (MappedBuffer) in : null;
         byte[] buf = new byte[1<<16];
         for (int i = 0; i < numFiles; i++) {
             // %%% Use a big temp file for file bits?
@@ -918,6 +1100,21 @@ class PackageReader extends BandStructure {
             if (verbose > 1)
                 Utils.log.fine("Reading "+size+" bytes of "+name.stringValue());
             long toRead = size;
+            if (mapped != null && toRead > 0) {
+                file.setBytes(mapped.slice(toRead));
+                toRead = 0;
+            }
+            if (fileSink != null && !file.isClassStub()) {
+                pkg.addFile(file);
+                if (toRead == 0) {
+                    fileSink.accept(file, file.getInputStream());
+                } else {
+                    FileBits bits = new FileBits(file_bits.getInputStream(), toRead);
+                    fileSink.accept(file, bits);
+                    bits.skipRest();
+                }
+                continue;
+            }
             while (toRead > 0) {
                 int nr = buf.length;
                 if (nr > toRead)  nr = (int) toRead;
@@ -931,6 +1128,10 @@ class PackageReader extends BandStructure {
                 assert(file.getFileLength() == 0);
                 Class cls = nextClass.next();
                 cls.initFile(file);
+                if (fileSink != null) {
+                    reconstructClass(cls);
+                    fileSink.accept(file, null);
+                }
             }
         }
 
@@ -939,6 +1140,10 @@ class PackageReader extends BandStructure {
             Class cls = nextClass.next();
             cls.initFile(null);  // implicitly initialize to a trivial one
             cls.file.modtime = pkg.default_modtime;
+            if (fileSink != null) {
+                reconstructClass(cls);
+                fileSink.accept(cls.file, null);
+            }
         }
 
         file_name.doneDisbursing();
@@ -956,6 +1161,54 @@ class PackageReader extends BandStructure {
         }
     }
 
+    // The bits of one file, read through from file_bits.
+    static
+    class FileBits extends FilterInputStream {
+        private long remaining;
+        FileBits(InputStream in, long size) {
+            super(in);
+            remaining = size;
+        }
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0)  return -1;
+            int ch = in.read();
+            if (ch < 0)  throw new EOFException();
+            remaining--;
+            return ch;
+        }
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            if (len == 0)  return 0;
+            if (remaining == 0)  return -1;
+            if (len > remaining)  len = (int) remaining;
+            int nr = in.read(b, off, len);
+            if (nr < 0)  throw new EOFException();
+            remaining -= nr;
+            return nr;
+        }
+        @Override
+        public long skip(long n) throws IOException {
+            throw new RuntimeException("no skipping");
+        }
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(remaining, in.available());
+        }
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        @Override
+        public void close() {
+        }
+        // Consume whatever the sink did not read.
+        void skipRest() throws IOException {
+            byte[] buf = new byte[1<<12];
+            while (read(buf, 0, buf.length) > 0) { }
+        }
+    }
+
     void readAttrDefs() throws IOException {
         //  attr_definition_bands:
         //        *attr_definition_headers :BYTE1
@@ -2058,6 +2311,8 @@ class PackageReader extends BandStructure {
         int[] labels = new int[1<<10];
         // scratch buffer for registering CP refs:
         Fixups fixupBuf = new Fixups();
+        // reusable view of switches and branches:
+        Instruction.Cursor sw = new Instruction.Cursor();
 
         for (int k = 0; k < allCodes.length; k++) {
             Code code = allCodes[k];
@@ -2102,8 +2357,8 @@ class PackageReader extends BandStructure {
                         buf[pc++] = (byte) bc;
                         //initialize apc, df, lo, hi bytes to reasonable bits:
                         Arrays.fill(buf, pc, pc+30, (byte)0);
-                        Instruction.Switch isw = (Instruction.Switch)
-                            Instruction.at(buf, curPC);
+                        Instruction.Cursor isw = sw;
+                        isw.at(buf, curPC);
                         //isw.setDefaultLabel(getLabel(bc_label, code, curPC));
                         isw.setCaseCount(caseCount);
                         if (bc == _tableswitch) {
@@ -2348,19 +2603,20 @@ class PackageReader extends BandStructure {
             }
             // now make a permanent copy of the bytecodes
             code.setBytes(realloc(buf, pc));
-            code.setInstructionMap(insnMap, numInsns);
+            // Labels need the insnMap now; handlers and attributes
+            // make it later from the bytes, if they need it at all.
+            if (numLabels > 0)
+                code.setInstructionMap(insnMap, numInsns);
             // fix up labels, now that code has its insnMap
-            Instruction ibr = null;  // temporary branch instruction
+            Instruction.Cursor ibr = sw;  // temporary branch instruction
             for (int i = 0; i < numLabels; i++) {
                 int curPC = labels[i];
-                // (Note:  Passing ibr in allows reuse, a speed hack.)
-                ibr = Instruction.at(code.bytes, curPC, ibr);
-                if (ibr instanceof Instruction.Switch) {
-                    Instruction.Switch isw = (Instruction.Switch) ibr;
-                    isw.setDefaultLabel(getLabel(bc_label, code, curPC));
-                    int caseCount = isw.getCaseCount();
+                ibr.at(code.bytes, curPC);
+                if (ibr.isSwitch()) {
+                    ibr.setDefaultLabel(getLabel(bc_label, code, curPC));
+                    int caseCount = ibr.getCaseCount();
                     for (int j = 0; j < caseCount; j++) {
-                        isw.setCaseLabel(j, getLabel(bc_label, code, curPC));
+                        ibr.setCaseLabel(j, getLabel(bc_label, code, curPC));
                     }
                 } else {
                     ibr.setBranchLabel(getLabel(bc_label, code, curPC));
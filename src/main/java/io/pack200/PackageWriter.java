@@ -32,6 +32,9 @@ import io.pack200.Package.InnerClass;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -50,6 +53,7 @@ class PackageWriter extends BandStructure {
     Package pkg;
     OutputStream finalOut;
     Package.Version packageVersion;
+    final int codingThreads = p200.getInteger(Utils.PACK_THREADS, 1);
 
     PackageWriter(Package pkg, OutputStream out) throws IOException {
         this.pkg = pkg;
@@ -58,13 +62,62 @@ class PackageWriter extends BandStructure {
         initHighestClassVersion(pkg.getHighestClassVersion());
     }
 
+    /**
+     * An output stream over a channel, for writing a package straight
+     * to a file or socket.  Band writes are gathered into one buffer;
+     * writes at least as large as the buffer go to the channel directly.
+     * Closing it flushes, but does not close, the channel, which must
+     * be in blocking mode.
+     */
+    static final class ChannelOutput extends OutputStream {
+        private final WritableByteChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+        ChannelOutput(WritableByteChannel ch) {
+            Utils.checkBlocking(ch);
+            this.ch = ch;
+        }
+
+        public void write(int b) throws IOException {
+            if (!buf.hasRemaining())  drain();
+            buf.put((byte) b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= buf.capacity()) {
+                drain();
+                writeFully(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+            if (len > buf.remaining())  drain();
+            buf.put(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            drain();
+        }
+
+        public void close() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            ((Buffer) buf).flip();
+            writeFully(buf);
+            ((Buffer) buf).clear();
+        }
+
+        private void writeFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                ch.write(b);
+            }
+        }
+    }
+
     void write() throws IOException {
         boolean ok = false;
         try {
-            if (verbose > 0) {
-                Utils.log.info("Setting up constant pool...");
-            }
-            setup();
+            setup();  // unless the caller has done it already
 
             if (verbose > 0) {
                 Utils.log.info("Packing...");
@@ -76,7 +129,9 @@ class PackageWriter extends BandStructure {
             writeFiles();
             writeAttrDefs();
             writeInnerClasses();
+            PhaseTimer timer = PhaseTimer.start("writeClassesAndByteCodes");
             writeClassesAndByteCodes();
+            timer.stop();
             writeAttrCounts();
 
             if (verbose > 1)  printCodeHist();
@@ -85,12 +140,21 @@ class PackageWriter extends BandStructure {
             if (verbose > 0) {
                 Utils.log.info("Coding...");
             }
-            all_bands.chooseBandCodings();
+            timer = PhaseTimer.start("chooseBandCodings");
+            chooseBandCodings(codingThreads);
+            timer.stop();
 
             // now we can write the headers:
             writeFileHeader();
 
+            Pack200.Metrics metrics = PhaseTimer.current();
+            if (metrics != null) {
+                addBandMetrics(metrics);
+                metrics.addSegment();
+            }
+            timer = PhaseTimer.start("writeAllBandsTo");
             writeAllBandsTo(finalOut);
+            timer.stop();
 
             ok = true;
         } catch (Exception ee) {
@@ -108,12 +172,26 @@ class PackageWriter extends BandStructure {
     Map<Attribute.Layout, int[]>     backCountTable;   // for layout callables
     int[][]     attrCounts;       // count attr. occurrences
 
+    /** Prepare the package for writing.  This makes all the changes to
+     *  package state that carry over into a packer's next segment, such as
+     *  the default modtime and the global inner classes, so a packer that
+     *  writes segments concurrently calls it before handing the writer to
+     *  another thread.  Does nothing if it has already been called.
+     */
     void setup() {
+        if (requiredEntries != null)  return;  // already set up
+        if (verbose > 0) {
+            Utils.log.info("Setting up constant pool...");
+        }
         requiredEntries = new HashSet<>();
         setArchiveOptions();
         trimClassAttributes();
+        PhaseTimer timer = PhaseTimer.start("collectAttributeLayouts");
         collectAttributeLayouts();
+        timer.stop();
+        timer = PhaseTimer.start("buildGlobalConstantPool");
         pkg.buildGlobalConstantPool(requiredEntries);
+        timer.stop();
         setBandIndexes();
         makeNewAttributeBands();
         collectInnerClasses();
@@ -817,7 +895,7 @@ class PackageWriter extends BandStructure {
                 file_modtime.putInt(file.modtime - pkg.default_modtime);
             if (haveOptions)
                 file_options.putInt(file.options);
-            file.writeTo(file_bits.collectorStream());
+            file_bits.putFile(file);  // copied when the band is written
             if (verbose > 1)
                 Utils.log.fine("Wrote "+len+" bytes of "+file.name.stringValue());
         }
@@ -1388,7 +1466,7 @@ class PackageWriter extends BandStructure {
 
     // Return an _invokeinit_op variant, if the instruction matches one,
     // else -1.
-    private int initOpVariant(Instruction i, Entry newClass) {
+    private int initOpVariant(Instruction.Cursor i, Entry newClass) {
         if (i.getBC() != _invokespecial)  return -1;
         MemberEntry ref = (MemberEntry) i.getCPRef(curCPMap);
         if ("<init>".equals(ref.descRef.nameRef.stringValue()) == false)
@@ -1405,7 +1483,7 @@ class PackageWriter extends BandStructure {
 
     // Return a _self_linker_op variant, if the instruction matches one,
     // else -1.
-    private int selfOpVariant(Instruction i) {
+    private int selfOpVariant(Instruction.Cursor i) {
         int bc = i.getBC();
         if (!(bc >= _first_linker_op && bc <= _last_linker_op))  return -1;
         MemberEntry ref = (MemberEntry) i.getCPRef(curCPMap);
@@ -1432,7 +1510,9 @@ class PackageWriter extends BandStructure {
         // class of most recent new; helps compress <init> calls
         Entry newClass = null;
 
-        for (Instruction i = code.instructionAt(0); i != null; i = i.next()) {
+        Instruction.Cursor i = new Instruction.Cursor();
+        Instruction.Cursor ni = new Instruction.Cursor();  // lookahead
+        for (boolean more = i.reset(code.bytes); more; more = i.next()) {
             // %%% Add a stress mode which issues _ref/_byte_escape.
             if (verbose > 3)  Utils.log.fine(i.toString());
 
@@ -1460,8 +1540,7 @@ class PackageWriter extends BandStructure {
             // Begin "bc_linker" compression.
             if (bc == _aload_0) {
                 // Try to group aload_0 with a following operation.
-                Instruction ni = code.instructionAt(i.getNextPC());
-                if (selfOpVariant(ni) >= 0) {
+                if (ni.at(code.bytes, i.getNextPC()) && selfOpVariant(ni) >= 0) {
                     prevAload = true;
                     continue;
                 }
@@ -1513,23 +1592,20 @@ class PackageWriter extends BandStructure {
             case _tableswitch: // apc:  (df, lo, hi, (hi-lo+1)*(label))
             case _lookupswitch: // apc:  (df, nc, nc*(case, label))
                 bc_codes.putByte(bc);
-                Instruction.Switch isw = (Instruction.Switch) i;
                 // Note that we do not write the alignment bytes.
-                int apc = isw.getAlignedPC();
-                int npc = isw.getNextPC();
                 // write a length specification into the bytecode stream
-                int caseCount = isw.getCaseCount();
+                int caseCount = i.getCaseCount();
                 bc_case_count.putInt(caseCount);
-                putLabel(bc_label, code, i.getPC(), isw.getDefaultLabel());
+                putLabel(bc_label, code, i.getPC(), i.getDefaultLabel());
                 for (int j = 0; j < caseCount; j++) {
-                    putLabel(bc_label, code, i.getPC(), isw.getCaseLabel(j));
+                    putLabel(bc_label, code, i.getPC(), i.getCaseLabel(j));
                 }
                 // Transmit case values in their own band.
                 if (bc == _tableswitch) {
-                    bc_case_value.putInt(isw.getCaseValue(0));
+                    bc_case_value.putInt(i.getCaseValue(0));
                 } else {
                     for (int j = 0; j < caseCount; j++) {
-                        bc_case_value.putInt(isw.getCaseValue(j));
+                        bc_case_value.putInt(i.getCaseValue(j));
                     }
                 }
                 // Done with the switch.
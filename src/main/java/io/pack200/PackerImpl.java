@@ -26,15 +26,18 @@
 package io.pack200;
 
 import io.pack200.Attribute.Layout;
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -42,6 +45,12 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -84,6 +93,7 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
         assert(Utils.currentInstance.get() == null);
         try {
             Utils.currentInstance.set(this);
+            startMetrics();
             if ("0".equals(props.getProperty(Pack200.Packer.EFFORT))) {
                 Utils.copyJarFile(in, out);
             } else {
@@ -91,6 +101,8 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
             }
         } finally {
             Utils.currentInstance.set(null);
+            finishMetrics();
+            resetEntries();
             in.close();
         }
     }
@@ -113,6 +125,7 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
         assert(Utils.currentInstance.get() == null);
         try {
             Utils.currentInstance.set(this);
+            startMetrics();
             if ("0".equals(props.getProperty(Pack200.Packer.EFFORT))) {
                 Utils.copyJarFile(in, out);
             } else {
@@ -120,10 +133,33 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
             }
         } finally {
             Utils.currentInstance.set(null);
+            finishMetrics();
+            resetEntries();
             in.close();
         }
     }
 
+    /**
+     * Takes a JAR file and writes a pack-stream to a channel.
+     * Band output is gathered into one buffer before each channel write.
+     * <p>
+     * Does not close its output.  (Pack200 archives are appendable.)
+     * @param in the JAR file to read
+     * @param out a WritableByteChannel
+     * @exception IOException if an error is encountered.
+     * @exception java.nio.channels.IllegalBlockingModeException if the
+     *            channel is selectable and in non-blocking mode.
+     */
+    public void pack(Path in, WritableByteChannel out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("null output");
+        }
+        Utils.checkBlocking(out);
+        OutputStream out0 = new PackageWriter.ChannelOutput(out);
+        pack(new JarFile(in.toFile()), out0);
+        out0.flush();
+    }
+
     // All the worker bees.....
     // The packer worker.
     private class DoPack {
@@ -136,9 +172,9 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
 
         // Here's where the bits are collected before getting packed, we also
         // initialize the version numbers now.
-        final Package pkg = new Package(Package.Version.makeVersion(props, "min.class"),
-                                        Package.Version.makeVersion(props, "max.class"),
-                                        Package.Version.makeVersion(props, "package"));
+        Package pkg = new Package(Package.Version.makeVersion(props, "min.class"),
+                                  Package.Version.makeVersion(props, "max.class"),
+                                  Package.Version.makeVersion(props, "package"));
 
         final String unknownAttrCommand;
         {
@@ -261,6 +297,67 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
             if (verbose > 0) Utils.log.info("passFiles = " + passFiles);
         }
 
+        final int nthreads
+            = Math.max(1, props.getInteger(Utils.PACK_THREADS, 1));
+        final int segmentThreads;
+        {
+            int n = props.getInteger(Utils.PACK_SEGMENT_THREADS, 1);
+            // The band debugging options keep global state, so they need
+            // the segments to be written one at a time.
+            if (props.getBoolean(Utils.COM_PREFIX+"debug.bands") ||
+                props.getBoolean(Utils.COM_PREFIX+"dump.bands"))
+                n = 1;
+            segmentThreads = Math.max(1, n);
+        }
+
+        final PackCache cache = PackCache.open(props);
+        // Off while a whole archive is being stored as one entry.
+        boolean cacheSegments = (cache != null);
+
+        final SegmentIndex.Base base;  // previous pack file, if incremental
+        final SegmentIndex index;      // index of this one, if incremental
+        final String indexFile;
+        {
+            String file = props.getProperty(Utils.PACK_INCREMENTAL_BASE, "");
+            base = file.isEmpty() ? null : new SegmentIndex.Base(new File(file));
+            indexFile = props.getProperty(Utils.PACK_INCREMENTAL_INDEX, "");
+            index = indexFile.isEmpty() ? null : new SegmentIndex();
+        }
+
+        // Non-null if band codings may be chosen as they were before.
+        // (They are read from decisionsFile when the run starts.)
+        CodingDecisions decisions;
+        final String decisionsFile
+            = props.getProperty(Utils.CODING_DECISIONS_FILE, "");
+        {
+            if (!decisionsFile.isEmpty() || props.getBoolean(Utils.CODING_DECISIONS))
+                decisions = new CodingDecisions();
+        }
+
+        void readCodingDecisions() throws IOException {
+            if (decisions == null || decisionsFile.isEmpty())  return;
+            File file = new File(decisionsFile);
+            if (!file.exists())  return;
+            decisions = CodingDecisions.load(file);
+            if (verbose > 0)
+                Utils.log.info("Read "+decisions.size()+" coding decisions from "+file);
+        }
+
+        // Non-null if segments may be looked up by their input.
+        final PackDigest digest
+            = (cache != null || base != null || index != null)
+            ? new PackDigest(props) : null;
+
+        final boolean contentBoundaries;
+        {
+            String mode = props.getProperty(Utils.PACK_SEGMENT_BOUNDARY,
+                    (base != null || index != null) ? "content" : "size");
+            if (!("size".equals(mode) || "content".equals(mode))) {
+                throw new RuntimeException("Bad option: " + Utils.PACK_SEGMENT_BOUNDARY + " = " + mode);
+            }
+            contentBoundaries = "content".equals(mode);
+        }
+
         {
             // Hook for testing:  Forces use of special archive modes.
             int opt = props.getInteger(Utils.COM_PREFIX+"archive.options");
@@ -272,7 +369,19 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
 
         // Get a new package, based on the old one.
         private void makeNextPackage() {
-            pkg.reset();
+            if (segmentWriter == null) {
+                pkg.reset();
+                return;
+            }
+            // The old package is still being written on another thread.
+            // Carry over what reset() would have left in place.
+            Package next = new Package(pkg.minClassVersion,
+                                       pkg.maxClassVersion,
+                                       pkg.packageVersion);
+            next.default_modtime = pkg.default_modtime;
+            next.default_options = pkg.default_options;
+            next.setAllInnerClasses(pkg.getAllInnerClasses());
+            pkg = next;
         }
 
         final class InFile {
@@ -378,6 +487,7 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
         }
 
         void run(JarInputStream in, OutputStream out) throws IOException {
+            readCodingDecisions();
             // First thing we do is get the manifest, as JIS does
             // not provide the Manifest as an entry.
             if (in.getManifest() != null) {
@@ -386,93 +496,269 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
                 InputStream tmpIn = new ByteArrayInputStream(tmp.toByteArray());
                 pkg.addFile(readFile(JarFile.MANIFEST_NAME, tmpIn));
             }
-            for (JarEntry je; (je = in.getNextJarEntry()) != null; ) {
-                InFile inFile = new InFile(je);
-
-                String name = inFile.name;
-                Package.File bits = readFile(name, in);
-                Package.File file = null;
-                // (5078608) : discount the resource files in META-INF
-                // from segment computation.
-                long inflen = (inFile.isMetaInfFile())
-                              ? 0L
-                              : inFile.getInputLength();
-
-                if ((segmentSize += inflen) > segmentLimit) {
-                    segmentSize -= inflen;
-                    int nextCount = -1;  // don't know; it's a stream
-                    flushPartial(out, nextCount);
-                }
-                if (verbose > 1) {
-                    Utils.log.fine("Reading " + name);
-                }
+            try {
+                for (JarEntry je; (je = in.getNextJarEntry()) != null; ) {
+                    InFile inFile = new InFile(je);
 
-                assert(je.isDirectory() == name.endsWith("/"));
+                    String name = inFile.name;
+                    Package.File bits = readFile(name, in);
+                    Package.File file = null;
+                    long inflen = segmentLength(inFile);
 
-                if (inFile.mustProcess()) {
-                    file = readClass(name, bits.getInputStream());
-                }
-                if (file == null) {
-                    file = bits;
-                    pkg.addFile(file);
+                    try {
+                        if (startsSegment(name, inflen)) {
+                            int nextCount = -1;  // don't know; it's a stream
+                            flushPartial(out, nextCount);
+                        }
+                        if (verbose > 1) {
+                            Utils.log.fine("Reading " + name);
+                        }
+
+                        assert(je.isDirectory() == name.endsWith("/"));
+
+                        if (inFile.mustProcess()) {
+                            try (InputStream strm = bits.getInputStream()) {
+                                file = readClass(name, strm);
+                            }
+                        }
+                        if (file == null) {
+                            file = bits;
+                            pkg.addFile(file);
+                        }
+                    } finally {
+                        // Unless the package took them, the bits are done.
+                        if (file != bits)  bits.release();
+                    }
+                    inFile.copyTo(file);
+                    noteRead(inFile);
                 }
-                inFile.copyTo(file);
-                noteRead(inFile);
+                flushAll(out);
+            } finally {
+                close();
             }
-            flushAll(out);
         }
 
         void run(JarFile in, OutputStream out) throws IOException {
+            if (cache == null || index != null) {
+                // An index needs every segment to pass through.
+                pack(in, out);
+                return;
+            }
+            String key = digest.archiveKey(new File(in.getName()));
+            long size = cache.copyTo(key, out);
+            if (size >= 0) {
+                out.flush();
+                if (verbose > 0)
+                    Utils.log.info("Copied "+size+" bytes from the pack cache");
+                props.setInteger(Pack200.Packer.PROGRESS, 100);
+                return;
+            }
+            PackCache.Entry entry = cache.begin(key);
+            try {
+                // Segments are worth storing only if there are several.
+                cacheSegments = (segmentLimit != Long.MAX_VALUE);
+                pack(in, entry.tee(out));
+                entry.commit();
+            } finally {
+                entry.abort();
+            }
+        }
+
+        void pack(JarFile in, OutputStream out) throws IOException {
+            readCodingDecisions();
             List<InFile> inFiles = scanJar(in);
 
             if (verbose > 0)
                 Utils.log.info("Reading " + inFiles.size() + " files...");
 
-            int numDone = 0;
-            for (InFile inFile : inFiles) {
-                String name      = inFile.name;
-                // (5078608) : discount the resource files completely from segmenting
-                long inflen = (inFile.isMetaInfFile())
-                               ? 0L
-                               : inFile.getInputLength() ;
-                if ((segmentSize += inflen) > segmentLimit) {
-                    segmentSize -= inflen;
-                    // Estimate number of remaining segments:
-                    float filesDone = numDone+1;
-                    float segsDone  = segmentCount+1;
-                    float filesToDo = inFiles.size() - filesDone;
-                    float segsToDo  = filesToDo * (segsDone/filesDone);
+            ClassParser parser = (nthreads > 1) ? new ClassParser(inFiles) : null;
+            try {
+                int numDone = 0;
+                for (InFile inFile : inFiles) {
+                    String name      = inFile.name;
+                    long inflen = segmentLength(inFile);
+                    if (startsSegment(name, inflen)) {
+                        // Estimate number of remaining segments:
+                        float filesDone = numDone+1;
+                        float segsDone  = segmentCount+1;
+                        float filesToDo = inFiles.size() - filesDone;
+                        float segsToDo  = filesToDo * (segsDone/filesDone);
+                        if (verbose > 1)
+                            Utils.log.fine("Estimated segments to do: "+segsToDo);
+                        flushPartial(out, (int) Math.ceil(segsToDo));
+                    }
                     if (verbose > 1)
-                        Utils.log.fine("Estimated segments to do: "+segsToDo);
-                    flushPartial(out, (int) Math.ceil(segsToDo));
-                }
-                InputStream strm = inFile.getInputStream();
-                if (verbose > 1)
-                    Utils.log.fine("Reading " + name);
-                Package.File file = null;
-                if (inFile.mustProcess()) {
-                    file = readClass(name, strm);
+                        Utils.log.fine("Reading " + name);
+                    Package.File file = null;
+                    if (inFile.mustProcess()) {
+                        if (parser != null) {
+                            file = addClass(parser.next(inFile));
+                        } else {
+                            try (InputStream strm = inFile.getInputStream()) {
+                                file = readClass(name, strm);
+                            }
+                        }
+                    }
                     if (file == null) {
-                        strm.close();
-                        strm = inFile.getInputStream();
+                        file = readFile(inFile);
+                        pkg.addFile(file);
+                    }
+                    inFile.copyTo(file);
+                    noteRead(inFile);
+                    numDone += 1;
+                }
+                flushAll(out);
+            } finally {
+                if (parser != null)  parser.close();
+                close();
+            }
+        }
+
+        // Let go of everything a run holds, whether it finished or not,
+        // so no spilled contents stay behind in temporary files.
+        private void close() throws IOException {
+            if (segmentWriter == null || !segmentWriter.holds(pkg))
+                pkg.releaseFiles();
+            if (segmentWriter != null)  segmentWriter.close();
+            if (base != null)  base.close();
+        }
+
+        /** Parses class files ahead of the main loop on a pool of worker
+         *  threads.  Each worker runs with this packer as its current
+         *  instance, so they all intern into the same constant pool maps.
+         *  Parsed classes are handed back strictly in input order, and only
+         *  the main loop adds them to the package, so the result is the
+         *  same as parsing them serially.
+         */
+        final class ClassParser {
+            final List<InFile> inFiles;
+            final ExecutorService pool;
+            // Bound the number of parsed classes waiting to be consumed.
+            final int window = nthreads * 4;
+            final ArrayDeque<Future<Package.Class>> pending = new ArrayDeque<>();
+            int nextToSubmit = 0;
+            // The main loop's segment cuts, predicted ahead of it.
+            Package into = pkg;
+            long aheadSize = segmentSize;
+            boolean aheadFilled = !(pkg.files.isEmpty() && pkg.classes.isEmpty());
+            int cutAt = -1;  // next file to start a segment, if known
+
+            ClassParser(List<InFile> inFiles) {
+                this.inFiles = inFiles;
+                this.pool = Executors.newFixedThreadPool(nthreads, r -> {
+                    Thread t = new Thread(r, "pack200-class-parser");
+                    t.setDaemon(true);
+                    return t;
+                });
+                if (verbose > 0)
+                    Utils.log.info("Parsing class files on "+nthreads+" threads");
+            }
+
+            private void fill() {
+                while (pending.size() < window && nextToSubmit < inFiles.size()) {
+                    InFile inFile = inFiles.get(nextToSubmit);
+                    if (nextToSubmit == cutAt) {
+                        // Parse nothing past the cut until the main loop
+                        // has made the next package.
+                        if (pkg == into && !pending.isEmpty())  break;
+                        into = pkg;
+                        cutAt = -1;
+                    } else if (predictCut(inFile)) {
+                        cutAt = nextToSubmit;
+                        continue;
                     }
+                    nextToSubmit++;
+                    Package segPkg = into;
+                    if (inFile.mustProcess())
+                        pending.add(pool.submit(() -> parse(segPkg, inFile)));
                 }
-                if (file == null) {
-                    file = readFile(name, strm);
-                    pkg.addFile(file);
+            }
+
+            // Follow startsSegment and flushPartial, which skips a cut
+            // while the package is still empty.
+            private boolean predictCut(InFile inFile) {
+                long inflen = segmentLength(inFile);
+                boolean cut = cutsSegment(aheadSize, inFile.name, inflen);
+                boolean starts = cut && aheadFilled;
+                if (!cut)
+                    aheadSize += inflen;
+                else if (starts)
+                    aheadSize = 0;
+                aheadFilled = true;
+                return starts;
+            }
+
+            private Package.Class parse(Package into, InFile inFile) throws IOException {
+                assert(Utils.currentInstance.get() == null);
+                try (InputStream in = inFile.getInputStream()) {
+                    Utils.currentInstance.set(PackerImpl.this);
+                    PhaseTimer timer = PhaseTimer.startWorker("parseClasses");
+                    try {
+                        return parseClass(into, inFile.name, in);
+                    } finally {
+                        timer.stop();
+                    }
+                } finally {
+                    Utils.currentInstance.set(null);
                 }
-                inFile.copyTo(file);
-                strm.close();  // tidy up
-                noteRead(inFile);
-                numDone += 1;
             }
-            flushAll(out);
+
+            /** Return the class parsed from inFile, which must be the next
+             *  class file in input order, or null if it must be passed as is.
+             */
+            Package.Class next(InFile inFile) throws IOException {
+                fill();
+                Future<Package.Class> f = pending.remove();
+                // The workers' time overlaps; time only the wait for them.
+                PhaseTimer timer = PhaseTimer.start("parseClasses");
+                try {
+                    Package.Class cls = f.get();
+                    if (cls != null && cls.getPackage() != pkg) {
+                        // Parsed ahead into a segment that was cut where
+                        // fill() did not expect it; parse it again.
+                        try (InputStream in = inFile.getInputStream()) {
+                            cls = parseClass(pkg, inFile.name, in);
+                        }
+                    }
+                    return cls;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(ie.getMessage());
+                } catch (ExecutionException ee) {
+                    throw rethrow(ee);
+                } finally {
+                    timer.stop();
+                }
+            }
+
+            void close() {
+                pool.shutdownNow();
+            }
         }
 
         Package.File readClass(String fname, InputStream in) throws IOException {
-            Package.Class cls = pkg.new Class(fname);
-            in = new BufferedInputStream(in);
-            ClassReader reader = new ClassReader(cls, in);
+            PhaseTimer timer = PhaseTimer.start("parseClasses");
+            try {
+                return addClass(parseClass(pkg, fname, in));
+            } finally {
+                timer.stop();
+            }
+        }
+
+        Package.File addClass(Package.Class cls) {
+            if (cls == null)  return null;  // passed as a plain file
+            pkg.addClass(cls);
+            return cls.file;
+        }
+
+        // Does not add to the package, so it can run on a worker thread.
+        // The caller times it as part of the parseClasses phase.
+        Package.Class parseClass(Package into, String fname, InputStream in) throws IOException {
+            Package.Class cls = into.new Class(fname);
+            // Take the whole class file at once; the reader works on the
+            // bytes directly, and the digest covers them in one call.
+            byte[] bytes = ClassReader.readAll(in);
+            ClassReader reader = new ClassReader(cls, bytes);
             reader.setAttrDefs(attrDefs);
             reader.setAttrCommands(attrCommands);
             reader.unknownAttrCommand = unknownAttrCommand;
@@ -501,8 +787,23 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
                 // Otherwise, it must be an error.
                 throw ioe;
             }
-            pkg.addClass(cls);
-            return cls.file;
+            if (digest != null)
+                cls.inputDigest = PackDigest.newDigest().digest(bytes);
+            return cls;
+        }
+
+        // Refer to raw data in a jar, to be read when it is written.
+        Package.File readFile(InFile inFile) throws IOException {
+            if (inFile.jf == null || inFile.je.getSize() < 0) {
+                try (InputStream strm = inFile.getInputStream()) {
+                    return readFile(inFile.name, strm);
+                }
+            }
+            Package.File file = pkg.new File(inFile.name);
+            file.setSource(inFile.jf, inFile.je);
+            if (file.isDirectory() && file.getFileLength() != 0)
+                throw new IllegalArgumentException("Non-empty directory: "+file.getFileName());
+            return file;
         }
 
         // Read raw data.
@@ -515,10 +816,54 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
             return file;
         }
 
+        // (5078608) : discount the resource files completely from segmenting
+        long segmentLength(InFile inFile) {
+            return inFile.isMetaInfFile() ? 0L : inFile.getInputLength();
+        }
+
+        /** Tell whether a new segment starts before the named file,
+         *  and if not, count its input length in the current one.
+         */
+        boolean startsSegment(String name, long inflen) {
+            boolean cut = cutsSegment(segmentSize, name, inflen);
+            if (!cut)
+                segmentSize += inflen;
+            return cut;
+        }
+
+        // Whether a file must go to a new segment, after segmentSize bytes
+        // in this one.  Nothing else goes into it, so the class parser can
+        // tell where the cuts will come.
+        boolean cutsSegment(long segmentSize, String name, long inflen) {
+            long size = segmentSize + inflen;
+            if (!contentBoundaries || segmentLimit == Long.MAX_VALUE)
+                return (size > segmentLimit);
+            // Cut before an anchor once the segment is half full,
+            // or before any file once it would be twice the limit.
+            return (segmentSize > 0)
+                && (size > 2 * segmentLimit
+                    || (segmentSize >= segmentLimit / 2
+                        && isAnchor(name, inflen)));
+        }
+
+        // A file is an anchor with a chance proportional to its length,
+        // decided by a hash of its name, so that segments end about
+        // half a limit past their halfway mark.
+        private boolean isAnchor(String name, long inflen) {
+            long h = name.hashCode();
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return Long.remainderUnsigned(h, Math.max(1, segmentLimit / 2)) < inflen;
+        }
+
         void flushPartial(OutputStream out, int nextCount) throws IOException {
             if (pkg.files.isEmpty() && pkg.classes.isEmpty()) {
                 return;  // do not flush an empty segment
             }
+            checkCancelled();
             flushPackage(out, Math.max(1, nextCount));
             props.setInteger(Pack200.Packer.PROGRESS, 25);
             // In case there will be another segment:
@@ -531,7 +876,13 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
         void flushAll(OutputStream out) throws IOException {
             props.setInteger(Pack200.Packer.PROGRESS, 50);
             flushPackage(out, 0);
+            if (segmentWriter != null)
+                segmentWriter.drain(out, 0);
             out.flush();
+            if (index != null)
+                index.write(new File(indexFile));
+            if (decisions != null && !decisionsFile.isEmpty())
+                decisions.save(new File(decisionsFile));
             props.setInteger(Pack200.Packer.PROGRESS, 100);
             segmentCount += 1;
             segmentTotalSize += segmentSize;
@@ -550,6 +901,10 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
          */
         void flushPackage(OutputStream out, int nextCount) throws IOException {
             int nfiles = pkg.files.size();
+            String key = (cacheSegments || base != null || index != null)
+                       ? digest.segmentKey(pkg) : null;
+            String cacheKey = (key == null || !cacheSegments)
+                            ? null : digest.segmentKey(key, nextCount);
             if (!keepFileOrder) {
                 // Keeping the order of classes costs about 1%
                 // Keeping the order of all files costs something more.
@@ -574,14 +929,67 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
             if (props.getBoolean(Utils.COM_PREFIX+"strip.exceptions"))   pkg.stripAttributeKind("Exceptions");
             if (props.getBoolean(Utils.COM_PREFIX+"strip.innerclasses")) pkg.stripAttributeKind("InnerClasses");
 
-            PackageWriter pw = new PackageWriter(pkg, out);
-            pw.archiveNextCount = nextCount;
-            pw.write();
+            if (segmentThreads > 1 && (nextCount != 0 || segmentWriter != null)) {
+                // More than one segment; write them concurrently.
+                if (segmentWriter == null)
+                    segmentWriter = new SegmentWriter();
+                segmentWriter.submit(out, pkg, nextCount, nfiles, segmentSize,
+                                     key, cacheKey);
+                return;
+            }
+
+            long outSize = copySegment(key, cacheKey, out);
+            if (outSize >= 0) {
+                if (nextCount != 0) {
+                    // Settle the state the next segment inherits.
+                    PackageWriter pw = new PackageWriter(pkg, out);
+                    pw.archiveNextCount = nextCount;
+                    pw.setup();
+                }
+            } else {
+                PackCache.Entry entry = (cacheKey == null) ? null : cache.begin(cacheKey);
+                try {
+                    PackageWriter pw = new PackageWriter(pkg,
+                            (entry == null) ? out : entry.tee(out));
+                    pw.archiveNextCount = nextCount;
+                    if (decisions != null)
+                        pw.codingDecisions = decisions.copy();
+                    pw.write();
+                    if (decisions != null)
+                        decisions.addAll(pw.codingDecisions);
+                    if (entry != null)
+                        entry.commit();
+                    outSize = pw.archiveSize0+pw.archiveSize1;
+                } finally {
+                    if (entry != null)
+                        entry.abort();
+                }
+            }
             out.flush();
+            pkg.releaseFiles();
+            noteWritten(outSize, nfiles, segmentSize, key);
+        }
+
+        /** Copy the segment from the base pack file or from the cache,
+         *  if either has it, and return its size, else return -1.
+         */
+        long copySegment(String key, String cacheKey, OutputStream out) throws IOException {
+            long size = -1;
+            if (base != null && key != null) {
+                size = base.copyTo(key, out);
+                if (size >= 0 && verbose > 1)
+                    Utils.log.fine("Copied an unchanged segment of "+size+" bytes");
+            }
+            if (size < 0 && cacheKey != null)
+                size = cache.copyTo(cacheKey, out);
+            return size;
+        }
+
+        void noteWritten(long outSize, int nfiles, long inSize, String key) {
+            if (index != null)
+                index.add(key, outSize);
             if (verbose > 0) {
-                long outSize = pw.archiveSize0+pw.archiveSize1;
                 totalOutputSize += outSize;
-                long inSize = segmentSize;
                 Utils.log.info("Transmitted "
                                  +nfiles+" files of "
                                  +inSize+" input bytes in a segment of "
@@ -589,6 +997,144 @@ public class PackerImpl  extends TLGlobals implements Pack200.Packer {
             }
         }
 
+        SegmentWriter segmentWriter;  // non-null once segments go concurrent
+
+        /** Writes segments on a pool of worker threads.  Each segment is
+         *  packed into a private buffer, and the buffers are copied to the
+         *  output in segment order.  No more than segmentThreads segments
+         *  are in flight at once, which bounds the heap they occupy.
+         */
+        final class SegmentWriter {
+            final ExecutorService pool;
+            final ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+
+            final class Segment {
+                final ByteArrayOutputStream buf;
+                final int nfiles;
+                final long inSize;
+                final String key;
+                final CodingDecisions decisions;
+                final Package pkg;
+                // Taken by whoever releases pkg:  the task, or close().
+                final AtomicBoolean claimed = new AtomicBoolean();
+                Future<Segment> task;
+                Segment(ByteArrayOutputStream buf, int nfiles, long inSize,
+                        String key, CodingDecisions decisions, Package pkg) {
+                    this.buf = buf;
+                    this.key = key;
+                    this.decisions = decisions;
+                    this.nfiles = nfiles;
+                    this.inSize = inSize;
+                    this.pkg = pkg;
+                }
+            }
+
+            SegmentWriter() {
+                this.pool = Executors.newFixedThreadPool(segmentThreads, r -> {
+                    Thread t = new Thread(r, "pack200-segment-writer");
+                    t.setDaemon(true);
+                    return t;
+                });
+                if (verbose > 0)
+                    Utils.log.info("Writing segments on "+segmentThreads+" threads");
+            }
+
+            void submit(OutputStream out, Package segPkg, int nextCount,
+                        int nfiles, long inSize,
+                        String key, String cacheKey) throws IOException {
+                drain(out, segmentThreads - 1);
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                PackageWriter pw = new PackageWriter(segPkg, buf);
+                pw.archiveNextCount = nextCount;
+                // It sees the decisions of segments written so far.
+                if (decisions != null)
+                    pw.codingDecisions = decisions.copy();
+                // Settle the state the next segment inherits before
+                // the main loop moves on to fill it.
+                pw.setup();
+                Segment seg = new Segment(buf, nfiles, inSize, key,
+                                          pw.codingDecisions, segPkg);
+                if (copySegment(key, cacheKey, buf) >= 0) {
+                    seg.claimed.set(true);
+                    segPkg.releaseFiles();
+                    seg.task = CompletableFuture.completedFuture(seg);
+                    inFlight.add(seg);
+                    return;
+                }
+                seg.task = pool.submit(() -> {
+                    if (!seg.claimed.compareAndSet(false, true))
+                        return seg;  // closed before it started
+                    assert(Utils.currentInstance.get() == null);
+                    Utils.currentInstance.set(PackerImpl.this);
+                    try {
+                        pw.write();
+                        if (cacheKey != null)
+                            cache.put(cacheKey, buf);
+                        return seg;
+                    } finally {
+                        segPkg.releaseFiles();
+                        Utils.currentInstance.set(null);
+                    }
+                });
+                inFlight.add(seg);
+            }
+
+            /** Copy finished segments to the output, in order, until
+             *  no more than the given number remain in flight.
+             */
+            void drain(OutputStream out, int leave) throws IOException {
+                while (inFlight.size() > leave) {
+                    Segment seg = await(inFlight.peek().task);
+                    inFlight.remove();
+                    seg.buf.writeTo(out);
+                    out.flush();
+                    if (seg.decisions != null)
+                        decisions.addAll(seg.decisions);
+                    noteWritten(seg.buf.size(), seg.nfiles, seg.inSize, seg.key);
+                }
+            }
+
+            private Segment await(Future<Segment> f) throws IOException {
+                try {
+                    return f.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(ie.getMessage());
+                } catch (ExecutionException ee) {
+                    throw rethrow(ee);
+                }
+            }
+
+            /** Whether the given package is queued or being written. */
+            boolean holds(Package segPkg) {
+                for (Segment seg : inFlight) {
+                    if (seg.pkg == segPkg)  return true;
+                }
+                return false;
+            }
+
+            /** Stop writing, and release the files of every segment
+             *  that will now never be written.  A segment being
+             *  written releases its own.
+             */
+            void close() {
+                pool.shutdownNow();
+                for (Segment seg : inFlight) {
+                    if (seg.claimed.compareAndSet(false, true))
+                        seg.pkg.releaseFiles();
+                }
+                inFlight.clear();
+            }
+        }
+
+        IOException rethrow(ExecutionException ee) throws IOException {
+            Throwable t = ee.getCause();
+            if (t instanceof IOException)       throw (IOException) t;
+            if (t instanceof RuntimeException)  throw (RuntimeException) t;
+            if (t instanceof Error)             throw (Error) t;
+            return new IOException(t);
+        }
+
         List<InFile> scanJar(JarFile jf) throws IOException {
             // Collect jar entries, preserving order.
             List<InFile> inFiles = new ArrayList<>();
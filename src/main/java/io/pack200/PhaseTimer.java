@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Times one phase of a run on the current thread, and adds it to the
+ * metrics of the current engine when stopped.  Does nothing if the
+ * thread has no current engine, as when a test drives a writer directly.
+ * <p>
+ * A phase that hands work to other threads is timed once, on the thread
+ * that waits for them; each worker measures only what it allocates, with
+ * a timer from {@link #startWorker}, so the phase's allocation covers
+ * all of its threads while its time stays wall time.
+ */
+final class PhaseTimer {
+    private final Pack200.Metrics metrics;
+    private final String name;
+    private final boolean worker;
+    private final long start;
+    private final long allocStart;
+
+    private PhaseTimer(Pack200.Metrics metrics, String name, boolean worker) {
+        this.metrics = metrics;
+        this.name = name;
+        this.worker = worker;
+        this.allocStart = (metrics == null) ? 0 : allocatedBytes();
+        this.start = (metrics == null || worker) ? 0 : System.nanoTime();
+    }
+
+    static PhaseTimer start(String name) {
+        return new PhaseTimer(current(), name, false);
+    }
+
+    /** Measure the allocation of work done on a worker thread for a
+     *  phase that another thread times. */
+    static PhaseTimer startWorker(String name) {
+        return new PhaseTimer(current(), name, true);
+    }
+
+    void stop() {
+        if (metrics == null)  return;
+        long nanos = worker ? 0 : System.nanoTime() - start;
+        long alloc = allocatedBytes();
+        metrics.addPhase(name, worker ? 0 : 1, nanos,
+                         (alloc < 0) ? -1 : alloc - allocStart);
+    }
+
+    /** The metrics of the current engine's run, or null. */
+    static Pack200.Metrics current() {
+        TLGlobals tlg = Utils.currentInstance.get();
+        return (tlg == null) ? null : tlg.metrics;
+    }
+
+    /** Commit the metrics of a finished run as JFR events, if the JVM
+     *  has JFR.  (Java 8 before 8u262 does not.)
+     */
+    static void commitEvents(String operation, Pack200.Metrics metrics) {
+        if (jfr)
+            MetricsEvents.commit(operation, metrics);
+    }
+
+    private static final boolean jfr;
+    static {
+        boolean found;
+        try {
+            Class.forName("jdk.jfr.Event");
+            found = true;
+        } catch (ClassNotFoundException | LinkageError ee) {
+            found = false;
+        }
+        jfr = found;
+    }
+
+    private static final com.sun.management.ThreadMXBean threads;
+    static {
+        com.sun.management.ThreadMXBean mx = null;
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                mx = (com.sun.management.ThreadMXBean) bean;
+                if (!mx.isThreadAllocatedMemorySupported() ||
+                    !mx.isThreadAllocatedMemoryEnabled())
+                    mx = null;
+            }
+        } catch (LinkageError | RuntimeException ee) {
+            // No management support; allocation is not measured.
+        }
+        threads = mx;
+    }
+
+    // Bytes allocated so far by the current thread, or -1.
+    private static long allocatedBytes() {
+        if (threads == null)  return -1;
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -41,6 +41,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.function.IntConsumer;
 
 /**
  * Control block for publishing Pack200 options to the other classes.
@@ -49,9 +50,18 @@ import java.util.TreeMap;
 final class PropMap implements SortedMap<String, String>  {
     private final TreeMap<String, String> theMap = new TreeMap<>();;
 
+    // If not null, told of each change to the progress property.
+    IntConsumer progressListener;
+
     // Override:
     public String put(String key, String value) {
         String oldValue = theMap.put(key, value);
+        IntConsumer listener = progressListener;
+        if (listener != null
+            && (Pack200.Packer.PROGRESS.equals(key) ||
+                Pack200.Unpacker.PROGRESS.equals(key))) {
+            listener.accept(toInteger(value));
+        }
         return oldValue;
     }
 
@@ -210,6 +220,10 @@ final class PropMap implements SortedMap<String, String>  {
     long getLong(String s) {
         return toLong(getProperty(s));
     }
+    long getLong(String s, long def) {
+        String val = getProperty(s);
+        return (val == null) ? def : toLong(val);
+    }
     long setLong(String s, long val) {
         return toLong(setProperty(s, String.valueOf(val)));
     }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The segments of a pack file, each with the {@link PackDigest} key of
+ * the input it was packed from.  The packer writes the index of a pack
+ * file in incremental mode, and reads it back on a later run to copy
+ * the segments whose input has not changed.
+ * <p>
+ * The index is a text file, one segment to a line, giving its key,
+ * its offset in the (uncompressed) pack stream, and its length.
+ */
+final class SegmentIndex {
+    private static final String HEADER = "# pack200 segment index 1";
+
+    private final List<String> keys = new ArrayList<>();
+    private final List<long[]> spans = new ArrayList<>();  // {offset, length}
+    private long size;
+
+    /** Add the next segment of the pack file. */
+    void add(String key, long length) {
+        if (key != null) {
+            keys.add(key);
+            spans.add(new long[] { size, length });
+        }
+        size += length;
+    }
+
+    void write(File file) throws IOException {
+        File tmp = new File(file.getPath()+".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(
+                tmp.toPath(), StandardCharsets.UTF_8))) {
+            out.println(HEADER);
+            for (int i = 0; i < keys.size(); i++) {
+                long[] span = spans.get(i);
+                out.println(keys.get(i)+" "+span[0]+" "+span[1]);
+            }
+            if (out.checkError())
+                throw new IOException("Cannot write "+tmp);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static SegmentIndex read(File file) throws IOException {
+        SegmentIndex index = new SegmentIndex();
+        try (BufferedReader in = Files.newBufferedReader(
+                file.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(in.readLine()))
+                throw new IOException("Not a segment index: "+file);
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] f = line.split(" ");
+                if (f.length != 3)
+                    throw new IOException("Bad segment index line: "+line);
+                try {
+                    index.keys.add(f[0]);
+                    index.spans.add(new long[] { Long.parseLong(f[1]),
+                                                 Long.parseLong(f[2]) });
+                } catch (NumberFormatException ee) {
+                    throw new IOException("Bad segment index line: "+line, ee);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * A pack file and its index, from which the packer copies
+     * segments.  The pack file may be compressed with gzip.  It is
+     * read forward, and reopened only if a segment is wanted from
+     * behind the current position, which is rare since segments are
+     * usually wanted in the order they were written.
+     */
+    static final class Base {
+        private final File pack;
+        private Map<String, long[]> spans;  // read on first use
+        private InputStream in;
+        private long pos;
+
+        Base(File pack) {
+            this.pack = pack;
+        }
+
+        private void load() throws IOException {
+            spans = new HashMap<>();
+            File file = new File(pack.getPath()+".idx");
+            if (!file.exists()) {
+                Utils.log.warning("No segment index for "+pack+"; packing all segments");
+                return;
+            }
+            SegmentIndex index = read(file);
+            for (int i = 0; i < index.keys.size(); i++) {
+                spans.putIfAbsent(index.keys.get(i), index.spans.get(i));
+            }
+        }
+
+        /** If the base has a segment with the key, copy it to out and
+         *  return its length, else return -1.
+         */
+        long copyTo(String key, OutputStream out) throws IOException {
+            if (spans == null)  load();
+            long[] span = spans.get(key);
+            if (span == null)  return -1;
+            seek(span[0]);
+            byte[] buf = new byte[1<<14];
+            // Make sure it is a segment before writing any of it.
+            readFully(buf, 4);
+            if (!Utils.isPackMagic(buf)) {
+                Utils.log.warning("Segment index does not match "+pack+"; packing all segments");
+                spans.clear();
+                return -1;
+            }
+            out.write(buf, 0, 4);
+            for (long left = span[1] - 4; left > 0; ) {
+                int n = (int) Math.min(buf.length, left);
+                readFully(buf, n);
+                out.write(buf, 0, n);
+                left -= n;
+            }
+            return span[1];
+        }
+
+        private void seek(long offset) throws IOException {
+            if (in == null || offset < pos) {
+                close();
+                BufferedInputStream bin = new BufferedInputStream(new FileInputStream(pack));
+                in = bin;
+                if (Utils.isGZIPMagic(Utils.readMagic(bin)))
+                    in = new GZIPInputStream(bin);
+                pos = 0;
+            }
+            while (pos < offset) {
+                long n = in.skip(offset - pos);
+                if (n <= 0) {
+                    if (in.read() < 0)
+                        throw new EOFException("Truncated base pack file "+pack);
+                    n = 1;
+                }
+                pos += n;
+            }
+        }
+
+        private void readFully(byte[] buf, int len) throws IOException {
+            for (int off = 0; off < len; ) {
+                int n = in.read(buf, off, len - off);
+                if (n < 0)
+                    throw new EOFException("Truncated base pack file "+pack);
+                off += n;
+            }
+            pos += len;
+        }
+
+        void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ee) {
+                    // It was only read.
+                }
+                in = null;
+            }
+        }
+    }
+}
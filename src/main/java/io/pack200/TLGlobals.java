@@ -34,9 +34,11 @@ import io.pack200.ConstantPool.InvokeDynamicEntry;
 import io.pack200.ConstantPool.BootstrapMethodEntry;
 import io.pack200.ConstantPool.SignatureEntry;
 import io.pack200.ConstantPool.Utf8Entry;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /*
  * @author ksrini
@@ -58,27 +60,90 @@ class TLGlobals {
     private final Map<String, ClassEntry> classEntries;
     private final Map<Object, LiteralEntry> literalEntries;
     private final Map<String, SignatureEntry> signatureEntries;
-    private final Map<String, DescriptorEntry> descriptorEntries;
-    private final Map<String, MemberEntry> memberEntries;
-    private final Map<String, MethodHandleEntry> methodHandleEntries;
+    private final Map<ConstantPool.Key, DescriptorEntry> descriptorEntries;
+    private final Map<ConstantPool.Key, MemberEntry> memberEntries;
+    private final Map<ConstantPool.Key, MethodHandleEntry> methodHandleEntries;
     private final Map<String, MethodTypeEntry> methodTypeEntries;
-    private final Map<String, InvokeDynamicEntry> invokeDynamicEntries;
+    private final Map<ConstantPool.Key, InvokeDynamicEntry> invokeDynamicEntries;
     private final Map<String, BootstrapMethodEntry> bootstrapMethodEntries;
 
+    // Needed by CompiledLayout.java
+    private final ConcurrentMap<String, CompiledLayout> compiledLayouts;
+
     TLGlobals() {
-        utf8Entries = new HashMap<>();
-        classEntries = new HashMap<>();
-        literalEntries = new HashMap<>();
-        signatureEntries = new HashMap<>();
-        descriptorEntries = new HashMap<>();
-        memberEntries = new HashMap<>();
-        methodHandleEntries = new HashMap<>();
-        methodTypeEntries = new HashMap<>();
-        invokeDynamicEntries = new HashMap<>();
-        bootstrapMethodEntries = new HashMap<>();
+        utf8Entries = new ConcurrentHashMap<>();
+        classEntries = new ConcurrentHashMap<>();
+        literalEntries = new ConcurrentHashMap<>();
+        signatureEntries = new ConcurrentHashMap<>();
+        descriptorEntries = new ConcurrentHashMap<>();
+        memberEntries = new ConcurrentHashMap<>();
+        methodHandleEntries = new ConcurrentHashMap<>();
+        methodTypeEntries = new ConcurrentHashMap<>();
+        invokeDynamicEntries = new ConcurrentHashMap<>();
+        bootstrapMethodEntries = new ConcurrentHashMap<>();
+        compiledLayouts = new ConcurrentHashMap<>();
         props = new PropMap();
     }
 
+    // The asynchronous run in progress, if any.
+    AsyncRun async;
+
+    // Run body for an asynchronous run, which may then cancel it
+    // between segments, and which is told of progress.
+    synchronized void runAsync(AsyncRun run, AsyncRun.Body body) throws IOException {
+        async = run;
+        props.progressListener = run.progress;
+        try {
+            body.run(run);
+        } finally {
+            async = null;
+            props.progressListener = null;
+        }
+    }
+
+    // Between segments: stop if the asynchronous run was cancelled.
+    void checkCancelled() {
+        AsyncRun run = async;
+        if (run != null)
+            run.checkCancelled();
+    }
+
+    // Metrics of the run in progress, and of the last one to finish.
+    Pack200.Metrics metrics;
+    private volatile Pack200.Metrics lastMetrics;
+
+    void startMetrics() {
+        metrics = new Pack200.Metrics();
+    }
+
+    void finishMetrics() {
+        if (metrics != null)
+            PhaseTimer.commitEvents((this instanceof PackerImpl) ? "pack" : "unpack",
+                                    metrics);
+        lastMetrics = metrics;
+        metrics = null;
+    }
+
+    public Pack200.Metrics metrics() {
+        return lastMetrics;
+    }
+
+    // Forget the entries of the last run.  The maps keep their
+    // capacity, so an engine that is reused does not regrow them.
+    void resetEntries() {
+        utf8Entries.clear();
+        classEntries.clear();
+        literalEntries.clear();
+        signatureEntries.clear();
+        descriptorEntries.clear();
+        memberEntries.clear();
+        methodHandleEntries.clear();
+        methodTypeEntries.clear();
+        invokeDynamicEntries.clear();
+        bootstrapMethodEntries.clear();
+        compiledLayouts.clear();
+    }
+
     SortedMap<String, String> getPropMap() {
         return props;
     }
@@ -95,7 +160,7 @@ class TLGlobals {
         return literalEntries;
     }
 
-    Map<String, DescriptorEntry> getDescriptorEntries() {
+    Map<ConstantPool.Key, DescriptorEntry> getDescriptorEntries() {
          return descriptorEntries;
     }
 
@@ -103,11 +168,11 @@ class TLGlobals {
         return signatureEntries;
     }
 
-    Map<String, MemberEntry> getMemberEntries() {
+    Map<ConstantPool.Key, MemberEntry> getMemberEntries() {
         return memberEntries;
     }
 
-    Map<String, MethodHandleEntry> getMethodHandleEntries() {
+    Map<ConstantPool.Key, MethodHandleEntry> getMethodHandleEntries() {
         return methodHandleEntries;
     }
 
@@ -115,11 +180,15 @@ class TLGlobals {
         return methodTypeEntries;
     }
 
-    Map<String, InvokeDynamicEntry> getInvokeDynamicEntries() {
+    Map<ConstantPool.Key, InvokeDynamicEntry> getInvokeDynamicEntries() {
         return invokeDynamicEntries;
     }
 
     Map<String, BootstrapMethodEntry> getBootstrapMethodEntries() {
         return bootstrapMethodEntries;
     }
+
+    ConcurrentMap<String, CompiledLayout> getCompiledLayouts() {
+        return compiledLayouts;
+    }
 }
@@ -26,17 +26,33 @@
 package io.pack200;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
@@ -98,6 +114,7 @@ public class UnpackerImpl extends TLGlobals implements Pack200.Unpacker {
 
         try {
             Utils.currentInstance.set(this);
+            startMetrics();
             final int verbose = props.getInteger(Utils.DEBUG_VERBOSE);
             BufferedInputStream in0 = new BufferedInputStream(in);
             if (Utils.isJarMagic(Utils.readMagic(in0))) {
@@ -121,6 +138,8 @@ public class UnpackerImpl extends TLGlobals implements Pack200.Unpacker {
         } finally {
             _nunp = null;
             Utils.currentInstance.set(null);
+            finishMetrics();
+            resetEntries();
         }
     }
 
@@ -139,16 +158,160 @@ public class UnpackerImpl extends TLGlobals implements Pack200.Unpacker {
         if (out == null) {
             throw new NullPointerException("null output");
         }
-        // Use the stream-based implementation.
-        // %%% Reconsider if native unpacker learns to memory-map the file.
-        try (FileInputStream instr = new FileInputStream(in)) {
-            unpack(instr, out);
+        // The Java unpacker reads straight out of a mapping of the file,
+        // unless the file is to be removed: a mapping lasts until it is
+        // collected, and some platforms cannot delete a mapped file.
+        boolean remove = props.getBoolean(Utils.UNPACK_REMOVE_PACKFILE);
+        boolean done = false;
+        if (!remove &&
+            (props.getBoolean(Utils.DEBUG_DISABLE_NATIVE) || !nativeAvailable())) {
+            try (FileChannel fc = FileChannel.open(in.toPath(), StandardOpenOption.READ)) {
+                long size = fc.size();
+                if (size >= 4 && size <= Integer.MAX_VALUE) {
+                    ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    if (Utils.isPackMagic(peekMagic(buf))) {
+                        unpackMapped(buf, out);
+                        done = true;
+                    }
+                }
+            }
+        }
+        if (!done) {
+            // Use the stream-based implementation.
+            try (FileInputStream instr = new FileInputStream(in)) {
+                unpack(instr, out);
+            }
+        }
+        if (remove && !in.delete()) {
+            Utils.log.warning("Cannot remove pack file "+in);
+        }
+    }
+
+    /**
+     * Takes the bytes from the position to the limit of a buffer, and
+     * writes to a JarOutputStream.  A packed archive is read in place.
+     * <p>
+     * Advances the buffer's position to its limit.
+     * Does not close its output.  (The output can accumulate more elements.)
+     * @param in a ByteBuffer.
+     * @param out a JarOutputStream.
+     * @exception IOException if an error is encountered.
+     */
+    public synchronized void unpack(ByteBuffer in, JarOutputStream out) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("null input");
+        }
+        if (out == null) {
+            throw new NullPointerException("null output");
+        }
+        ByteBuffer buf = in.duplicate();
+        if (Utils.isPackMagic(peekMagic(buf))) {
+            unpackMapped(buf, out);
+        } else {
+            unpack(Utils.newInputStream(buf), out);
+        }
+        ((Buffer) in).position(in.limit());
+    }
+
+    /**
+     * Takes a packed-stream channel, and writes a JAR file.
+     * A file channel is mapped from its position, and read in place.
+     * Any other channel is read straight into the unpacker's buffer.
+     * <p>
+     * Closes its input, and the JAR file.
+     * @param in a ReadableByteChannel.
+     * @param out the JAR file to write.
+     * @exception IOException if an error is encountered.
+     * @exception java.nio.channels.IllegalBlockingModeException if the
+     *            channel is selectable and in non-blocking mode.
+     */
+    public void unpack(ReadableByteChannel in, Path out) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("null input");
+        }
+        if (out == null) {
+            throw new NullPointerException("null output");
         }
-        if (props.getBoolean(Utils.UNPACK_REMOVE_PACKFILE)) {
-            in.delete();
+        Utils.checkBlocking(in);
+        try (ReadableByteChannel ch = in;
+             JarOutputStream jout = new JarOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(out)))) {
+            unpack(ch, jout);
         }
     }
 
+    private synchronized void unpack(ReadableByteChannel in, JarOutputStream out) throws IOException {
+        if (!props.getBoolean(Utils.DEBUG_DISABLE_NATIVE) && nativeAvailable()) {
+            unpack(Channels.newInputStream(in), out);
+            return;
+        }
+        if (in instanceof FileChannel) {
+            FileChannel fc = (FileChannel) in;
+            long pos = fc.position();
+            long size = fc.size() - pos;
+            if (size >= 4 && size <= Integer.MAX_VALUE) {
+                unpack(fc.map(FileChannel.MapMode.READ_ONLY, pos, size), out);
+                fc.position(pos + size);
+                return;
+            }
+        }
+        assert(Utils.currentInstance.get() == null);
+        try {
+            Utils.currentInstance.set(this);
+            startMetrics();
+            PackageReader.LimitedBuffer buf = new PackageReader.LimitedBuffer(in);
+            buf.setReadLimit(PackageReader.MAGIC_BYTES);
+            if (Utils.isJarMagic(Utils.readMagic(buf))) {
+                if (props.getInteger(Utils.DEBUG_VERBOSE) > 0)
+                    Utils.log.info("Copying unpacked JAR file...");
+                buf.setReadLimit(-1);
+                Utils.copyJarFile(new JarInputStream(buf), out);
+            } else {
+                (new DoUnpack()).run(buf, out);
+                Utils.markJarFile(out);
+            }
+        } finally {
+            Utils.currentInstance.set(null);
+            finishMetrics();
+            resetEntries();
+        }
+    }
+
+    private synchronized void unpackMapped(ByteBuffer in, JarOutputStream out) throws IOException {
+        assert(Utils.currentInstance.get() == null);
+        try {
+            Utils.currentInstance.set(this);
+            startMetrics();
+            (new DoUnpack()).run(in, out);
+            Utils.markJarFile(out);
+        } finally {
+            Utils.currentInstance.set(null);
+            finishMetrics();
+            resetEntries();
+        }
+    }
+
+    private static byte[] peekMagic(ByteBuffer in) {
+        byte[] magic = new byte[4];
+        if (in.remaining() >= magic.length)
+            in.duplicate().get(magic);
+        return magic;
+    }
+
+    private static Boolean nativeAvailable;
+    // Can the native unpacker be loaded?  Only the first try is costly.
+    private static synchronized boolean nativeAvailable() {
+        if (nativeAvailable == null) {
+            try {
+                Class.forName(NativeUnpack.class.getName());
+                nativeAvailable = true;
+            } catch (ClassNotFoundException | LinkageError ex) {
+                nativeAvailable = false;
+            }
+        }
+        return nativeAvailable;
+    }
+
     private class DoUnpack {
         final int verbose = props.getInteger(Utils.DEBUG_VERBOSE);
 
@@ -178,84 +341,259 @@ public class UnpackerImpl extends TLGlobals implements Pack200.Unpacker {
                 props.getBoolean(Pack200.Unpacker.DEFLATE_HINT);
         }
 
-        // Checksum apparatus.
-        final CRC32 crc = new CRC32();
+        // Output buffers.
         final ByteArrayOutputStream bufOut = new ByteArrayOutputStream();
-        final OutputStream crcOut = new CheckedOutputStream(bufOut, crc);
+        final byte[] copyBuf = new byte[1<<14];
+
+        // Threads building jar entries, if more than one.
+        final int nthreads = props.getInteger(Utils.UNPACK_THREADS, 1);
+
+        // Write files out while reading them, rather than per segment.
+        final boolean streaming = props.getBoolean(Utils.UNPACK_STREAMING);
 
         public void run(BufferedInputStream in, JarOutputStream out) throws IOException {
             if (verbose > 0) {
                 props.list(System.out);
             }
-            for (int seg = 1; ; seg++) {
-                unpackSegment(in, out);
+            try {
+                for (int seg = 1; ; seg++) {
+                    checkCancelled();
+                    unpackSegment(new PackageReader(pkg, in), out);
 
-                // Try to get another segment.
-                if (!Utils.isPackMagic(Utils.readMagic(in)))  break;
-                if (verbose > 0)
-                    Utils.log.info("Finished segment #"+seg);
+                    // Try to get another segment.
+                    if (!Utils.isPackMagic(Utils.readMagic(in)))  break;
+                    if (verbose > 0)
+                        Utils.log.info("Finished segment #"+seg);
+                }
+            } finally {
+                pkg.releaseFiles();  // even if a segment failed
+            }
+        }
+
+        // Segments read from a channel share one buffer over it.
+        public void run(PackageReader.LimitedBuffer in, JarOutputStream out) throws IOException {
+            if (verbose > 0) {
+                props.list(System.out);
+            }
+            try {
+                for (int seg = 1; ; seg++) {
+                    checkCancelled();
+                    unpackSegment(new PackageReader(pkg, in), out);
+
+                    // Try to get another segment, without reading past it.
+                    in.setReadLimit(PackageReader.MAGIC_BYTES);
+                    if (!Utils.isPackMagic(Utils.readMagic(in)))  break;
+                    if (verbose > 0)
+                        Utils.log.info("Finished segment #"+seg);
+                }
+            } finally {
+                pkg.releaseFiles();  // even if a segment failed
             }
         }
 
-        private void unpackSegment(InputStream in, JarOutputStream out) throws IOException {
+        public void run(ByteBuffer in, JarOutputStream out) throws IOException {
+            if (verbose > 0) {
+                props.list(System.out);
+            }
+            try {
+                for (int seg = 1; ; seg++) {
+                    checkCancelled();
+                    unpackSegment(new PackageReader(pkg, in), out);
+
+                    // Try to get another segment.
+                    if (!Utils.isPackMagic(peekMagic(in)))  break;
+                    if (verbose > 0)
+                        Utils.log.info("Finished segment #"+seg);
+                }
+            } finally {
+                pkg.releaseFiles();  // even if a segment failed
+            }
+        }
+
+        private void unpackSegment(PackageReader reader, JarOutputStream out) throws IOException {
             props.setProperty(Pack200.Unpacker.PROGRESS,"0");
+            boolean stripDebug   = props.getBoolean("unpack.strip.debug");
+            boolean stripCompile = props.getBoolean("unpack.strip.compile");
+            if (streaming) {
+                // Write each file as soon as the reader has it.
+                reader.fileSink = (file, bits) -> {
+                    if (file.isClassStub()) {
+                        Package.Class cls = file.getStubClass();
+                        if (stripDebug)    pkg.stripAttributeKind(cls, "Debug");
+                        if (stripCompile)  pkg.stripAttributeKind(cls, "Compile");
+                    }
+                    writeFile(file, bits, out);
+                };
+                reader.read();
+                props.setProperty(Pack200.Unpacker.PROGRESS,"100");
+                pkg.reset();  // reset for the next segment, if any
+                return;
+            }
             // Process the output directory or jar output.
-            new PackageReader(pkg, in).read();
+            reader.read();
 
-            if (props.getBoolean("unpack.strip.debug"))    pkg.stripAttributeKind("Debug");
-            if (props.getBoolean("unpack.strip.compile"))  pkg.stripAttributeKind("Compile");
+            if (stripDebug)    pkg.stripAttributeKind("Debug");
+            if (stripCompile)  pkg.stripAttributeKind("Compile");
             props.setProperty(Pack200.Unpacker.PROGRESS,"50");
             pkg.ensureAllClassFiles();
             // Now write out the files.
+            PhaseTimer timer = PhaseTimer.start("writeJarEntries");
             Set<Package.Class> classesToWrite = new HashSet<>(pkg.getClasses());
             for (Package.File file : pkg.getFiles()) {
-                String name = file.nameString;
-                JarEntry je = new JarEntry(Utils.getJarEntryName(name));
-                boolean deflate;
-
-                deflate = (keepDeflateHint)
-                          ? (((file.options & Constants.FO_DEFLATE_HINT) != 0) ||
-                            ((pkg.default_options & Constants.AO_DEFLATE_HINT) != 0))
-                          : deflateHint;
-
-                boolean needCRC = !deflate;  // STORE mode requires CRC
-
-                if (needCRC)  crc.reset();
-                bufOut.reset();
-                if (file.isClassStub()) {
-                    Package.Class cls = file.getStubClass();
-                    assert(cls != null);
-                    new ClassWriter(cls, needCRC ? crcOut : bufOut).write();
-                    classesToWrite.remove(cls);  // for an error check
-                } else {
-                    // collect data & maybe CRC
-                    file.writeTo(needCRC ? crcOut : bufOut);
-                }
-                je.setMethod(deflate ? JarEntry.DEFLATED : JarEntry.STORED);
-                if (needCRC) {
-                    if (verbose > 0)
-                        Utils.log.info("stored size="+bufOut.size()+" and crc="+crc.getValue());
-
-                    je.setMethod(JarEntry.STORED);
-                    je.setSize(bufOut.size());
-                    je.setCrc(crc.getValue());
-                }
-                if (keepModtime) {
-                    je.setTime(file.modtime);
-                    // Convert back to milliseconds
-                    je.setTime((long)file.modtime * 1000);
-                } else {
-                    je.setTime((long)modtime * 1000);
-                }
-                out.putNextEntry(je);
-                bufOut.writeTo(out);
-                out.closeEntry();
-                if (verbose > 0)
-                    Utils.log.info("Writing "+Utils.zeString((ZipEntry)je));
+                if (file.isClassStub())
+                    classesToWrite.remove(file.getStubClass());  // for an error check
+                if (nthreads <= 1)
+                    writeFile(file, null, out);
             }
+            if (nthreads > 1)
+                writeFiles(pkg.getFiles(), out);
+            timer.stop();
             assert(classesToWrite.isEmpty());
             props.setProperty(Pack200.Unpacker.PROGRESS,"100");
             pkg.reset();  // reset for the next segment, if any
         }
+
+        // Write one file as a jar entry.  The bits of a resource come
+        // from the given stream if any, else from the file itself.
+        private void writeFile(Package.File file, InputStream bits,
+                               JarOutputStream out) throws IOException {
+            bufOut.reset();
+            JarEntry je = newEntry(file, bits, bufOut);
+            out.putNextEntry(je);
+            if (passThrough(file, bits, je))
+                copy(bits, out);
+            else
+                bufOut.writeTo(out);
+            out.closeEntry();
+            if (verbose > 0)
+                Utils.log.info("Writing "+Utils.zeString((ZipEntry)je));
+        }
+
+        // A deflated resource can go straight through to the jar.
+        private boolean passThrough(Package.File file, InputStream bits, JarEntry je) {
+            return bits != null && !file.isClassStub()
+                && je.getMethod() == JarEntry.DEFLATED;
+        }
+
+        // Make the jar entry for a file, and collect its bytes into
+        // bytesOut, unless they can pass through from bits.
+        // Does not touch the jar, so it can run on a worker thread.
+        private JarEntry newEntry(Package.File file, InputStream bits,
+                                  ByteArrayOutputStream bytesOut) throws IOException {
+            String name = file.nameString;
+            JarEntry je = new JarEntry(Utils.getJarEntryName(name));
+            boolean deflate;
+
+            deflate = (keepDeflateHint)
+                      ? (((file.options & Constants.FO_DEFLATE_HINT) != 0) ||
+                        ((pkg.default_options & Constants.AO_DEFLATE_HINT) != 0))
+                      : deflateHint;
+
+            boolean needCRC = !deflate;  // STORE mode requires CRC
+            CRC32 crc = needCRC ? new CRC32() : null;
+            OutputStream dataOut = needCRC
+                                   ? new CheckedOutputStream(bytesOut, crc)
+                                   : bytesOut;
+
+            je.setMethod(deflate ? JarEntry.DEFLATED : JarEntry.STORED);
+            if (file.isClassStub()) {
+                Package.Class cls = file.getStubClass();
+                assert(cls != null);
+                new ClassWriter(cls, dataOut).write();
+            } else if (bits != null) {
+                if (!passThrough(file, bits, je))
+                    copy(bits, dataOut);
+            } else {
+                // collect data & maybe CRC
+                file.writeTo(dataOut);
+            }
+            if (needCRC) {
+                if (verbose > 0)
+                    Utils.log.info("stored size="+bytesOut.size()+" and crc="+crc.getValue());
+
+                je.setMethod(JarEntry.STORED);
+                je.setSize(bytesOut.size());
+                je.setCrc(crc.getValue());
+            }
+            if (keepModtime) {
+                je.setTime(file.modtime);
+                // Convert back to milliseconds
+                je.setTime((long)file.modtime * 1000);
+            } else {
+                je.setTime((long)modtime * 1000);
+            }
+            return je;
+        }
+
+        // Build the entries on worker threads, and write them in order.
+        private void writeFiles(List<Package.File> files, JarOutputStream out) throws IOException {
+            ExecutorService pool = Executors.newFixedThreadPool(nthreads, r -> {
+                Thread t = new Thread(r, "pack200-entry-builder");
+                t.setDaemon(true);
+                return t;
+            });
+            if (verbose > 0)
+                Utils.log.info("Building jar entries on "+nthreads+" threads");
+            // Bound the number of built entries waiting to be written.
+            final int window = nthreads * 4;
+            ArrayDeque<Future<BuiltEntry>> pending = new ArrayDeque<>();
+            int nextToSubmit = 0;
+            try {
+                while (nextToSubmit < files.size() || !pending.isEmpty()) {
+                    while (pending.size() < window && nextToSubmit < files.size()) {
+                        Package.File file = files.get(nextToSubmit++);
+                        pending.add(pool.submit(() -> buildEntry(file)));
+                    }
+                    BuiltEntry e = pending.remove().get();
+                    out.putNextEntry(e.je);
+                    e.bytes.writeTo(out);
+                    out.closeEntry();
+                    if (verbose > 0)
+                        Utils.log.info("Writing "+Utils.zeString((ZipEntry)e.je));
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ie.getMessage());
+            } catch (ExecutionException ee) {
+                throw rethrow(ee);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        private BuiltEntry buildEntry(Package.File file) throws IOException {
+            assert(Utils.currentInstance.get() == null);
+            Utils.currentInstance.set(UnpackerImpl.this);
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                return new BuiltEntry(newEntry(file, null, bytes), bytes);
+            } finally {
+                Utils.currentInstance.set(null);
+            }
+        }
+
+        IOException rethrow(ExecutionException ee) throws IOException {
+            Throwable t = ee.getCause();
+            if (t instanceof IOException)       throw (IOException) t;
+            if (t instanceof RuntimeException)  throw (RuntimeException) t;
+            if (t instanceof Error)             throw (Error) t;
+            return new IOException(t);
+        }
+
+        private void copy(InputStream in, OutputStream out) throws IOException {
+            for (int nr; 0 < (nr = in.read(copyBuf)); ) {
+                out.write(copyBuf, 0, nr);
+            }
+        }
+    }
+
+    // A jar entry whose bytes are ready to be written.
+    private static final class BuiltEntry {
+        final JarEntry je;
+        final ByteArrayOutputStream bytes;
+        BuiltEntry(JarEntry je, ByteArrayOutputStream bytes) {
+            this.je = je;
+            this.bytes = bytes;
+        }
     }
 }
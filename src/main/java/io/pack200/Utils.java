@@ -32,6 +32,10 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
 import java.util.Collections;
 import java.util.Date;
 import java.util.jar.JarEntry;
@@ -90,6 +94,33 @@ class Utils {
      */
     static final String UNPACK_REMOVE_PACKFILE = COM_PREFIX+"unpack.remove.packfile";
 
+    /*
+     * If true, the unpacker writes each file to the jar as soon as its
+     * bytes have been read, instead of holding every file and class of
+     * a segment until the segment is complete.  Entries come out in the
+     * same order either way.  The default value is false.
+     * (installer only)
+     */
+    static final String UNPACK_STREAMING = COM_PREFIX+"unpack.streaming";
+
+    /*
+     * Number of worker threads the unpacker uses to build class files
+     * and checksum the jar entries of a segment.  A single thread still
+     * writes the entries to the jar, in their original order.  The
+     * default, 1, does all the work on the calling thread.  Ignored
+     * when streaming.
+     * (installer only)
+     */
+    static final String UNPACK_THREADS = COM_PREFIX+"unpack.threads";
+
+    /*
+     * Size in bytes past which the contents of a resource file are
+     * moved from the heap to a temporary file, while packing or
+     * unpacking.  The temporary files are deleted once each segment
+     * is written.  The default, -1, keeps all contents on the heap.
+     */
+    static final String SPILL_THRESHOLD = COM_PREFIX+"spill.threshold";
+
     /*
      * A possible value for MODIFICATION_TIME
      */
@@ -122,6 +153,89 @@ class Utils {
      */
     static final String CLASS_FORMAT_ERROR = COM_PREFIX+"class.format.error";
 
+    /*
+     * Number of worker threads the packer uses to parse class files
+     * and to choose band codings.  Classes are still added to the
+     * package in their original order, and band headers are written
+     * in band order, so the output does not depend on this setting.
+     * The default, 1, does all the work on the calling thread.
+     * (packer only)
+     */
+    static final String PACK_THREADS = COM_PREFIX+"pack.threads";
+
+    /*
+     * Number of segments the packer may write concurrently, when
+     * pack.segment.limit splits the input.  Each segment is packed into
+     * its own buffer, and the buffers are appended to the output in
+     * order, so this also caps the segments held in memory.  The
+     * default, 1, writes each segment before reading the next.
+     * (packer only)
+     */
+    static final String PACK_SEGMENT_THREADS = COM_PREFIX+"pack.segment.threads";
+
+    /*
+     * Directory of a cache of pack streams.  A JAR file packed again
+     * with the same options is copied from the cache, and so is each
+     * unchanged segment when pack.segment.limit splits the input.
+     * The default, empty, disables the cache.
+     * (packer only)
+     */
+    static final String PACK_CACHE_DIR = COM_PREFIX+"pack.cache.dir";
+
+    /*
+     * Total size in bytes of the entries in the pack cache, beyond
+     * which the least recently used ones are deleted.  The default
+     * is 256 megabytes.
+     * (packer only)
+     */
+    static final String PACK_CACHE_SIZE = COM_PREFIX+"pack.cache.size";
+
+    /*
+     * How the packer chooses segment boundaries when pack.segment.limit
+     * is set.  With "size", the default, a segment ends when the next
+     * file would overflow the limit.  With "content", a segment ends
+     * before a file chosen by a hash of its name, once the segment is
+     * half full, so that an edit to one file moves no boundary but its
+     * own.  Segments still average about pack.segment.limit bytes.
+     * (packer only)
+     */
+    static final String PACK_SEGMENT_BOUNDARY = COM_PREFIX+"pack.segment.boundary";
+
+    /*
+     * A pack file written before from a similar JAR file, along with
+     * its segment index in the same file name plus ".idx".  Segments
+     * whose input has not changed since are copied from it unchanged.
+     * Implies content-defined segment boundaries.
+     * (packer only)
+     */
+    static final String PACK_INCREMENTAL_BASE = COM_PREFIX+"pack.incremental.base";
+
+    /*
+     * File to which the packer writes the segment index of the pack
+     * file, for use as the base of a later incremental pack.  Implies
+     * content-defined segment boundaries.
+     * (packer only)
+     */
+    static final String PACK_INCREMENTAL_INDEX = COM_PREFIX+"pack.incremental.index";
+
+    /*
+     * If true, the packer remembers which coding won for each band, and
+     * in later segments tries that coding first, stopping there if it
+     * does about as well again.  This skips most trial encodings, for a
+     * slightly larger archive.  Segments written concurrently see only
+     * the decisions of segments already written.
+     * (packer only)
+     */
+    static final String CODING_DECISIONS = COM_PREFIX+"coding.decisions";
+
+    /*
+     * File from which the packer reads the coding decisions of earlier
+     * runs, and to which it writes them back when done.  Implies
+     * coding.decisions.
+     * (packer only)
+     */
+    static final String CODING_DECISIONS_FILE = COM_PREFIX+"coding.decisions.file";
+
     // Keep a TLS point to the global data and environment.
     // This makes it simpler to supply environmental options
     // to the engine code, especially the native code.
@@ -284,6 +398,34 @@ class Utils {
 
 
 
+    // A stream of the bytes from the buffer's position to its limit.
+    // Reading it advances the position.
+    static InputStream newInputStream(ByteBuffer b) {
+        return new InputStream() {
+            public int read() {
+                return b.hasRemaining() ? b.get() & 0xFF : -1;
+            }
+            public int read(byte[] buf, int off, int len) {
+                if (len == 0)  return 0;
+                if (!b.hasRemaining())  return -1;
+                len = Math.min(len, b.remaining());
+                b.get(buf, off, len);
+                return len;
+            }
+            public int available() {
+                return b.remaining();
+            }
+        };
+    }
+
+    // The channel adapters rely on each read or write making progress,
+    // as it does in blocking mode, so they refuse a non-blocking channel
+    // up front, as the streams of java.nio.channels.Channels do.
+    static void checkBlocking(Channel ch) {
+        if (ch instanceof SelectableChannel && !((SelectableChannel) ch).isBlocking())
+            throw new IllegalBlockingModeException();
+    }
+
     static byte[] readMagic(BufferedInputStream in) throws IOException {
         in.mark(4);
         byte[] magic = new byte[4];
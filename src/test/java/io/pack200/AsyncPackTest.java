@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary asynchronous pack and unpack must match the blocking calls,
+ *          report progress, and stop between segments when cancelled
+ */
+public class AsyncPackTest {
+    private ExecutorService executor;
+    private Path packFile;
+    private Path jarFile;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(2);
+        packFile = Paths.get("target/async.pack");
+        jarFile = Paths.get("target/async.jar");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        Files.deleteIfExists(packFile);
+        Files.deleteIfExists(jarFile);
+    }
+
+    @Test
+    public void testPackUnpack() throws Exception {
+        Path golden = TestUtils.getGoldenJar().toPath();
+        List<Integer> progress = new CopyOnWriteArrayList<>();
+        Pack200.PackResult packed = Pack200.newPacker()
+            .packAsync(golden, packFile, executor, progress::add).get();
+        assertEquals(Files.size(golden), packed.inputSize());
+        assertEquals(Files.size(packFile), packed.outputSize());
+        assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Pack200.newPacker().pack(new JarFile(TestUtils.getGoldenJar()), expected);
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(packFile));
+
+        progress.clear();
+        Pack200.Unpacker unpacker = Pack200.newUnpacker();
+        unpacker.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        Pack200.PackResult unpacked = unpacker
+            .unpackAsync(packFile, jarFile, executor, progress::add).get();
+        assertEquals(Files.size(jarFile), unpacked.outputSize());
+        assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+        try (JarFile jf = new JarFile(jarFile.toFile())) {
+            assertTrue(jf.size() > 0);
+        }
+    }
+
+    @Test
+    public void testPool() throws Exception {
+        Path golden = TestUtils.getGoldenJar().toPath();
+        Pack200.Packer pool = Pack200.newPackerPool(1);
+        Pack200.PackResult packed = pool.packAsync(golden, packFile, executor, null).get();
+        assertEquals(Files.size(packFile), packed.outputSize());
+    }
+
+    @Test
+    public void testCancelBetweenSegments() throws Exception {
+        Path golden = TestUtils.getGoldenJar().toPath();
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, "20000");
+        AtomicReference<CompletableFuture<?>> future = new AtomicReference<>();
+        CompletableFuture<Void> futureSet = new CompletableFuture<>();
+        CompletableFuture<Pack200.PackResult> f =
+            packer.packAsync(golden, packFile, executor, percent -> {
+                if (percent == 25) {
+                    // A segment is out; stop before the next one.
+                    futureSet.join();
+                    future.get().cancel(false);
+                }
+            });
+        future.set(f);
+        futureSet.complete(null);
+        try {
+            f.get();
+            fail("not cancelled");
+        } catch (CancellationException expected) {
+        }
+        // The run deletes its output once it stops.
+        for (int i = 0; i < 100 && Files.exists(packFile); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(packFile));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Path missing = Paths.get("target/no-such.jar");
+        try {
+            Pack200.newPacker().packAsync(missing, packFile, executor, null).get();
+            fail("no failure");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        assertFalse(Files.exists(packFile));
+    }
+}
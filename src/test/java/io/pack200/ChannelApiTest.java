@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary packing to a channel, and unpacking from a channel or a
+ *          buffer, must give the same bytes as the stream methods
+ */
+public class ChannelApiTest {
+
+    @Test
+    public void testGoldenJar() throws IOException {
+        check(null);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        check("20000");
+    }
+
+    @Test
+    public void testJarInput() throws IOException {
+        byte[] jar = Files.readAllBytes(TestUtils.getGoldenJar().toPath());
+        byte[] expected = unpackStream(jar);
+        assertArrayEquals(expected, unpackChannel(jar));
+        assertArrayEquals(expected, unpackBuffer(jar));
+    }
+
+    @Test
+    public void testNonBlocking() throws IOException {
+        Path jarFile = new File("target/channel-api-nonblocking.jar").toPath();
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            pipe.source().configureBlocking(false);
+            try {
+                Pack200.newPacker().pack(TestUtils.getGoldenJar().toPath(), pipe.sink());
+                fail("packed to a non-blocking channel");
+            } catch (IllegalBlockingModeException expected) {
+            }
+            try {
+                newUnpacker().unpack(pipe.source(), jarFile);
+                fail("unpacked from a non-blocking channel");
+            } catch (IllegalBlockingModeException expected) {
+            }
+            assertFalse(Files.exists(jarFile));
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+            Files.deleteIfExists(jarFile);
+        }
+    }
+
+    private static void check(String segmentLimit) throws IOException {
+        Path packFile = new File("target/channel-api.pack").toPath();
+        try {
+            Pack200.Packer packer = Pack200.newPacker();
+            if (segmentLimit != null)
+                packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, segmentLimit);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            packer.pack(new JarFile(TestUtils.getGoldenJar()), expected);
+            try (FileChannel out = FileChannel.open(packFile,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                packer.pack(TestUtils.getGoldenJar().toPath(), out);
+                assertTrue("channel left open", out.isOpen());
+            }
+            byte[] pack = Files.readAllBytes(packFile);
+            assertArrayEquals(expected.toByteArray(), pack);
+
+            byte[] jar = unpackStream(pack);
+            assertTrue(jar.length > 0);
+            assertArrayEquals("non-file channel", jar, unpackChannel(pack));
+            assertArrayEquals("buffer", jar, unpackBuffer(pack));
+            assertArrayEquals("file channel", jar, unpackFileChannel(packFile));
+        } finally {
+            Files.deleteIfExists(packFile);
+        }
+    }
+
+    private static Pack200.Unpacker newUnpacker() {
+        return TestUtils.newUnpacker(TestUtils.props());
+    }
+
+    private static byte[] unpackStream(byte[] pack) throws IOException {
+        return TestUtils.unpackToBytes(pack, TestUtils.props());
+    }
+
+    private static byte[] unpackBuffer(byte[] pack) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(pack);
+        ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+        try (JarOutputStream jout = new JarOutputStream(jarBytes)) {
+            newUnpacker().unpack(buf, jout);
+        }
+        assertFalse(buf.hasRemaining());
+        return jarBytes.toByteArray();
+    }
+
+    private static byte[] unpackChannel(byte[] pack) throws IOException {
+        Path jarFile = new File("target/channel-api.jar").toPath();
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(pack));
+        try {
+            newUnpacker().unpack(in, jarFile);
+            assertFalse("channel closed", in.isOpen());
+            return Files.readAllBytes(jarFile);
+        } finally {
+            Files.deleteIfExists(jarFile);
+        }
+    }
+
+    private static byte[] unpackFileChannel(Path packFile) throws IOException {
+        Path jarFile = new File("target/channel-api.jar").toPath();
+        try {
+            newUnpacker().unpack(FileChannel.open(packFile), jarFile);
+            return Files.readAllBytes(jarFile);
+        } finally {
+            Files.deleteIfExists(jarFile);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary the class reader decodes class files straight from a byte
+ *          array, as DataInputStream would, including modified UTF-8
+ *          and truncated or malformed input
+ */
+public class ClassReaderTest {
+
+    static class Strings {
+        static final String ASCII = "plain ascii";
+        static final String WIDE = "h\u00e9llo \u0000 \u07ff \u0800 \u20ac \uD834\uDD1E \uFFFF";
+    }
+
+    @Before
+    public void setUp() {
+        Utils.currentInstance.set(new PackerImpl());
+    }
+
+    @After
+    public void tearDown() {
+        Utils.currentInstance.set(null);
+    }
+
+    static byte[] classBytes(java.lang.Class<?> c) throws IOException {
+        String name = c.getName();
+        name = name.substring(name.lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = c.getResourceAsStream(name)) {
+            return ClassReader.readAll(in);
+        }
+    }
+
+    static Package.Class read(byte[] bytes, int len) throws IOException {
+        Package.Class cls = new Package().new Class("Test.class");
+        new ClassReader(cls, bytes, len).read();
+        return cls;
+    }
+
+    static List<String> utf8s(Package.Class cls) {
+        List<String> res = new ArrayList<>();
+        for (ConstantPool.Entry e : cls.getCPMap()) {
+            if (e instanceof ConstantPool.Utf8Entry)
+                res.add(e.stringValue());
+        }
+        return res;
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        byte[] bytes = classBytes(Strings.class);
+        List<String> strs = utf8s(read(bytes, bytes.length));
+        assertTrue(strs.contains(Strings.ASCII));
+        assertTrue(strs.contains(Strings.WIDE));
+
+        // The stream constructor takes the same route.
+        Package.Class cls = new Package().new Class("Test.class");
+        new ClassReader(cls, new ByteArrayInputStream(bytes)).read();
+        assertEquals(strs, utf8s(cls));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] bytes = classBytes(Strings.class);
+        for (int len = 0; len < bytes.length; len++) {
+            try {
+                read(bytes, len);
+                fail("read "+len+" of "+bytes.length+" bytes");
+            } catch (EOFException ee) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedUTF() throws IOException {
+        byte[][] bad = {
+            { (byte)0x80 },                         // stray continuation
+            { (byte)0xC3, (byte)0x28 },             // bad second byte
+            { (byte)0xE2, (byte)0x82 },             // partial at end
+            { (byte)0xE2, (byte)0x82, (byte)0x28 }, // bad third byte
+            { (byte)0xF0, (byte)0x9D, (byte)0x84, (byte)0x9E }  // 4-byte form
+        };
+        for (byte[] utf : bad) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buf);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            out.writeShort(2);  // one entry
+            out.writeByte(Constants.CONSTANT_Utf8);
+            out.writeShort(utf.length);
+            out.write(utf);
+            byte[] bytes = buf.toByteArray();
+            try {
+                read(bytes, bytes.length);
+                fail("read malformed "+utf.length+"-byte string");
+            } catch (UTFDataFormatException ue) {
+                // Expected.
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary coding decisions carried across segments and runs give
+ *          an archive which unpacks the same, at about the same size,
+ *          however many threads choose the band codings
+ */
+public class CodingDecisionsTest {
+    static final String LIMIT = "20000";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSegments() throws IOException {
+        byte[] plain = pack(opts(null));
+        Map<String, String> opts = opts(null);
+        opts.put(Utils.CODING_DECISIONS, "true");
+        byte[] decided = pack(opts);
+        assertEquals(unpack(plain), unpack(decided));
+        assertTrue(decided.length+" vs "+plain.length,
+                   decided.length < plain.length * 1.02);
+
+        // Decisions do not depend on how bands are spread over threads.
+        opts.put(Utils.PACK_THREADS, "3");
+        assertArrayEquals(decided, pack(opts));
+        opts.put(Utils.PACK_SEGMENT_THREADS, "2");
+        assertEquals(unpack(plain), unpack(pack(opts)));
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File file = new File(tmp.getRoot(), "decisions");
+        Map<String, String> opts = opts(file);
+        byte[] first = pack(opts);
+        assertTrue(file.exists());
+        CodingDecisions saved = CodingDecisions.load(file);
+        assertTrue(saved.size() > 0);
+
+        byte[] second = pack(opts);
+        assertEquals(unpack(first), unpack(second));
+        assertEquals(saved.size(), CodingDecisions.load(file).size());
+    }
+
+    @Test
+    public void testSignature() {
+        int s = CodingDecisions.signature(1000, 0, 255);
+        assertEquals(s, CodingDecisions.signature(600, 0, 200));
+        assertNotEquals(s, CodingDecisions.signature(1000, -1, 255));
+        assertNotEquals(s, CodingDecisions.signature(1000, 0, 256));
+        assertNotEquals(s, CodingDecisions.signature(3000, 0, 255));
+    }
+
+    static Map<String, String> opts(File file) {
+        Map<String, String> opts = new HashMap<>();
+        opts.put(Pack200.Packer.SEGMENT_LIMIT, LIMIT);
+        if (file != null)
+            opts.put(Utils.CODING_DECISIONS_FILE, file.getPath());
+        return opts;
+    }
+
+    static byte[] pack(Map<String, String> opts) throws IOException {
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().putAll(opts);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarFile jf = new JarFile(TestUtils.getGoldenJar())) {
+            packer.pack(jf, out);
+        }
+        return out.toByteArray();
+    }
+
+    // Names and contents of the entries in the unpacked JAR file.
+    static Map<String, String> unpack(byte[] pack) throws IOException {
+        Pack200.Unpacker unpacker = Pack200.newUnpacker();
+        unpacker.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(jar)) {
+            unpacker.unpack(new ByteArrayInputStream(pack), out);
+        }
+        Map<String, String> entries = new HashMap<>();
+        try (JarInputStream in = new JarInputStream(
+                new ByteArrayInputStream(jar.toByteArray()))) {
+            for (JarEntry je; (je = in.getNextJarEntry()) != null; ) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                for (int n; (n = in.read(buf)) > 0; )
+                    data.write(buf, 0, n);
+                entries.put(je.getName(), Arrays.toString(data.toByteArray()));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary bulk decoding out of the reader's buffer must agree with
+ *          decoding one byte at a time, including values that straddle
+ *          a buffer refill or the end of a mapped buffer; buffered encoding with on-the-fly deltas must
+ *          agree with encoding precomputed deltas one value at a time;
+ *          codings chosen by entropy estimates must unpack the same
+ */
+public class CodingTest {
+
+    @Test
+    public void testBasicCodings() throws IOException {
+        Random rnd = new Random(42);
+        for (Coding c : BandStructure.getBasicCodings()) {
+            if (c == null)  continue;
+            check(c, rnd);
+            check(c.getDeltaCoding(), rnd);
+        }
+    }
+
+    @Test
+    public void testEntropySizer() {
+        for (boolean order1 : new boolean[] { false, true }) {
+            CodingChooser.EntropySizer es = new CodingChooser.EntropySizer(order1);
+            Random rnd = new Random(7);
+            for (int i = 0; i < 10000; i++)  es.write(rnd.nextInt(256));
+            int random = es.getZipSize();
+            // Random bytes do not compress; the table costs a little more.
+            assertTrue(random + " random", random >= 10000 && random < 10500);
+            es.reset();
+            for (int i = 0; i < 10000; i++)  es.write(i % 4);
+            int cyclic = es.getZipSize();
+            if (order1)
+                assertTrue(cyclic + " cyclic", cyclic < 100);
+            else
+                assertTrue(cyclic + " cyclic", cyclic > 2400 && cyclic < 2600);
+        }
+    }
+
+    @Test
+    public void testEntropyEstimators() throws IOException {
+        File jar = TestUtils.getGoldenJar();
+        byte[] expected = unpack(packWithEstimator(jar, "deflate"));
+        for (String est : new String[] { "entropy", "entropy1" }) {
+            assertArrayEquals(est, expected, unpack(packWithEstimator(jar, est)));
+        }
+    }
+
+    private static byte[] packWithEstimator(File jar, String est) throws IOException {
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Pack200.Packer.EFFORT, "9");
+        packer.properties().put(Utils.COM_PREFIX + "coding.estimator", est);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packer.pack(new JarFile(jar), out);
+        return out.toByteArray();
+    }
+
+    // Unpack and concatenate the entries, which are in a fixed order.
+    private static byte[] unpack(byte[] packed) throws IOException {
+        ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+        try (JarOutputStream jout = new JarOutputStream(jarBytes)) {
+            Pack200.newUnpacker().unpack(new ByteArrayInputStream(packed), jout);
+        }
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        try (JarInputStream in = new JarInputStream(
+                 new ByteArrayInputStream(jarBytes.toByteArray()))) {
+            byte[] buf = new byte[8192];
+            for (JarEntry je; (je = in.getNextJarEntry()) != null; ) {
+                all.write(je.getName().getBytes("UTF-8"));
+                for (int nr; (nr = in.read(buf)) > 0; ) {
+                    all.write(buf, 0, nr);
+                }
+            }
+        }
+        return all.toByteArray();
+    }
+
+    private static void check(Coding c, Random rnd) throws IOException {
+        int[] values = new int[3000];
+        for (int i = 0; i < values.length; i++) {
+            // Favor short codes, but cover the whole range.
+            int x = (i % 3 == 0) ? c.min() + rnd.nextInt(300)
+                                 : c.min() + (int)(rnd.nextDouble() * ((long)c.max() - c.min()));
+            values[i] = Math.max(c.min(), Math.min(c.max(), x));
+        }
+        if (!c.canRepresent(values, 0, values.length))  return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int[] copy = values.clone();
+        c.writeArrayTo(bytes, copy, 0, values.length);
+        assertArrayEquals("input must not change", values, copy);
+        byte[] coded = bytes.toByteArray();
+        assertArrayEquals(c.toString(), encodeSlowly(c, values), coded);
+
+        int[] slow = new int[values.length];
+        c.readArrayFrom(new ByteArrayInputStream(coded), slow, 0, slow.length);
+        assertArrayEquals(c.toString(), values, slow);
+
+        for (int chunk : new int[] { 1, 7, 1 << 16 }) {
+            PackageReader.LimitedBuffer in
+                = new PackageReader.LimitedBuffer(new Trickle(coded, chunk));
+            in.setReadLimit(-1);
+            int[] fast = new int[values.length];
+            c.readArrayFrom(in, fast, 0, fast.length);
+            assertArrayEquals(c + " chunk=" + chunk, values, fast);
+            assertEquals(coded.length, in.getBytesServed());
+        }
+
+        // A direct buffer has no array; decode it with a limit that
+        // stops short of the trailing bytes.
+        ByteBuffer direct = ByteBuffer.allocateDirect(coded.length + 8);
+        direct.put(coded);
+        ((Buffer) direct).flip();
+        ((Buffer) direct).limit(coded.length + 8);
+        PackageReader.MappedBuffer mapped = new PackageReader.MappedBuffer(direct);
+        mapped.setReadLimit(coded.length);
+        int[] fast = new int[values.length];
+        c.readArrayFrom(mapped, fast, 0, fast.length);
+        assertArrayEquals(c + " mapped", values, fast);
+        assertEquals(coded.length, mapped.getBytesServed());
+    }
+
+    private static byte[] encodeSlowly(Coding c, int[] values) throws IOException {
+        int[] a = values;
+        for (int dstep = 0; dstep < c.del(); dstep++) {
+            if (c.isSubrange())
+                a = Coding.makeDeltas(a, 0, a.length, c.min(), c.max());
+            else
+                a = Coding.makeDeltas(a, 0, a.length, 0, 0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Coding single = c.setD(0);
+        for (int x : a) {
+            single.writeTo(out, x);
+        }
+        return out.toByteArray();
+    }
+
+    // Hands out at most chunk bytes per read, so the buffer refills often.
+    static class Trickle extends InputStream {
+        final byte[] data;
+        final int chunk;
+        int pos;
+        Trickle(byte[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+        public int read(byte[] b, int off, int len) {
+            if (pos == data.length)  return -1;
+            int n = Math.min(Math.min(len, chunk), data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
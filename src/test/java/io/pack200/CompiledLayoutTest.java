@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import io.pack200.ConstantPool.Entry;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary compiled attribute layouts read and write the same bytes
+ *          and band values as the layout interpreters
+ */
+public class CompiledLayoutTest {
+    static final int MAX_VAL = 12;
+
+    static final String[] LAYOUTS = {
+        "HH",                   // ClassFile.version
+        "RUH",                  // SourceFile
+        "RCHRDNH",              // EnclosingMethod
+        "KQH",                  // ConstantValue
+        "NH[RCH]",              // Exceptions
+        "NH[PHH]",              // LineNumberTable
+        "NH[PHOHRUHRSHH]",      // LocalVariableTable
+        "NH[PHPOHIIH]",         // CharacterRangeTable
+        "NH[PHHII]",            // CoverageTable
+        "NH[RCHRCNHRUNHFH]",    // InnerClasses
+        "NH[RMHNH[KLH]]",       // BootstrapMethods
+        "HHNI[B]NH[PHPOHPOHRCNH]NH[RUHNI[B]]", // Code
+        "SBSHSIVBFBNB[PBOSB]TSB(-1)[SB](0-3,7)[NV[B]]()[I]",
+        // Like metadata, but with a compact tag set:
+        "[NH[(1)]]"
+        +"[NH[(1)]]"
+        +"[RSHNH[RUH(1)]]"
+        +"[TB(0,1,3)[KIH](2)[KDH](5)[KFH](4)[KJH](7)[RSH](8)[RSHRUH](9)[RUH](10)[(-1)](6)[NH[(0)]]()[]]",
+        // Same again, with integer refs and positions in the calls:
+        "[NB[(1)PH]][TB(0,1,3)[KIH](2)[PHOH](6)[NB[(0)KINH]]()[]]",
+        ""
+    };
+
+    Entry[] cpMap;
+
+    @Before
+    public void setUp() {
+        Utils.currentInstance.set(new PackerImpl());
+        cpMap = new Entry[MAX_VAL+1];
+        for (int i = 1; i < cpMap.length; i++) {
+            cpMap[i] = ConstantPool.getLiteralEntry(i);  // 0 => null
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Utils.currentInstance.set(null);
+    }
+
+    @Test
+    public void testSameAsInterpreter() {
+        int nonEmpty = 0;
+        for (String layout : LAYOUTS) {
+            Attribute.Layout def = new Attribute.Layout(0, "Foo", layout);
+            for (int seed = 0; seed < 50; seed++) {
+                // Unparse the same band values both ways.
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                Object[] fixups = { null };
+                Attribute.unparseUsing(def.getEntryPoint(), fixups,
+                                       new Values(seed), expected);
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                Object cookie = def.unparse(new Values(seed), actual);
+                byte[] bytes = finish(expected, fixups[0]);
+                assertArrayEquals(layout, bytes, finish(actual, cookie));
+                if (bytes.length > 0)  nonEmpty++;
+
+                // Parse the bytes back both ways.  Only integers are in
+                // the cpMap, so other refs must fail the same way.
+                Values parsed = new Values(0);
+                try {
+                    int end = Attribute.parseUsing(def.getEntryPoint(), holder(),
+                                                   bytes, 0, bytes.length, parsed);
+                    parsed.history.add("end "+end);
+                } catch (IllegalArgumentException ee) {
+                    parsed.history.add(ee.toString());
+                }
+                Values reparsed = new Values(0);
+                try {
+                    int end = def.compiled().parse(holder(),
+                                                   bytes, 0, bytes.length, reparsed);
+                    reparsed.history.add("end "+end);
+                } catch (IllegalArgumentException ee) {
+                    reparsed.history.add(ee.toString());
+                }
+                assertEquals(layout, parsed.history, reparsed.history);
+            }
+        }
+        assertTrue(nonEmpty > 0);
+    }
+
+    @Test
+    public void testSharedByLayoutString() {
+        String layout = LAYOUTS[LAYOUTS.length-2];
+        Attribute.Layout a = new Attribute.Layout(Constants.ATTR_CONTEXT_CLASS, "A", layout);
+        Attribute.Layout b = new Attribute.Layout(Constants.ATTR_CONTEXT_CODE, "B", layout);
+        assertSame(a.compiled(), b.compiled());
+        assertNotSame(a.compiled(), new Attribute.Layout(0, "A", "NH[RCH]").compiled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadConstant() {
+        Attribute.Layout def = new Attribute.Layout(0, "Foo", "RCH");
+        byte[] bytes = { 0, 1 };  // an Integer where a Class belongs
+        def.parse(holder(), bytes, 0, bytes.length, new Values(0));
+    }
+
+    Attribute.Holder holder() {
+        return new Attribute.Holder() {
+            @Override
+            protected Entry[] getCPMap() {
+                return cpMap;
+            }
+        };
+    }
+
+    byte[] finish(ByteArrayOutputStream buf, Object fixups) {
+        byte[] bytes = buf.toByteArray();
+        Fixups.setBytes(fixups, bytes);
+        Fixups.finishRefs(fixups, bytes, ConstantPool.makeIndex("test", cpMap));
+        return bytes;
+    }
+
+    // Draws random band values, and records every value stored.
+    class Values extends Attribute.ValueStream {
+        final Random rand;
+        final List<String> history = new ArrayList<>();
+        Values(long seed) { rand = new Random(seed); }
+
+        @Override
+        public int getInt(int bandIndex) {
+            return rand.nextInt(MAX_VAL+1);
+        }
+        @Override
+        public Entry getRef(int bandIndex) {
+            return cpMap[getInt(bandIndex)];
+        }
+        @Override
+        public void putInt(int bandIndex, int value) {
+            history.add(bandIndex+":"+value);
+        }
+        @Override
+        public void putRef(int bandIndex, Entry ref) {
+            history.add(bandIndex+":"+ref);
+        }
+        @Override
+        public void noteBackCall(int whichCallable) {
+            history.add("call "+whichCallable);
+        }
+        // The coding must map 0 to 0, as the interpreters assert,
+        // and must keep order, so that offsets are not negative.
+        @Override
+        public int encodeBCI(int bci) {
+            return bci * 2;
+        }
+        @Override
+        public int decodeBCI(int bciCode) {
+            return bciCode >> 1;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import io.pack200.ConstantPool.ClassEntry;
+import io.pack200.ConstantPool.DescriptorEntry;
+import io.pack200.ConstantPool.Entry;
+import io.pack200.ConstantPool.Index;
+import io.pack200.ConstantPool.MemberEntry;
+import io.pack200.ConstantPool.MethodHandleEntry;
+import io.pack200.ConstantPool.SignatureEntry;
+import io.pack200.ConstantPool.Utf8Entry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static io.pack200.Constants.*;
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary constant pool factories must hand out one entry per value,
+ *          even when many threads intern the same values at once;
+ *          indexes find entries by pool position as by hashing
+ */
+public class ConstantPoolTest {
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        final TLGlobals globals = new TLGlobals();
+        final int nthreads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+        try {
+            List<Future<List<Object>>> results = new ArrayList<>();
+            for (int t = 0; t < nthreads; t++) {
+                results.add(pool.submit(new Callable<List<Object>>() {
+                    public List<Object> call() {
+                        Utils.currentInstance.set(globals);
+                        try {
+                            return intern();
+                        } finally {
+                            Utils.currentInstance.set(null);
+                        }
+                    }
+                }));
+            }
+            List<Object> first = results.get(0).get();
+            for (Future<List<Object>> f : results) {
+                List<Object> entries = f.get();
+                assertEquals(first.size(), entries.size());
+                for (int i = 0; i < first.size(); i++) {
+                    assertSame(first.get(i), entries.get(i));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testKeysDistinguishKinds() {
+        Utils.currentInstance.set(new TLGlobals());
+        try {
+            ClassEntry cls = ConstantPool.getClassEntry("p/C");
+            DescriptorEntry desc = ConstantPool.getDescriptorEntry(
+                ConstantPool.getUtf8Entry("m"), ConstantPool.getUtf8Entry("()V"));
+            MemberEntry m = ConstantPool.getMemberEntry(CONSTANT_Methodref, cls, desc);
+            MemberEntry im = ConstantPool.getMemberEntry(CONSTANT_InterfaceMethodref, cls, desc);
+            assertNotSame(m, im);
+            assertSame(m, ConstantPool.getMemberEntry(CONSTANT_Methodref, cls, desc));
+            assertEquals("Method:p/C.()V.m", m.stringValue());
+            MethodHandleEntry h1 = ConstantPool.getMethodHandleEntry(REF_invokeStatic, m);
+            MethodHandleEntry h2 = ConstantPool.getMethodHandleEntry(REF_invokeVirtual, m);
+            assertNotSame(h1, h2);
+            assertSame(h1, ConstantPool.getMethodHandleEntry(REF_invokeStatic, m));
+        } finally {
+            Utils.currentInstance.set(null);
+        }
+    }
+
+    @Test
+    public void testPoolIndexLookup() {
+        Utils.currentInstance.set(new PackerImpl());
+        try {
+            Entry[] utf8s = new Entry[20];
+            for (int i = 0; i < utf8s.length; i++) {
+                utf8s[i] = ConstantPool.getUtf8Entry(i == 0 ? "" : "u" + i);
+            }
+            Entry[] classes = {
+                ConstantPool.getClassEntry("u3"), ConstantPool.getClassEntry("u7")
+            };
+            SignatureEntry sig = ConstantPool.getSignatureEntry("(Lp/C;)V");
+            ConstantPool.IndexGroup cp = new ConstantPool.IndexGroup();
+            cp.initIndexByTag(CONSTANT_Utf8, ConstantPool.makeIndex("Utf8", utf8s));
+            cp.initIndexByTag(CONSTANT_Class, ConstantPool.makeIndex("Class", classes));
+            cp.initIndexByTag(CONSTANT_Signature,
+                              ConstantPool.makeIndex("Signature", new Entry[] { sig }));
+            Entry attrName = ConstantPool.getUtf8Entry("Code");
+            int poolSize = cp.numberEntries(Arrays.asList(attrName, utf8s[4]));
+            assertEquals(utf8s.length + classes.length + 3, poolSize);
+
+            // Two class pools in different orders, sharing one map.
+            Entry[] local1 = { null, classes[1], utf8s[7], utf8s[3], classes[0],
+                               sig.asUtf8Entry(), attrName,
+                               ConstantPool.getUtf8Entry("fresh") };
+            Entry[] local2 = { null, utf8s[3], classes[0], utf8s[5] };
+            int[] map = new int[poolSize];
+            Index ix1 = ConstantPool.makeIndex("local1", local1);
+            ix1.flattenSigs = true;
+            ix1.mapByPoolIndex(map);
+            assertEquals(5, ix1.indexOf(sig));
+            for (int i = 1; i < local1.length; i++) {
+                assertEquals(i, ix1.indexOf(local1[i]));
+            }
+
+            Index ix2 = ConstantPool.makeIndex("local2", local2);
+            ix2.mapByPoolIndex(map);
+            for (int i = 1; i < local2.length; i++) {
+                assertEquals(i, ix2.indexOf(local2[i]));
+            }
+            // The first pool still finds entries the second remapped.
+            for (int i = 1; i < local1.length; i++) {
+                assertEquals(i, ix1.indexOf(local1[i]));
+            }
+            assertFalse(ix2.contains(utf8s[7]));
+            assertNull(ix1.indexKey);  // no hash tables needed
+            assertNull(ix2.indexKey);
+        } finally {
+            Utils.currentInstance.set(null);
+        }
+    }
+
+    private static List<Object> intern() {
+        List<Object> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Utf8Entry name = ConstantPool.getUtf8Entry("m" + (i % 50));
+            ClassEntry cls = ConstantPool.getClassEntry("p/C" + (i % 37));
+            DescriptorEntry desc = ConstantPool.getDescriptorEntry(
+                name, ConstantPool.getUtf8Entry("(I)Lp/C" + (i % 11) + ";"));
+            entries.add(name);
+            entries.add(cls);
+            entries.add(desc);
+            entries.add(ConstantPool.getMemberEntry(CONSTANT_Methodref, cls, desc));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary engines shared through a pool must give the same results as
+ *          fresh engines, however many callers use them at once
+ */
+public class EnginePoolTest {
+
+    @Test
+    public void testPackerPool() throws Exception {
+        byte[] expected = pack(Pack200.newPacker());
+        Pack200.Packer pool = Pack200.newPackerPool(2);
+        pool.properties().put(Pack200.Packer.EFFORT, "5");
+        for (byte[] packed : runAll(() -> pack(pool))) {
+            assertArrayEquals(expected, packed);
+        }
+    }
+
+    @Test
+    public void testUnpackerPool() throws Exception {
+        byte[] packed = pack(Pack200.newPacker());
+        Pack200.Unpacker fresh = Pack200.newUnpacker();
+        fresh.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        byte[] expected = unpack(fresh, packed);
+        Pack200.Unpacker pool = Pack200.newUnpackerPool(2);
+        pool.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        for (byte[] unpacked : runAll(() -> unpack(pool, packed))) {
+            assertArrayEquals(expected, unpacked);
+        }
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        // One engine, run again and again, must not carry state over.
+        Pack200.Packer packer = Pack200.newPacker();
+        byte[] first = pack(packer);
+        assertArrayEquals(first, pack(packer));
+        assertArrayEquals(first, pack(packer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSize() {
+        Pack200.newPackerPool(0);
+    }
+
+    interface Job {
+        byte[] run() throws IOException;
+    }
+
+    // Run a job many times, from more threads than there are engines.
+    private static List<byte[]> runAll(Job job) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(threads.submit(job::run));
+            }
+            List<byte[]> results = new ArrayList<>();
+            for (Future<byte[]> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static byte[] pack(Pack200.Packer packer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packer.pack(new JarFile(TestUtils.getGoldenJar()), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] unpack(Pack200.Unpacker unpacker, byte[] packed) throws IOException {
+        ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+        try (JarOutputStream jout = new JarOutputStream(jarBytes)) {
+            unpacker.unpack(new ByteArrayInputStream(packed), jout);
+        }
+        return jarBytes.toByteArray();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary file contents past the spill threshold must move to a
+ *          temporary file, and pack and unpack must not change
+ */
+public class FileStoreTest {
+
+    @Test
+    public void testSpill() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        FileStore store = new FileStore.Heap(30000);
+        for (int off = 0; off < data.length; off += 7000) {
+            store = store.write(data, off, Math.min(7000, data.length - off));
+            assertEquals(off >= 28000, store instanceof FileStore.Spill);
+        }
+        assertEquals(data.length, store.length());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.writeTo(out);
+        assertArrayEquals(data, out.toByteArray());
+        try (InputStream in = store.getInputStream()) {
+            out.reset();
+            byte[] buf = new byte[5000];
+            for (int nr; (nr = in.read(buf)) > 0; ) {
+                out.write(buf, 0, nr);
+            }
+        }
+        assertArrayEquals(data, out.toByteArray());
+        store.release();
+    }
+
+    @Test
+    public void testHeapOnly() throws IOException {
+        FileStore store = new FileStore.Heap(-1);
+        byte[] data = new byte[1 << 20];
+        store = store.write(data, 0, data.length);
+        assertTrue(store instanceof FileStore.Heap);
+        assertEquals(data.length, store.length());
+    }
+
+    @Test
+    public void testPackUnpack() throws IOException {
+        File packFile = pack("spill.pack", null);
+        File spilledFile = pack("spill-spilled.pack", "100");
+        try {
+            assertArrayEquals(Files.readAllBytes(packFile.toPath()),
+                              Files.readAllBytes(spilledFile.toPath()));
+            assertArrayEquals(unpack(packFile, null), unpack(packFile, "100"));
+        } finally {
+            packFile.delete();
+            spilledFile.delete();
+        }
+    }
+
+    @Test
+    public void testFailedRunsRelease() throws IOException {
+        File packFile = pack("spill-failed.pack", null);
+        try {
+            int before = countTempFiles();
+            for (String segmentThreads : new String[] { "1", "3" }) {
+                Pack200.Packer packer = Pack200.newPacker();
+                packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, "20000");
+                packer.properties().put(Utils.SPILL_THRESHOLD, "100");
+                packer.properties().put(Utils.PACK_SEGMENT_THREADS, segmentThreads);
+                try (JarInputStream in = new JarInputStream(
+                         new FileInputStream(TestUtils.getGoldenJar()))) {
+                    packer.pack(in, new FailingOutputStream(30000));
+                    fail("pack should fail");
+                } catch (IOException ee) {
+                    // Expected.
+                }
+                assertEquals("pack, segment threads = "+segmentThreads,
+                             before, countTempFiles());
+            }
+            for (String threads : new String[] { "1", "3" }) {
+                Pack200.Unpacker unpacker = TestUtils.newUnpacker(TestUtils.props(
+                    Utils.SPILL_THRESHOLD, "100", Utils.UNPACK_THREADS, threads));
+                try (JarOutputStream jout = new JarOutputStream(new FailingOutputStream(30000))) {
+                    unpacker.unpack(new FileInputStream(packFile), jout);
+                    fail("unpack should fail");
+                } catch (IOException ee) {
+                    // Expected.
+                }
+                assertEquals("unpack, threads = "+threads, before, countTempFiles());
+            }
+        } finally {
+            packFile.delete();
+        }
+    }
+
+    static int countTempFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir"))
+            .list((dir, name) -> name.startsWith("pack200-") && name.endsWith(".bits"));
+        return (names == null) ? 0 : names.length;
+    }
+
+    // Fails once the given number of bytes have gone by.
+    static class FailingOutputStream extends OutputStream {
+        long room;
+        FailingOutputStream(long room) {
+            this.room = room;
+        }
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        public void write(byte[] b, int off, int len) throws IOException {
+            room -= len;
+            if (room < 0)
+                throw new IOException("out of room");
+        }
+    }
+
+    private static File pack(String packName, String threshold) throws IOException {
+        return TestUtils.packGoldenJar(packName, TestUtils.props(
+            Pack200.Packer.SEGMENT_LIMIT, "20000", Utils.SPILL_THRESHOLD, threshold));
+    }
+
+    private static byte[] unpack(File packFile, String threshold) throws IOException {
+        return TestUtils.unpackToBytes(packFile, false,
+            TestUtils.props(Utils.SPILL_THRESHOLD, threshold));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary an incremental pack copies the segments whose input is
+ *          unchanged from the previous pack file, and unpacks to the
+ *          same JAR file as a full pack
+ */
+public class IncrementalPackTest {
+    static final String LIMIT = "40000";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testIncremental() throws IOException {
+        check(false);
+    }
+
+    @Test
+    public void testGZIPBase() throws IOException {
+        check(true);
+    }
+
+    @Test
+    public void testContentBoundaries() throws IOException {
+        File jar = copyJar(false);
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, LIMIT);
+        packer.properties().put(Utils.PACK_SEGMENT_BOUNDARY, "content");
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        try (JarFile jf = new JarFile(jar)) {
+            packer.pack(jf, pack);
+        }
+        assertTrue(packer.metrics().segments() > 3);
+        assertEquals(unpack(pack(jar, null, null)), unpack(pack.toByteArray()));
+    }
+
+    void check(boolean gzip) throws IOException {
+        File oldJar = copyJar(false);
+        File newJar = copyJar(true);
+        File oldPack = tmp.newFile(gzip ? "old.pack.gz" : "old.pack");
+        File oldIndex = new File(oldPack.getPath()+".idx");
+        byte[] old = pack(oldJar, null, oldIndex);
+        try (OutputStream out = new FileOutputStream(oldPack)) {
+            if (gzip) {
+                try (OutputStream gz = new GZIPOutputStream(out)) {
+                    gz.write(old);
+                }
+            } else {
+                out.write(old);
+            }
+        }
+
+        File newIndex = tmp.newFile("new.pack.idx");
+        byte[] incremental = pack(newJar, oldPack, newIndex);
+        assertEquals(unpack(pack(newJar, null, null)), unpack(incremental));
+
+        // All but the segments around the edits are copied as they were.
+        List<String> oldKeys = keys(oldIndex);
+        List<String> newKeys = keys(newIndex);
+        assertTrue(oldKeys.size() > 3);
+        Set<String> reused = new HashSet<>(newKeys);
+        reused.retainAll(oldKeys);
+        assertTrue(reused+" of "+newKeys, reused.size() >= newKeys.size() - 2);
+    }
+
+    // The golden JAR file, or a copy with one file changed and one
+    // file added, in different places.
+    File copyJar(boolean edit) throws IOException {
+        File jar = tmp.newFile();
+        try (JarFile in = new JarFile(TestUtils.getGoldenJar());
+             JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            List<JarEntry> entries = Collections.list(in.entries());
+            for (int i = 0; i < entries.size(); i++) {
+                JarEntry je = entries.get(i);
+                JarEntry copy = new JarEntry(je.getName());
+                copy.setTime(je.getTime());
+                if (edit && i == entries.size() / 2)
+                    copy.setTime(je.getTime() + 3600_000L);
+                if (edit && i == entries.size() / 4) {
+                    out.putNextEntry(new JarEntry("inserted.txt"));
+                    out.write("inserted".getBytes("UTF-8"));
+                }
+                out.putNextEntry(copy);
+                try (InputStream data = in.getInputStream(je)) {
+                    byte[] buf = new byte[8192];
+                    for (int n; (n = data.read(buf)) > 0; )
+                        out.write(buf, 0, n);
+                }
+            }
+        }
+        return jar;
+    }
+
+    static byte[] pack(File jar, File base, File index) throws IOException {
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, LIMIT);
+        packer.properties().put(Utils.PACK_SEGMENT_BOUNDARY, "content");
+        if (base != null)
+            packer.properties().put(Utils.PACK_INCREMENTAL_BASE, base.getPath());
+        if (index != null)
+            packer.properties().put(Utils.PACK_INCREMENTAL_INDEX, index.getPath());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarFile jf = new JarFile(jar)) {
+            packer.pack(jf, out);
+        }
+        return out.toByteArray();
+    }
+
+    static List<String> keys(File index) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String line : Files.readAllLines(index.toPath())) {
+            if (!line.startsWith("#"))
+                keys.add(line.split(" ")[0]);
+        }
+        return keys;
+    }
+
+    // Names and contents of the entries in the unpacked JAR file.
+    static Map<String, String> unpack(byte[] pack) throws IOException {
+        Pack200.Unpacker unpacker = Pack200.newUnpacker();
+        unpacker.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(jar)) {
+            unpacker.unpack(new ByteArrayInputStream(pack), out);
+        }
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (JarInputStream in = new JarInputStream(
+                new ByteArrayInputStream(jar.toByteArray()))) {
+            for (JarEntry je; (je = in.getNextJarEntry()) != null; ) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                for (int n; (n = in.read(buf)) > 0; )
+                    data.write(buf, 0, n);
+                entries.put(je.getName(), je.getTime()+" "
+                            +Arrays.hashCode(data.toByteArray()));
+            }
+        }
+        return entries;
+    }
+}
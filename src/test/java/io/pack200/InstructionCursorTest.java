@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static io.pack200.Constants.*;
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary the instruction cursor decodes the same instructions as
+ *          Instruction.at and Instruction.next, and edits switches
+ *          the same way
+ */
+public class InstructionCursorTest {
+
+    // One of each of the harder instruction formats.
+    static byte[] code() throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeByte(_aload_0);                                // 0
+        out.writeByte(_invokespecial); out.writeShort(5);       // 1
+        out.writeByte(_wide); out.writeByte(_iinc);             // 4
+        out.writeShort(300); out.writeShort(-2);
+        out.writeByte(_iload); out.writeByte(4);                // 10
+        out.writeByte(_ldc); out.writeByte(3);                  // 12
+        out.writeByte(_ifeq); out.writeShort(79-14);            // 14
+        out.writeByte(_tableswitch); out.writeShort(0);         // 17
+        out.writeInt(79-17); out.writeInt(1); out.writeInt(3);
+        out.writeInt(77-17); out.writeInt(72-17); out.writeInt(0-17);
+        out.writeByte(_lookupswitch); out.writeShort(0);        // 44
+        out.writeByte(0);
+        out.writeInt(79-44); out.writeInt(2);
+        out.writeInt(-5); out.writeInt(72-44);
+        out.writeInt(1000); out.writeInt(77-44);
+        out.writeByte(_goto_w); out.writeInt(0-72);             // 72
+        out.writeByte(_bipush); out.writeByte(-3);              // 77
+        out.writeByte(_return);                                 // 79
+        out.flush();
+        assertEquals(80, buf.size());
+        return buf.toByteArray();
+    }
+
+    @Test
+    public void testSameAsInstruction() throws IOException {
+        byte[] bytes = code();
+        Instruction.Cursor c = new Instruction.Cursor();
+        int count = 0;
+        boolean more = c.reset(bytes);
+        for (Instruction i = Instruction.at(bytes, 0); i != null; i = i.next()) {
+            assertTrue(more);
+            assertEquals(i.getPC(), c.getPC());
+            assertEquals(i.getBC(), c.getBC());
+            assertEquals(i.isWide(), c.isWide());
+            assertEquals(i.getLength(), c.getLength());
+            assertEquals(i.getCPTag(), c.getCPTag());
+            assertEquals(i.getCPIndex(), c.getCPIndex());
+            assertEquals(i.getLocalSlot(), c.getLocalSlot());
+            assertEquals(i.getConstant(), c.getConstant());
+            assertEquals(i instanceof Instruction.Switch, c.isSwitch());
+            if (i instanceof Instruction.Switch) {
+                Instruction.Switch isw = (Instruction.Switch) i;
+                assertEquals(isw.getAlignedPC(), c.getAlignedPC());
+                assertEquals(isw.getDefaultLabel(), c.getDefaultLabel());
+                assertEquals(isw.getCaseCount(), c.getCaseCount());
+                for (int j = 0; j < isw.getCaseCount(); j++) {
+                    assertEquals(isw.getCaseValue(j), c.getCaseValue(j));
+                    assertEquals(isw.getCaseLabel(j), c.getCaseLabel(j));
+                }
+            } else {
+                assertEquals(i.getBranchLabel(), c.getBranchLabel());
+            }
+            assertEquals(i.toString(), c.toString());
+            more = c.next();
+            count++;
+        }
+        assertFalse(more);
+        assertEquals(11, count);
+        assertFalse(c.at(bytes.length));
+        assertTrue(c.at(77));
+        assertEquals(_bipush, c.getBC());
+    }
+
+    @Test
+    public void testSetSwitch() {
+        for (int bc : new int[] { _tableswitch, _lookupswitch }) {
+            // As the unpacker does, fill in a zeroed switch at pc 1.
+            byte[] bytes = new byte[100];
+            bytes[1] = (byte) bc;
+            Instruction.Cursor c = new Instruction.Cursor();
+            assertTrue(c.at(bytes, 1));
+            c.setCaseCount(3);
+            for (int j = 0; j < (bc == _tableswitch ? 1 : 3); j++) {
+                c.setCaseValue(j, 10*j - 7);
+            }
+            c.setDefaultLabel(40);
+            for (int j = 0; j < 3; j++) {
+                c.setCaseLabel(j, 50+j);
+            }
+            int next = c.getNextPC();
+
+            Instruction.Switch isw = (Instruction.Switch) Instruction.at(bytes, 1);
+            assertEquals(isw.getNextPC(), next);
+            assertEquals(3, isw.getCaseCount());
+            assertEquals(40, isw.getDefaultLabel());
+            for (int j = 0; j < 3; j++) {
+                assertEquals(bc == _tableswitch ? j - 7 : 10*j - 7,
+                             isw.getCaseValue(j));
+                assertEquals(50+j, isw.getCaseLabel(j));
+            }
+        }
+    }
+
+    @Test
+    public void testSetBranch() throws IOException {
+        byte[] bytes = code();
+        Instruction.Cursor c = new Instruction.Cursor();
+        assertTrue(c.at(bytes, 72));
+        c.setBranchLabel(12);
+        assertEquals(12, Instruction.at(bytes, 72).getBranchLabel());
+        assertTrue(c.at(14));
+        c.setBranchLabel(0);
+        assertEquals(0, Instruction.at(bytes, 14).getBranchLabel());
+    }
+}
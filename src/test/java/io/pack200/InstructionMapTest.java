@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary the bitset instruction map codes BCIs exactly as the
+ *          sorted boundary arrays did, and its coding is 1-1
+ */
+public class InstructionMapTest {
+
+    @Test
+    public void testRandomMaps() {
+        Random rand = new Random(42);
+        for (int iter = 0; iter < 200; iter++) {
+            int length = 1 + rand.nextInt(iter < 100 ? 300 : 70000);
+            int[] pcs = new int[length];
+            int n = 0;
+            for (int pc = 0; pc < length; ) {
+                pcs[n++] = pc;
+                // Mostly short instructions, with an occasional switch.
+                pc += (rand.nextInt(50) == 0) ? 1 + rand.nextInt(400)
+                                              : 1 + rand.nextInt(4);
+            }
+            check(pcs, n, length);
+        }
+    }
+
+    @Test
+    public void testDense() {
+        int[] pcs = new int[200];
+        for (int i = 0; i < pcs.length; i++)  pcs[i] = i;
+        check(pcs, pcs.length, pcs.length);
+        check(new int[] { 0 }, 1, 1);
+        check(new int[] { 0 }, 1, 64);
+        check(new int[] { 0, 63, 64, 127 }, 4, 128);
+    }
+
+    void check(int[] pcs, int n, int length) {
+        InstructionMap map = new InstructionMap(pcs, n, length);
+        assertEquals(n+1, map.size());
+        assertArrayEquals(Arrays.copyOf(pcs, n), map.toArray());
+        // The old map:  the boundaries, then the length.
+        int[] old = Arrays.copyOf(pcs, n+1);
+        old[n] = length;
+        boolean[] seen = new boolean[length+1];
+        for (int bci = 0; bci <= length; bci++) {
+            int i = Arrays.binarySearch(old, bci);
+            int expected = (i >= 0) ? i : old.length + bci - (-i-1);
+            int enc = map.encode(bci);
+            assertEquals("encode "+bci, expected, enc);
+            assertFalse(seen[enc]);
+            seen[enc] = true;
+            assertEquals("decode "+enc, bci, map.decode(enc));
+        }
+    }
+}
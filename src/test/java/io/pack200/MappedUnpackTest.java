@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary unpacking a pack file through a memory mapping must give the
+ *          same jar as unpacking it as a stream, for one or many segments
+ */
+public class MappedUnpackTest {
+
+    @Test
+    public void testGoldenJar() throws IOException {
+        check(null);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        check("20000");
+    }
+
+    @Test
+    public void testRemovePackFile() throws IOException {
+        File packFile = TestUtils.packGoldenJar("mapped-unpack-remove.pack",
+                                                TestUtils.props());
+        try {
+            byte[] streamed = unpack(packFile, false, TestUtils.props());
+            byte[] removed = unpack(packFile, true,
+                TestUtils.props(Utils.UNPACK_REMOVE_PACKFILE, "true"));
+            assertFalse(packFile.exists());
+            assertArrayEquals(streamed, removed);
+        } finally {
+            packFile.delete();
+        }
+    }
+
+    private static void check(String segmentLimit) throws IOException {
+        File packFile = TestUtils.packGoldenJar("mapped-unpack.pack",
+            TestUtils.props(Pack200.Packer.SEGMENT_LIMIT, segmentLimit));
+        try {
+            byte[] streamed = unpack(packFile, false, TestUtils.props());
+            byte[] mapped = unpack(packFile, true, TestUtils.props());
+            assertTrue(streamed.length > 0);
+            assertArrayEquals(streamed, mapped);
+        } finally {
+            packFile.delete();
+        }
+    }
+
+    // Unpack and concatenate the entry names and contents.
+    private static byte[] unpack(File packFile, boolean asFile,
+                                 Map<String, String> props) throws IOException {
+        return TestUtils.entryContents(TestUtils.unpackToBytes(packFile, asFile, props));
+    }
+}
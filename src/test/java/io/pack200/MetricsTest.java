@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary an engine reports the phases of its last run, and the
+ *          bands it wrote add up to the size of the archive
+ */
+public class MetricsTest {
+
+    @Test
+    public void testPack() throws IOException {
+        checkPack(null);
+    }
+
+    @Test
+    public void testPackSegments() throws IOException {
+        checkPack("20000");
+    }
+
+    @Test
+    public void testUnpack() throws IOException {
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, "20000");
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        packer.pack(new JarFile(TestUtils.getGoldenJar()), pack);
+        int segments = packer.metrics().segments();
+
+        Pack200.Unpacker unpacker = Pack200.newUnpacker();
+        unpacker.properties().put(Utils.DEBUG_DISABLE_NATIVE, "true");
+        assertNull(unpacker.metrics());
+        try (JarOutputStream jout = new JarOutputStream(new ByteArrayOutputStream())) {
+            unpacker.unpack(new ByteArrayInputStream(pack.toByteArray()), jout);
+        }
+        Pack200.Metrics m = unpacker.metrics();
+        assertNotNull(m);
+        assertEquals(segments, m.segments());
+        assertTrue(phaseNames(m).containsAll(Arrays.asList(
+            "readConstantPool", "readClasses", "readByteCodes",
+            "readFiles", "reconstructClasses", "writeJarEntries")));
+        for (Pack200.Metrics.Phase p : m.phases()) {
+            assertEquals(p.name(), segments, p.count());
+        }
+        assertTrue(m.bands().isEmpty());
+    }
+
+    @Test
+    public void testPackThreads() throws IOException {
+        Pack200.Metrics one = packWithThreads("1");
+        Pack200.Metrics four = packWithThreads("4");
+        // Worker threads add to the allocation of a phase, but not to
+        // its count or to its time, which is taken on the calling thread.
+        for (String name : Arrays.asList("parseClasses", "chooseBandCodings")) {
+            Pack200.Metrics.Phase p1 = phase(one, name);
+            Pack200.Metrics.Phase p4 = phase(four, name);
+            assertEquals(name, p1.count(), p4.count());
+            if (p1.allocatedBytes() >= 0)
+                assertTrue(name, p4.allocatedBytes() > 0);
+        }
+    }
+
+    private static Pack200.Metrics packWithThreads(String threads) throws IOException {
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Utils.PACK_THREADS, threads);
+        long start = System.nanoTime();
+        packer.pack(new JarFile(TestUtils.getGoldenJar()), new ByteArrayOutputStream());
+        long elapsed = System.nanoTime() - start;
+        Pack200.Metrics m = packer.metrics();
+        long phases = 0;
+        for (Pack200.Metrics.Phase p : m.phases()) {
+            phases += p.elapsed().toNanos();
+        }
+        assertTrue(phases <= elapsed);
+        return m;
+    }
+
+    private static Pack200.Metrics.Phase phase(Pack200.Metrics m, String name) {
+        for (Pack200.Metrics.Phase p : m.phases()) {
+            if (p.name().equals(name))  return p;
+        }
+        throw new AssertionError(name);
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        Path file = Files.createTempFile("metrics", ".jfr");
+        try {
+            Pack200.Packer packer = Pack200.newPacker();
+            try (Recording r = new Recording()) {
+                r.enable("io.pack200.Phase");
+                r.enable("io.pack200.Band");
+                r.start();
+                packer.pack(new JarFile(TestUtils.getGoldenJar()), new ByteArrayOutputStream());
+                r.stop();
+                r.dump(file);
+            }
+            Pack200.Metrics m = packer.metrics();
+            List<String> phases = new ArrayList<>();
+            int bands = 0;
+            for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+                switch (e.getEventType().getName()) {
+                case "io.pack200.Phase":
+                    assertEquals("pack", e.getString("operation"));
+                    phases.add(e.getString("name"));
+                    break;
+                case "io.pack200.Band":
+                    bands++;
+                    break;
+                }
+            }
+            assertEquals(phaseNames(m), phases);
+            assertEquals(m.bands().size(), bands);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBandCodings() {
+        Pack200.Metrics m = new Pack200.Metrics();
+        for (int i = 0; i < 1000; i++) {
+            m.addBand("cp_Int", 10, (i % 2 == 0) ? "UNSIGNED5" : "BYTE1");
+        }
+        Pack200.Metrics.Band b = m.bands().get(0);
+        assertEquals(10000, b.size());
+        assertEquals("UNSIGNED5, BYTE1", b.coding());
+
+        // A snapshot does not see later segments.
+        m.addBand("cp_Int", 5, "DELTA5");
+        assertEquals("UNSIGNED5, BYTE1", b.coding());
+        assertEquals(10005, m.bands().get(0).size());
+    }
+
+    private static void checkPack(String segmentLimit) throws IOException {
+        Pack200.Packer packer = Pack200.newPacker();
+        if (segmentLimit != null)
+            packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, segmentLimit);
+        assertNull(packer.metrics());
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        packer.pack(new JarFile(TestUtils.getGoldenJar()), pack);
+
+        Pack200.Metrics m = packer.metrics();
+        assertNotNull(m);
+        assertTrue(m.segments() >= 1);
+        if (segmentLimit != null)
+            assertTrue(m.segments() > 1);
+        assertTrue(phaseNames(m).containsAll(Arrays.asList(
+            "parseClasses", "collectAttributeLayouts", "buildGlobalConstantPool",
+            "writeClassesAndByteCodes", "chooseBandCodings", "writeAllBandsTo")));
+        for (Pack200.Metrics.Phase p : m.phases()) {
+            assertTrue(p.name(), p.count() > 0);
+            assertFalse(p.name(), p.elapsed().isNegative());
+        }
+
+        long total = 0;
+        for (Pack200.Metrics.Band b : m.bands()) {
+            assertTrue(b.name(), b.size() > 0);
+            assertFalse(b.name(), b.coding().isEmpty());
+            total += b.size();
+        }
+        assertEquals(pack.size(), total);
+    }
+
+    private static List<String> phaseNames(Pack200.Metrics m) {
+        List<String> names = new ArrayList<>();
+        for (Pack200.Metrics.Phase p : m.phases()) {
+            names.add(p.name());
+        }
+        return names;
+    }
+}
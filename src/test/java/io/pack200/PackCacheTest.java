@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary the pack cache returns what the packer would have written,
+ *          misses when the options change, stores single segments,
+ *          and keeps within its size limit, however many entries a
+ *          run stores
+ */
+public class PackCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testArchive() throws IOException {
+        File dir = tmp.newFolder();
+        byte[] expected = pack(null, null);
+        assertArrayEquals(expected, pack(dir, null));
+        File[] entries = entries(dir);
+        assertEquals(1, entries.length);
+
+        // Prove the next pack comes from the cache.
+        byte[] marker = { 1, 2, 3 };
+        Files.write(entries[0].toPath(), marker);
+        assertArrayEquals(marker, pack(dir, null));
+    }
+
+    @Test
+    public void testOptionsMiss() throws IOException {
+        File dir = tmp.newFolder();
+        pack(dir, null);
+        byte[] expected = pack(null, opts(Pack200.Packer.EFFORT, "1"));
+        assertArrayEquals(expected, pack(dir, opts(Pack200.Packer.EFFORT, "1")));
+        assertEquals(2, entries(dir).length);
+
+        // Options which do not change the output share an entry.
+        pack(dir, opts(Utils.PACK_THREADS, "2"));
+        assertEquals(2, entries(dir).length);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        File dir = tmp.newFolder();
+        Map<String, String> opts = opts(Pack200.Packer.SEGMENT_LIMIT, "20000");
+        byte[] expected = packStream(null, opts);
+        assertArrayEquals(expected, packStream(dir, opts));
+        File[] entries = entries(dir);
+        assertTrue(entries.length > 1);
+
+        // Every segment is found again, concurrent or not.
+        for (File f : entries)  f.setLastModified(0);
+        assertArrayEquals(expected, packStream(dir, opts));
+        opts.put(Utils.PACK_SEGMENT_THREADS, "3");
+        assertArrayEquals(expected, packStream(dir, opts));
+        File[] again = entries(dir);
+        assertEquals(entries.length, again.length);
+        for (File f : again)
+            assertTrue(f.getName(), f.lastModified() > 0);
+
+        // A whole JAR file is stored along with its segments.
+        expected = pack(null, opts);
+        assertArrayEquals(expected, pack(dir, opts));
+        assertTrue(entries(dir).length > again.length + 1);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File dir = tmp.newFolder();
+        byte[] expected = pack(null, null);
+        Map<String, String> opts = opts(Utils.PACK_CACHE_SIZE,
+                                        String.valueOf(expected.length * 3 / 2));
+        pack(dir, opts);
+        opts.put(Pack200.Packer.EFFORT, "1");
+        byte[] last = pack(dir, opts);
+        File[] entries = entries(dir);
+        assertEquals(1, entries.length);
+        assertArrayEquals(last, Files.readAllBytes(entries[0].toPath()));
+
+        // An entry larger than the cache does not stay.
+        opts.put(Utils.PACK_CACHE_SIZE, "1");
+        opts.remove(Pack200.Packer.EFFORT);
+        assertArrayEquals(expected, pack(dir, opts));
+        assertEquals(0, entries(dir).length);
+    }
+
+    @Test
+    public void testSegmentEviction() throws IOException {
+        File dir = tmp.newFolder();
+        Map<String, String> opts = opts(Pack200.Packer.SEGMENT_LIMIT, "20000");
+        byte[] expected = packStream(null, opts);
+        long limit = expected.length / 2;
+        opts.put(Utils.PACK_CACHE_SIZE, String.valueOf(limit));
+        assertArrayEquals(expected, packStream(dir, opts));
+        long total = 0;
+        for (File f : entries(dir))  total += f.length();
+        assertTrue(total > 0);
+        assertTrue(total <= limit);
+    }
+
+    static Map<String, String> opts(String key, String value) {
+        Map<String, String> opts = new java.util.HashMap<>();
+        opts.put(key, value);
+        return opts;
+    }
+
+    static File[] entries(File dir) {
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(".pack"));
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    static Pack200.Packer newPacker(File dir, Map<String, String> opts) {
+        Pack200.Packer packer = Pack200.newPacker();
+        if (opts != null)
+            packer.properties().putAll(opts);
+        if (dir != null)
+            packer.properties().put(Utils.PACK_CACHE_DIR, dir.getPath());
+        return packer;
+    }
+
+    static byte[] pack(File dir, Map<String, String> opts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarFile jf = new JarFile(TestUtils.getGoldenJar())) {
+            newPacker(dir, opts).pack(jf, out);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] packStream(File dir, Map<String, String> opts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarInputStream in = new JarInputStream(
+                new FileInputStream(TestUtils.getGoldenJar()))) {
+            newPacker(dir, opts).pack(in, out);
+        }
+        return out.toByteArray();
+    }
+}
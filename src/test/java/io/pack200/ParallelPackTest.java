@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary the packer must produce the same bytes whether class files
+ *          are parsed, band codings chosen and segments written serially
+ *          or on worker threads
+ */
+public class ParallelPackTest {
+
+    @Test
+    public void testGoldenJar() throws IOException {
+        compare(TestUtils.getGoldenJar(), null);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        File jar = new File("target/parallel-classes.jar");
+        try {
+            jarUp(new File("target/classes"), jar);
+            compare(jar, null);
+            compare(jar, "20000");
+        } finally {
+            jar.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentSegments() throws IOException {
+        File jar = new File("target/segment-classes.jar");
+        try {
+            jarUp(new File("target/classes"), jar);
+            byte[] serial = pack(jar, 1, 1, "20000");
+            assertArrayEquals(serial, pack(jar, 1, 3, "20000"));
+            assertArrayEquals(serial, pack(jar, 4, 2, "20000"));
+            // A single segment is written directly, as before.
+            assertArrayEquals(pack(jar, 1, 1, null), pack(jar, 1, 3, null));
+
+            // Classes parsed ahead must land in the segment that the
+            // content-defined cuts give them.
+            Pack200.Packer serialContent = newPacker(1, 1, "20000");
+            serialContent.properties().put(Utils.PACK_SEGMENT_BOUNDARY, "content");
+            Pack200.Packer parallelContent = newPacker(4, 2, "20000");
+            parallelContent.properties().put(Utils.PACK_SEGMENT_BOUNDARY, "content");
+            assertArrayEquals(pack(serialContent, jar), pack(parallelContent, jar));
+
+            // The stream entry point must also agree.
+            assertArrayEquals(packStream(jar, 1, "20000"),
+                              packStream(jar, 3, "20000"));
+        } finally {
+            jar.delete();
+        }
+    }
+
+    @Test
+    public void testBandCodings() throws IOException {
+        // At maximum effort the coding of every long band is searched for.
+        File jar = TestUtils.getGoldenJar();
+        byte[] serial = packWithEffort(jar, 1, "9");
+        assertArrayEquals(serial, packWithEffort(jar, 3, "9"));
+        assertArrayEquals(packWithEffort(jar, 1, "7"),
+                          packWithEffort(jar, 8, "7"));
+    }
+
+    private static byte[] packWithEffort(File jar, int nthreads, String effort)
+            throws IOException {
+        Pack200.Packer packer = newPacker(nthreads, 1, null);
+        packer.properties().put(Pack200.Packer.EFFORT, effort);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packer.pack(new JarFile(jar), out);
+        return out.toByteArray();
+    }
+
+    private static void compare(File jar, String segmentLimit) throws IOException {
+        byte[] serial = pack(jar, 1, segmentLimit);
+        for (int nthreads : new int[] { 2, 4 }) {
+            byte[] parallel = pack(jar, nthreads, segmentLimit);
+            assertArrayEquals("pack.threads=" + nthreads, serial, parallel);
+        }
+    }
+
+    static byte[] pack(File jar, int nthreads, String segmentLimit) throws IOException {
+        return pack(jar, nthreads, 1, segmentLimit);
+    }
+
+    static byte[] pack(File jar, int nthreads, int segmentThreads,
+                       String segmentLimit) throws IOException {
+        return pack(newPacker(nthreads, segmentThreads, segmentLimit), jar);
+    }
+
+    static byte[] pack(Pack200.Packer packer, File jar) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packer.pack(new JarFile(jar), out);
+        return out.toByteArray();
+    }
+
+    static byte[] packStream(File jar, int segmentThreads,
+                             String segmentLimit) throws IOException {
+        Pack200.Packer packer = newPacker(1, segmentThreads, segmentLimit);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packer.pack(new JarInputStream(new FileInputStream(jar)), out);
+        return out.toByteArray();
+    }
+
+    static Pack200.Packer newPacker(int nthreads, int segmentThreads,
+                                    String segmentLimit) {
+        Pack200.Packer packer = Pack200.newPacker();
+        Map<String, String> p = packer.properties();
+        p.put(Utils.PACK_THREADS, String.valueOf(nthreads));
+        p.put(Utils.PACK_SEGMENT_THREADS, String.valueOf(segmentThreads));
+        if (segmentLimit != null)
+            p.put(Pack200.Packer.SEGMENT_LIMIT, segmentLimit);
+        return packer;
+    }
+
+    static void jarUp(File dir, File jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            List<File> files = TestUtils.findFiles(dir, TestUtils.FILE_FILTER);
+            byte[] buf = new byte[8192];
+            for (File f : files) {
+                JarEntry je = new JarEntry(dir.toPath().relativize(f.toPath())
+                                              .toString().replace(File.separatorChar, '/'));
+                je.setTime(f.lastModified());
+                out.putNextEntry(je);
+                try (InputStream in = new FileInputStream(f)) {
+                    for (int nr; (nr = in.read(buf)) > 0; ) {
+                        out.write(buf, 0, nr);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary resources read lazily from a jar file must pack to the same
+ *          bytes as resources read from a jar stream, and unpack intact
+ */
+public class PassThroughTest {
+
+    @Test
+    public void testResources() throws IOException {
+        check(null);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        check("300000");
+    }
+
+    private static void check(String segmentLimit) throws IOException {
+        File jarFile = new File("target/pass-through.jar");
+        try {
+            makeJar(jarFile);
+            byte[] fromFile = packFile(jarFile, segmentLimit);
+            if (segmentLimit == null) {
+                // (A stream cannot estimate the segments to come.)
+                assertArrayEquals(packStream(jarFile, segmentLimit), fromFile);
+            }
+
+            // Every entry comes back with its contents.
+            byte[] jar = TestUtils.unpackToBytes(fromFile, TestUtils.props());
+            JarInputStream unpacked = new JarInputStream(new ByteArrayInputStream(jar));
+            try (JarFile jf = new JarFile(jarFile)) {
+                int count = 0;
+                for (JarEntry je; (je = unpacked.getNextJarEntry()) != null; count++) {
+                    JarEntry orig = jf.getJarEntry(je.getName());
+                    assertNotNull(je.getName(), orig);
+                    if (!je.getName().endsWith(".class"))
+                        assertArrayEquals(je.getName(),
+                                          TestUtils.readAll(jf.getInputStream(orig)),
+                                          TestUtils.readAll(unpacked));
+                }
+                assertEquals(Collections.list(jf.entries()).size(), count);
+            }
+        } finally {
+            jarFile.delete();
+        }
+    }
+
+    // The golden jar's classes, plus a few large resources.
+    private static void makeJar(File jarFile) throws IOException {
+        Random rnd = new Random(42);
+        try (JarFile golden = new JarFile(TestUtils.getGoldenJar());
+             JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+            for (JarEntry je : Collections.list(golden.entries())) {
+                if (!je.getName().endsWith(".class"))  continue;
+                out.putNextEntry(new JarEntry(je.getName()));
+                out.write(TestUtils.readAll(golden.getInputStream(je)));
+                out.closeEntry();
+            }
+            for (int i = 0; i < 3; i++) {
+                byte[] data = new byte[100000 * (i + 1)];
+                rnd.nextBytes(data);
+                JarEntry je = new JarEntry("data/blob" + i + ".bin");
+                je.setTime(0);
+                out.putNextEntry(je);
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static Pack200.Packer newPacker(String segmentLimit) {
+        Pack200.Packer packer = Pack200.newPacker();
+        if (segmentLimit != null)
+            packer.properties().put(Pack200.Packer.SEGMENT_LIMIT, segmentLimit);
+        return packer;
+    }
+
+    private static byte[] packFile(File jarFile, String segmentLimit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarFile jf = new JarFile(jarFile)) {
+            newPacker(segmentLimit).pack(jf, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] packStream(File jarFile, String segmentLimit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarInputStream in = new JarInputStream(new FileInputStream(jarFile))) {
+            newPacker(segmentLimit).pack(in, out);
+        }
+        return out.toByteArray();
+    }
+
+}
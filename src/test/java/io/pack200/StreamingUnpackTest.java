@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026, the Pack200 project authors. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package io.pack200;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * @test
+ * @summary writing entries while the segment is read must give the
+ *          same jar, byte for byte, as writing them once it is complete
+ */
+public class StreamingUnpackTest {
+
+    @Test
+    public void testGoldenJar() throws IOException {
+        check(null, null, false);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        check("20000", null, false);
+    }
+
+    @Test
+    public void testDeflateHint() throws IOException {
+        check("20000", "true", false);
+        check("20000", "false", false);
+    }
+
+    @Test
+    public void testStripDebug() throws IOException {
+        check(null, null, true);
+    }
+
+    private static void check(String segmentLimit, String deflateHint,
+                              boolean stripDebug) throws IOException {
+        File packFile = TestUtils.packGoldenJar("streaming-unpack.pack",
+            TestUtils.props(Pack200.Packer.SEGMENT_LIMIT, segmentLimit));
+        try {
+            for (boolean asFile : new boolean[] { false, true }) {
+                byte[] batch = unpack(packFile, asFile, false, deflateHint, stripDebug);
+                byte[] streamed = unpack(packFile, asFile, true, deflateHint, stripDebug);
+                assertTrue(batch.length > 0);
+                assertArrayEquals("asFile=" + asFile, batch, streamed);
+            }
+        } finally {
+            packFile.delete();
+        }
+    }
+
+    private static byte[] unpack(File packFile, boolean asFile, boolean streaming,
+                                 String deflateHint, boolean stripDebug)
+            throws IOException {
+        return TestUtils.unpackToBytes(packFile, asFile, TestUtils.props(
+            Utils.UNPACK_STREAMING, String.valueOf(streaming),
+            Pack200.Unpacker.DEFLATE_HINT, deflateHint,
+            "unpack.strip.debug", stripDebug ? "true" : null));
+    }
+}
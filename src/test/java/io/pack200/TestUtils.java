@@ -25,14 +25,17 @@ package io.pack200;
 
 import java.nio.file.Path;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URI;
 import java.nio.charset.Charset;
@@ -48,7 +51,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -420,6 +425,88 @@ public class TestUtils {
         unpacker.unpack(inFile, jarStream);
     }
 
+    // Properties from key, value pairs; a pair with a null value is left out.
+    static Map<String, String> props(String... keysAndValues) {
+        Map<String, String> props = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            if (keysAndValues[i+1] != null)
+                props.put(keysAndValues[i], keysAndValues[i+1]);
+        }
+        return props;
+    }
+
+    // Packs the golden jar to target/packName, with the given properties.
+    static File packGoldenJar(String packName, Map<String, String> props)
+            throws IOException {
+        File packFile = new File("target", packName);
+        Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().putAll(props);
+        try (JarFile jf = new JarFile(getGoldenJar());
+             OutputStream out = new FileOutputStream(packFile)) {
+            packer.pack(jf, out);
+        }
+        return packFile;
+    }
+
+    // A java unpacker with the given properties.
+    static Pack200.Unpacker newUnpacker(Map<String, String> props) {
+        Pack200.Unpacker unpacker = Pack200.newUnpacker();
+        unpacker.properties().put("io.pack200.disable.native", "true");
+        unpacker.properties().putAll(props);
+        return unpacker;
+    }
+
+    // Unpacks a pack file, given as a file or read as a stream, and
+    // returns the bytes of the jar file.
+    static byte[] unpackToBytes(File packFile, boolean asFile,
+            Map<String, String> props) throws IOException {
+        Pack200.Unpacker unpacker = newUnpacker(props);
+        ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+        try (JarOutputStream jout = new JarOutputStream(jarBytes)) {
+            if (asFile) {
+                unpacker.unpack(packFile, jout);
+            } else {
+                try (InputStream in = new FileInputStream(packFile)) {
+                    unpacker.unpack(in, jout);
+                }
+            }
+        }
+        return jarBytes.toByteArray();
+    }
+
+    // Unpacks a pack stream held in memory, and returns the bytes of
+    // the jar file.
+    static byte[] unpackToBytes(byte[] pack, Map<String, String> props)
+            throws IOException {
+        ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+        try (JarOutputStream jout = new JarOutputStream(jarBytes)) {
+            newUnpacker(props).unpack(new ByteArrayInputStream(pack), jout);
+        }
+        return jarBytes.toByteArray();
+    }
+
+    // The names and contents of the entries of a jar file, one after
+    // another, to compare jars whose headers may differ.
+    static byte[] entryContents(byte[] jar) throws IOException {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(jar))) {
+            for (JarEntry je; (je = in.getNextJarEntry()) != null; ) {
+                all.write(je.getName().getBytes("UTF-8"));
+                all.write(readAll(in));
+            }
+        }
+        return all.toByteArray();
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int nr; (nr = in.read(buf)) > 0; ) {
+            out.write(buf, 0, nr);
+        }
+        return out.toByteArray();
+    }
+
     static byte[] getBuffer(ZipFile zf, ZipEntry ze) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         byte buf[] = new byte[8192];